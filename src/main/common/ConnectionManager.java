@@ -3,12 +3,23 @@ package main.common;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class ConnectionManager implements AutoCloseable {
     private Connection connection;
     private DatabaseConfig config;
     private boolean autoCommit;
+    private final List<TransactionListener> transactionListeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * 通过 commit() / rollback() 结束事务后的回调，committed 为 false 表示回滚（包括提交失败）
+     */
+    public interface TransactionListener {
+        void afterCompletion(Connection connection, boolean committed);
+    }
 
 
     public ConnectionManager(DatabaseConfig config, boolean autoCommit) throws SQLException {
@@ -55,16 +66,44 @@ public class ConnectionManager implements AutoCloseable {
     }
 
 
+    public void addTransactionListener(TransactionListener listener) {
+        transactionListeners.add(listener);
+    }
+
+
+    public void removeTransactionListener(TransactionListener listener) {
+        transactionListeners.remove(listener);
+    }
+
+
     public void commit() throws SQLException {
         if (connection != null && !connection.isClosed() && !connection.getAutoCommit()) {
-            connection.commit();
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                // 提交失败时事务已被服务器回滚
+                notifyCompletion(false);
+                throw e;
+            }
+            notifyCompletion(true);
         }
     }
 
 
     public void rollback() throws SQLException {
         if (connection != null && !connection.isClosed() && !connection.getAutoCommit()) {
-            connection.rollback();
+            try {
+                connection.rollback();
+            } finally {
+                notifyCompletion(false);
+            }
+        }
+    }
+
+
+    private void notifyCompletion(boolean committed) {
+        for (TransactionListener listener : transactionListeners) {
+            listener.afterCompletion(connection, committed);
         }
     }
 
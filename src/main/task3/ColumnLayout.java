@@ -0,0 +1,101 @@
+package main.task3;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 查询结果的列布局：列名、列类型和列名到下标的映射。
+ * 同一个查询形态（同一条 SQL）只解析一次元数据，之后每行按下标直接取值。
+ */
+public class ColumnLayout {
+    private final String[] labels;
+    private final int[] sqlTypes;
+    private final Map<String, Integer> indexByLabel;
+    private final Map<RowMapper.Factory<?>, RowMapper<?>> compiledMappers = new ConcurrentHashMap<>();
+
+    private ColumnLayout(String[] labels, int[] sqlTypes) {
+        this.labels = labels;
+        this.sqlTypes = sqlTypes;
+        this.indexByLabel = new HashMap<>(labels.length * 2);
+        for (int i = 0; i < labels.length; i++) {
+            // 同名列保留第一个，与 ResultSet.findColumn 的语义一致
+            indexByLabel.putIfAbsent(labels[i].toLowerCase(), i + 1);
+        }
+    }
+
+    public static ColumnLayout of(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        int[] sqlTypes = new int[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            labels[i - 1] = metaData.getColumnLabel(i);
+            sqlTypes[i - 1] = metaData.getColumnType(i);
+        }
+        return new ColumnLayout(labels, sqlTypes);
+    }
+
+    public int columnCount() {
+        return labels.length;
+    }
+
+    /**
+     * 第 index 列（从 1 开始）的列名
+     */
+    public String label(int index) {
+        return labels[index - 1];
+    }
+
+    /**
+     * 第 index 列（从 1 开始）的 java.sql.Types 类型
+     */
+    public int sqlType(int index) {
+        return sqlTypes[index - 1];
+    }
+
+    /**
+     * 按列名查找下标（从 1 开始，忽略大小写），不存在时返回 0
+     */
+    public int indexOf(String label) {
+        Integer index = indexByLabel.get(label.toLowerCase());
+        return index != null ? index : 0;
+    }
+
+    public int require(String label) throws SQLException {
+        int index = indexOf(label);
+        if (index == 0) {
+            throw new SQLException("查询结果中不存在列: " + label);
+        }
+        return index;
+    }
+
+    /**
+     * 判断缓存的布局是否仍与本次结果集一致（例如 SELECT * 的表结构被修改过）
+     */
+    boolean matches(ResultSetMetaData metaData) throws SQLException {
+        if (metaData.getColumnCount() != labels.length) {
+            return false;
+        }
+        for (int i = 1; i <= labels.length; i++) {
+            if (metaData.getColumnType(i) != sqlTypes[i - 1] || !metaData.getColumnLabel(i).equals(labels[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 针对当前布局编译映射器，结果按 factory 缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RowMapper<T> compile(RowMapper.Factory<T> factory) throws SQLException {
+        RowMapper<T> mapper = (RowMapper<T>) compiledMappers.get(factory);
+        if (mapper == null) {
+            mapper = factory.compile(this);
+            compiledMappers.put(factory, mapper);
+        }
+        return mapper;
+    }
+}
@@ -0,0 +1,74 @@
+package main.task3;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 压缩稀疏行（CSR）形式的 0/1 稀疏矩阵：第 row 行的非零列为 columns[offsets[row] .. offsets[row + 1])，
+ * 每行内列号升序且不重复。FollowGraph 与 RecommendationEngine 共用。
+ */
+final class CsrMatrix {
+    final int[] offsets;
+    final int[] columns;
+
+    private CsrMatrix(int[] offsets, int[] columns) {
+        this.offsets = offsets;
+        this.columns = columns;
+    }
+
+    /**
+     * 由 (rows[i], cols[i]) 坐标对用计数排序构建，重复的坐标会被合并
+     */
+    static CsrMatrix build(int rowCount, int[] rows, int[] cols) {
+        int[] offsets = new int[rowCount + 1];
+        for (int row : rows) {
+            offsets[row + 1]++;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] columns = new int[rows.length];
+        int[] cursor = Arrays.copyOf(offsets, rowCount);
+        for (int i = 0; i < rows.length; i++) {
+            columns[cursor[rows[i]]++] = cols[i];
+        }
+
+        // 各行独立排序
+        IntStream.range(0, rowCount).parallel().forEach(row -> Arrays.sort(columns, offsets[row], offsets[row + 1]));
+
+        // 去掉重复坐标并压紧
+        int[] compactOffsets = new int[rowCount + 1];
+        int write = 0;
+        for (int row = 0; row < rowCount; row++) {
+            compactOffsets[row] = write;
+            for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                if (i == offsets[row] || columns[i] != columns[i - 1]) {
+                    columns[write++] = columns[i];
+                }
+            }
+        }
+        compactOffsets[rowCount] = write;
+        return new CsrMatrix(compactOffsets, write == columns.length ? columns : Arrays.copyOf(columns, write));
+    }
+
+    int rowCount() {
+        return offsets.length - 1;
+    }
+
+    int nonZeroCount() {
+        return columns.length;
+    }
+
+    int degree(int row) {
+        return offsets[row + 1] - offsets[row];
+    }
+
+    boolean contains(int row, int column) {
+        return Arrays.binarySearch(columns, offsets[row], offsets[row + 1], column) >= 0;
+    }
+
+    long memoryBytes() {
+        return 4L * (offsets.length + columns.length);
+    }
+}
@@ -6,6 +6,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,6 +39,12 @@ public class CsvDataImporter {
     private Set<String> allKeywords = new HashSet<>();
     private Set<String> allIngredients = new HashSet<>();
 
+    private RatingSummary ratingSummary;
+    private RecipeTermIndex recipeTermIndex;
+    private FollowGraph followGraph;
+    private ReviewPartitions.Granularity reviewPartitioning;
+    private ReviewPartitions reviewPartitions;
+
 
     public CsvDataImporter(ConnectionManager connectionManager, String dataDirectory) {
         this.connectionManager = connectionManager;
@@ -53,8 +60,14 @@ public class CsvDataImporter {
             readAndPrepareRecipes(dataDirectory + "/recipes.csv");
             readAndPrepareReviews(dataDirectory + "/reviews.csv");
             populateM2MTables();
+            if (reviewPartitioning != null) {
+                createReviewPartitions();
+            }
             insertAllData();
             connectionManager.commit();
+            buildRatingSummary();
+            buildRecipeTermIndex();
+            buildFollowGraph();
             printTableStatistics();
         } catch (Exception e) {
             connectionManager.rollback();
@@ -183,7 +196,12 @@ public class CsvDataImporter {
             Long reviewId = DataReader.parseLong(row.get("ReviewId"));
             Integer rating = DataReader.parseInteger(row.get("Rating"));
 
-            if (reviewId == null || !seenIds.add(reviewId) || rating == null) {
+            // reviews 按 datesubmitted 分区，提交时间是主键的一部分，缺失时取修改时间
+            Timestamp dateSubmitted = DataReader.parseTimestamp(row.get("DateSubmitted"));
+            if (dateSubmitted == null) {
+                dateSubmitted = DataReader.parseTimestamp(row.get("DateModified"));
+            }
+            if (reviewId == null || !seenIds.add(reviewId) || rating == null || dateSubmitted == null) {
                 continue;
             }
 
@@ -193,7 +211,7 @@ public class CsvDataImporter {
             reviewRow.put("authorid", DataReader.parseLong(row.get("AuthorId")));
             reviewRow.put("rating", rating);
             reviewRow.put("review", DataReader.normalizeField(row.get("Review")));
-            reviewRow.put("datesubmitted", DataReader.parseTimestamp(row.get("DateSubmitted")));
+            reviewRow.put("datesubmitted", dateSubmitted);
             reviewRow.put("datemodified", DataReader.parseTimestamp(row.get("DateModified")));
             reviewsData.add(reviewRow);
 
@@ -282,7 +300,7 @@ public class CsvDataImporter {
     private void insertAllData() throws SQLException {
         insertWithConflict("users", new String[]{"authorid"}, new String[]{"authorid", "authorname", "gender", "age"}, usersData);
         insertWithConflict("recipes", new String[]{"recipeid"}, new String[]{"recipeid", "authorid", "name", "cooktime", "preptime", "datepublished", "description", "recipecategory", "recipeservings", "recipeyield"}, recipesData);
-        insertWithConflict("reviews", new String[]{"reviewid"}, new String[]{"reviewid", "recipeid", "authorid", "rating", "review", "datesubmitted", "datemodified"}, reviewsData);
+        insertWithConflict("reviews", new String[]{"reviewid", "datesubmitted"}, new String[]{"reviewid", "recipeid", "authorid", "rating", "review", "datesubmitted", "datemodified"}, reviewsData);
 
         String[] nutritionCols = {"recipeid", "calories", "fatcontent", "saturatedfatcontent", "cholesterolcontent", "sodiumcontent", "carbohydratecontent", "fibercontent", "sugarcontent", "proteincontent"};
         insertWithConflict("nutrition", new String[]{"recipeid"}, nutritionCols, nutritionData);
@@ -498,13 +516,92 @@ public class CsvDataImporter {
     }
 
 
+    /**
+     * 导入完成后整体构建一次评分汇总，之后由 DataWriter / DataQuery 增量维护，事务结束时由连接管理器通知
+     */
+    private void buildRatingSummary() throws SQLException {
+        if (ratingSummary != null) {
+            connectionManager.removeTransactionListener(ratingSummary);
+        }
+        ratingSummary = new RatingSummary(conn);
+        ratingSummary.rebuild();
+        connectionManager.addTransactionListener(ratingSummary);
+        connectionManager.commit();
+        dataWriter.setRatingSummary(ratingSummary);
+        dataQuery.setRatingSummary(ratingSummary);
+        System.out.println("评分汇总构建完成");
+    }
+
+
+    public RatingSummary getRatingSummary() {
+        return ratingSummary;
+    }
+
+
+    /**
+     * 用本次导入准备好的关联数据重建配料/关键词倒排索引
+     */
+    private void buildRecipeTermIndex() {
+        recipeTermIndex = RecipeTermIndex.build(recipeIngredientsData, recipeKeywordsData, ingredientCache, keywordCache);
+        System.out.println("倒排索引构建完成: " + recipeTermIndex);
+    }
+
+
+    public RecipeTermIndex getRecipeTermIndex() {
+        return recipeTermIndex;
+    }
+
+
+    /**
+     * 关注关系从表中载入，导入时因外键等原因被跳过的边不会进入图
+     */
+    private void buildFollowGraph() throws SQLException {
+        followGraph = FollowGraph.load(conn);
+        System.out.println("关注图构建完成: " + followGraph);
+    }
+
+
+    public FollowGraph getFollowGraph() {
+        return followGraph;
+    }
+
+
+    /**
+     * 设置后，插入评论前按该粒度为导入数据覆盖的月份（或年份）创建 reviews 的分区，行直接写入对应分区
+     * （传 null 关闭，默认关闭，此时评论都进入默认分区）。需要已执行迁移 V006
+     */
+    public void setReviewPartitioning(ReviewPartitions.Granularity granularity) {
+        this.reviewPartitioning = granularity;
+    }
+
+
+    /**
+     * 为待导入的评论建好分区，与导入在同一事务中
+     */
+    private void createReviewPartitions() throws SQLException {
+        reviewPartitions = new ReviewPartitions(conn, reviewPartitioning);
+        List<Timestamp> dates = new ArrayList<>(reviewsData.size());
+        for (Map<String, Object> row : reviewsData) {
+            dates.add((Timestamp) row.get("datesubmitted"));
+        }
+        int created = reviewPartitions.createPartitionsFor(dates);
+        System.out.println("评论分区: 新建 " + created + " 个，共 " + reviewPartitions.existingPartitions().size() + " 个");
+    }
+
+
+    public ReviewPartitions getReviewPartitions() {
+        return reviewPartitions;
+    }
+
+
     private void printTableStatistics() throws SQLException {
         System.out.println("\n========== 各表记录统计 ==========");
 
         String[] tables = {
                 "users", "recipes", "reviews", "nutrition", "instructions",
                 "keywords", "recipe_keywords", "ingredients", "recipe_ingredients",
-                "user_favorite_recipes", "user_liked_reviews", "user_follows"
+                "user_favorite_recipes", "user_liked_reviews", "user_follows",
+                "recipe_rating_summary"
         };
 
         for (String table : tables) {
@@ -6,6 +6,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -184,7 +185,12 @@ public class CsvDataImporterCompare {
             Long reviewId = DataReader.parseLong(row.get("ReviewId"));
             Integer rating = DataReader.parseInteger(row.get("Rating"));
 
-            if (reviewId == null || !seenIds.add(reviewId) || rating == null) {
+            // reviews 按 datesubmitted 分区（迁移 V006），提交时间是主键的一部分，缺失时取修改时间
+            Timestamp dateSubmitted = DataReader.parseTimestamp(row.get("DateSubmitted"));
+            if (dateSubmitted == null) {
+                dateSubmitted = DataReader.parseTimestamp(row.get("DateModified"));
+            }
+            if (reviewId == null || !seenIds.add(reviewId) || rating == null || dateSubmitted == null) {
                 continue;
             }
 
@@ -194,7 +200,7 @@ public class CsvDataImporterCompare {
             reviewRow.put("authorid", DataReader.parseLong(row.get("AuthorId")));
             reviewRow.put("rating", rating);
             reviewRow.put("review", DataReader.normalizeField(row.get("Review")));
-            reviewRow.put("datesubmitted", DataReader.parseTimestamp(row.get("DateSubmitted")));
+            reviewRow.put("datesubmitted", dateSubmitted);
             reviewRow.put("datemodified", DataReader.parseTimestamp(row.get("DateModified")));
             reviewsData.add(reviewRow);
 
@@ -283,7 +289,7 @@ public class CsvDataImporterCompare {
     private void insertAllData() throws SQLException {
         insertWithConflict("users", new String[]{"authorid"}, new String[]{"authorid", "authorname", "gender", "age"}, usersData);
         insertWithConflict("recipes", new String[]{"recipeid"}, new String[]{"recipeid", "authorid", "name", "cooktime", "preptime", "datepublished", "description", "recipecategory", "recipeservings", "recipeyield"}, recipesData);
-        insertWithConflict("reviews", new String[]{"reviewid"}, new String[]{"reviewid", "recipeid", "authorid", "rating", "review", "datesubmitted", "datemodified"}, reviewsData);
+        insertWithConflict("reviews", new String[]{"reviewid", "datesubmitted"}, new String[]{"reviewid", "recipeid", "authorid", "rating", "review", "datesubmitted", "datemodified"}, reviewsData);
 
         String[] nutritionCols = {"recipeid", "calories", "fatcontent", "saturatedfatcontent", "cholesterolcontent", "sodiumcontent", "carbohydratecontent", "fibercontent", "sugarcontent", "proteincontent"};
         insertWithConflict("nutrition", new String[]{"recipeid"}, nutritionCols, nutritionData);
@@ -1,86 +1,316 @@
 package main.task3;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataQuery {
+    private static final int KEY_CHUNK_SIZE = 10000; // selectByKeys 每次往返最多发送的键数
+    private static final int LAYOUT_CACHE_SIZE = 512; // 最多缓存的查询形态数，超出时按 LRU 淘汰
+
+    // 删除或 TRUNCATE ... CASCADE 时受外键级联影响的直接子表（on delete cascade / set null），见 database_schema.sql 与迁移脚本；
+    // reviews 分区后 user_liked_reviews 的级联删除由触发器完成（迁移 V006），同样视为子表
+    private static final Map<String, String[]> CASCADE_CHILDREN = Map.of(
+            "users", new String[]{"recipes", "reviews", "user_favorite_recipes", "user_liked_reviews", "user_follows"},
+            "recipes", new String[]{"reviews", "nutrition", "instructions", "recipe_ingredients", "recipe_keywords",
+                    "user_favorite_recipes", "recipe_rating_summary", "recipe_similarity"},
+            "reviews", new String[]{"user_liked_reviews"},
+            "ingredients", new String[]{"recipe_ingredients"},
+            "keywords", new String[]{"recipe_keywords"});
+
     private Connection connection;
+    // executeQuery 的 SQL 可能内嵌字面量，形态数没有上限，因此按 LRU 限制条目数
+    private final Map<String, ColumnLayout> layoutCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, ColumnLayout>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ColumnLayout> eldest) {
+                    return size() > LAYOUT_CACHE_SIZE;
+                }
+            });
+    private final Map<String, Map<String, String>> columnTypeCache = new ConcurrentHashMap<>();
+    private QueryCache queryCache;
+    private RatingSummary ratingSummary;
+    private SlowQueryLog slowQueryLog;
 
     public DataQuery(Connection connection) {
         this.connection = connection;
     }
 
 
+    /**
+     * 启用结果缓存（传 null 关闭）。selectByConditions 与 count 的结果会被缓存，
+     * update/delete 以及共享同一缓存的 DataWriter 写入时按表自动失效，删除还会使外键级联的子表失效。
+     * 手动提交模式下需把缓存注册到 ConnectionManager.addTransactionListener，事务结束后写过的表才会重新缓存。
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+
+    /**
+     * 设置后，通过 update/delete 修改 reviews 时增量维护评分汇总，级联删除评论时标记汇总失效
+     */
+    public void setRatingSummary(RatingSummary ratingSummary) {
+        this.ratingSummary = ratingSummary;
+    }
+
+
+    /**
+     * 设置后，每条语句执行完都记录到 SlowQueryLog（传 null 关闭）
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+
     public List<Map<String, Object>> selectByConditions(String tableName,
                                                         Map<String, Object> conditions,
                                                         String[] columns) throws SQLException {
-        StringBuilder sqlBuilder = new StringBuilder("SELECT ");
+        String sql = buildSelectSql(tableName, conditions, columns);
+        Object[] cacheParams = null;
+        long cacheVersion = 0;
+        if (queryCache != null) {
+            cacheParams = conditionValues(conditions);
+            Object cached = queryCache.get(sql, cacheParams);
+            if (cached != null) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> cachedRows = (List<Map<String, Object>>) cached;
+                return cachedRows;
+            }
+            cacheVersion = queryCache.version();
+        }
 
-        if (columns == null || columns.length == 0) {
-            sqlBuilder.append("*");
-        } else {
-            for (int i = 0; i < columns.length; i++) {
-                if (i > 0) {
-                    sqlBuilder.append(", ");
+        long startTime = System.nanoTime();
+        List<Map<String, Object>> results = new ArrayList<>();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            // 设置条件参数
+            bindConditions(pstmt, conditions, 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ColumnLayout layout = layoutFor(sql, rs);
+                // 指定列时沿用调用方给出的列名作为键，否则使用结果集中的列名
+                String[] keys = (columns == null || columns.length == 0) ? null : columns;
+                RowMapper<Map<String, Object>> mapper = mapMapper(layout, keys);
+                while (rs.next()) {
+                    results.add(mapper.mapRow(rs));
                 }
-                sqlBuilder.append(columns[i]);
             }
         }
+        logStatement(sql, cacheParams != null ? cacheParams : conditionValues(conditions), startTime, results.size());
 
-        sqlBuilder.append(" FROM ").append(tableName);
+        if (queryCache != null) {
+            // 缓存中的结果由多个调用方共享，列表和每一行都以只读形式返回
+            for (int i = 0; i < results.size(); i++) {
+                results.set(i, Collections.unmodifiableMap(results.get(i)));
+            }
+            results = Collections.unmodifiableList(results);
+            queryCache.put(sql, cacheParams, new String[]{tableName}, results, System.nanoTime() - startTime,
+                    cacheVersion);
+        }
+        return results;
+    }
 
-        if (conditions != null && !conditions.isEmpty()) {
-            sqlBuilder.append(" WHERE ");
-            boolean first = true;
-            for (String column : conditions.keySet()) {
-                if (!first) {
-                    sqlBuilder.append(" AND ");
+
+    /**
+     * 按条件查询并用编译好的映射器解码为类型化对象，例如 RecipeRecord.MAPPER
+     */
+    public <T> List<T> selectByConditions(String tableName,
+                                          Map<String, Object> conditions,
+                                          String[] columns,
+                                          RowMapper.Factory<T> factory) throws SQLException {
+        String sql = buildSelectSql(tableName, conditions, columns);
+        long startTime = System.nanoTime();
+        List<T> results = new ArrayList<>();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            bindConditions(pstmt, conditions, 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                RowMapper<T> mapper = layoutFor(sql, rs).compile(factory);
+                while (rs.next()) {
+                    results.add(mapper.mapRow(rs));
                 }
-                sqlBuilder.append(column).append(" = ?");
-                first = false;
             }
         }
+        logStatement(sql, conditionValues(conditions), startTime, results.size());
 
-        String sql = sqlBuilder.toString();
-        List<Map<String, Object>> results = new ArrayList<>();
+        return results;
+    }
+
+
+    /**
+     * 按主键批量查询：所有键作为一个 bigint[] 参数以 WHERE key = ANY(?) 发送，
+     * 超大键集合按 KEY_CHUNK_SIZE 分块，每块一次往返。返回 键 -> 行，不存在的键不出现在结果中。
+     */
+    public Map<Long, Map<String, Object>> selectByKeys(String tableName, String keyColumn,
+                                                      Collection<Long> keys, String[] columns) throws SQLException {
+        String[] selectColumns = withColumns(columns, keyColumn);
+        // 指定列时沿用调用方给出的列名作为键，与 selectByConditions 一致
+        return selectByKeys(tableName, keyColumn, keys, selectColumns, layout -> mapMapper(layout, selectColumns));
+    }
+
+
+    public <T> Map<Long, T> selectByKeys(String tableName, String keyColumn, Collection<Long> keys,
+                                         String[] columns, RowMapper.Factory<T> factory) throws SQLException {
+        Map<Long, T> results = new HashMap<>();
+        if (keys == null || keys.isEmpty()) {
+            return results;
+        }
+
+        // 去重并跳过 null
+        Long[] distinctKeys = new LinkedHashSet<>(keys).stream()
+                .filter(key -> key != null)
+                .toArray(Long[]::new);
+
+        String[] selectColumns = withColumns(columns, keyColumn);
+        String sql = buildSelectSql(tableName, null, selectColumns) + " WHERE " + keyColumn + " = ANY(?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            // 设置条件参数
-            if (conditions != null && !conditions.isEmpty()) {
-                int index = 1;
-                for (Object value : conditions.values()) {
-                    setParameter(pstmt, index++, value);
+            for (int from = 0; from < distinctKeys.length; from += KEY_CHUNK_SIZE) {
+                int to = Math.min(from + KEY_CHUNK_SIZE, distinctKeys.length);
+                Long[] chunk = Arrays.copyOfRange(distinctKeys, from, to);
+                Array keyArray = connection.createArrayOf("bigint", chunk);
+                try {
+                    long startTime = System.nanoTime();
+                    int rowCount = 0;
+                    pstmt.setArray(1, keyArray);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        ColumnLayout layout = layoutFor(sql, rs);
+                        int keyIndex = layout.require(keyColumn);
+                        RowMapper<T> mapper = factory.compile(layout);
+                        while (rs.next()) {
+                            results.put(rs.getLong(keyIndex), mapper.mapRow(rs));
+                            rowCount++;
+                        }
+                    }
+                    logStatement(sql, new Object[]{chunk}, startTime, rowCount);
+                } finally {
+                    keyArray.free();
                 }
             }
+        }
+
+        return results;
+    }
+
+
+    /**
+     * 键集（seek）分页。按 sortColumns 排序，从 continuationToken 对应的位置之后取 pageSize 行。
+     * 排序列组合必须唯一（通常以主键结尾，例如 {"datesubmitted", "reviewid"}），
+     * 排序列为 NULL 的行不参与分页。第一页传 null 作为令牌。
+     */
+    public KeysetPage<Map<String, Object>> selectPage(String tableName, Map<String, Object> conditions,
+                                                      String[] columns, String[] sortColumns, boolean descending,
+                                                      int pageSize, String continuationToken) throws SQLException {
+        String[] selectColumns = withColumns(columns, sortColumns);
+        return selectPage(tableName, conditions, selectColumns, sortColumns, descending, pageSize, continuationToken,
+                layout -> mapMapper(layout, selectColumns));
+    }
+
+
+    public <T> KeysetPage<T> selectPage(String tableName, Map<String, Object> conditions, String[] columns,
+                                        String[] sortColumns, boolean descending, int pageSize,
+                                        String continuationToken, RowMapper.Factory<T> factory) throws SQLException {
+        if (sortColumns == null || sortColumns.length == 0) {
+            throw new IllegalArgumentException("分页查询必须指定排序列");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须为正数");
+        }
+
+        int shapeHash = KeysetPage.shapeHash(tableName, conditions, sortColumns, descending);
+        Object[] afterValues = continuationToken == null
+                ? null
+                : KeysetPage.decodeToken(continuationToken, shapeHash, sortColumns.length);
+
+        StringBuilder sqlBuilder = new StringBuilder(
+                buildSelectSql(tableName, conditions, withColumns(columns, sortColumns)));
+        sqlBuilder.append(conditions == null || conditions.isEmpty() ? " WHERE " : " AND ");
+        for (int i = 0; i < sortColumns.length; i++) {
+            if (i > 0) {
+                sqlBuilder.append(" AND ");
+            }
+            sqlBuilder.append(sortColumns[i]).append(" IS NOT NULL");
+        }
+        if (afterValues != null) {
+            // 行值比较 (a, b) > (?, ?)，可直接利用 (a, b) 上的索引定位
+            sqlBuilder.append(" AND (").append(String.join(", ", sortColumns)).append(")")
+                    .append(descending ? " < (" : " > (");
+            for (int i = 0; i < sortColumns.length; i++) {
+                sqlBuilder.append(i > 0 ? ", ?" : "?");
+            }
+            sqlBuilder.append(")");
+        }
+        sqlBuilder.append(" ORDER BY ");
+        for (int i = 0; i < sortColumns.length; i++) {
+            if (i > 0) {
+                sqlBuilder.append(", ");
+            }
+            sqlBuilder.append(sortColumns[i]).append(descending ? " DESC" : " ASC");
+        }
+        // 多取一行用于判断是否还有下一页
+        sqlBuilder.append(" LIMIT ?");
+
+        String sql = sqlBuilder.toString();
+        List<T> rows = new ArrayList<>(pageSize);
+        Object[] lastValues = new Object[sortColumns.length];
+        boolean hasMore = false;
+        long startTime = System.nanoTime();
+        List<Object> params = new ArrayList<>(Arrays.asList(conditionValues(conditions)));
+        if (afterValues != null) {
+            params.addAll(Arrays.asList(afterValues));
+        }
+        params.add(pageSize + 1);
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                setParameter(pstmt, i + 1, params.get(i));
+            }
 
             try (ResultSet rs = pstmt.executeQuery()) {
+                ColumnLayout layout = layoutFor(sql, rs);
+                int[] sortIndexes = new int[sortColumns.length];
+                for (int i = 0; i < sortColumns.length; i++) {
+                    sortIndexes[i] = layout.require(sortColumns[i]);
+                }
+                RowMapper<T> mapper = factory.compile(layout);
                 while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    if (columns == null || columns.length == 0) {
-                        // 查询所有列
-                        int columnCount = rs.getMetaData().getColumnCount();
-                        for (int i = 1; i <= columnCount; i++) {
-                            String columnName = rs.getMetaData().getColumnName(i);
-                            row.put(columnName, rs.getObject(i));
-                        }
-                    } else {
-                        // 查询指定列
-                        for (String column : columns) {
-                            row.put(column, rs.getObject(column));
-                        }
+                    if (rows.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    rows.add(mapper.mapRow(rs));
+                    for (int i = 0; i < sortIndexes.length; i++) {
+                        lastValues[i] = rs.getObject(sortIndexes[i]);
                     }
-                    results.add(row);
                 }
             }
         }
+        logStatement(sql, params.toArray(), startTime, rows.size());
 
-        return results;
+        String nextToken = hasMore ? KeysetPage.encodeToken(shapeHash, lastValues) : null;
+        return new KeysetPage<>(rows, nextToken);
     }
 
 
@@ -100,6 +330,19 @@ public class DataQuery {
         }
 
         String sql = sqlBuilder.toString();
+        Object[] cacheParams = null;
+        long cacheVersion = 0;
+        if (queryCache != null) {
+            cacheParams = conditionValues(conditions);
+            Object cached = queryCache.get(sql, cacheParams);
+            if (cached != null) {
+                return (Long) cached;
+            }
+            cacheVersion = queryCache.version();
+        }
+
+        long startTime = System.nanoTime();
+        long result = 0;
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             if (conditions != null && !conditions.isEmpty()) {
@@ -111,12 +354,17 @@ public class DataQuery {
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getLong(1);
+                    result = rs.getLong(1);
                 }
             }
         }
+        logStatement(sql, conditionValues(conditions), startTime, 1);
 
-        return 0;
+        if (queryCache != null) {
+            queryCache.put(sql, cacheParams, new String[]{tableName}, result, System.nanoTime() - startTime,
+                    cacheVersion);
+        }
+        return result;
     }
 
 
@@ -150,7 +398,16 @@ public class DataQuery {
         }
 
         String sql = sqlBuilder.toString();
+        boolean trackRatings = tracksRatings(tableName);
+        if (trackRatings) {
+            // 通过子查询取得修改前的 (recipeid, rating)，RETURNING 同时返回新旧值，仍然只有一条语句
+            sql = "UPDATE reviews AS r SET " + sql.substring(sql.indexOf(" SET ") + 5, whereStart(sql)) +
+                    " FROM (SELECT reviewid, recipeid, rating FROM reviews" + sql.substring(whereStart(sql)) +
+                    " FOR UPDATE) AS prev WHERE r.reviewid = prev.reviewid" +
+                    " RETURNING prev.recipeid, prev.rating, r.recipeid, r.rating";
+        }
 
+        beginWrite(writeTables(tableName, false));
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             int index = 1;
 
@@ -166,7 +423,14 @@ public class DataQuery {
                 }
             }
 
-            return pstmt.executeUpdate();
+            long startTime = System.nanoTime();
+            int affected = trackRatings ? executeTrackingRatings(pstmt, true) : pstmt.executeUpdate();
+            List<Object> params = new ArrayList<>(updates.values());
+            params.addAll(Arrays.asList(conditionValues(conditions)));
+            logStatement(sql, params.toArray(), startTime, affected);
+            return affected;
+        } finally {
+            endWrite();
         }
     }
 
@@ -189,19 +453,164 @@ public class DataQuery {
         }
 
         String sql = sqlBuilder.toString();
+        boolean trackRatings = tracksRatings(tableName);
+        if (trackRatings) {
+            sql += " RETURNING recipeid, rating";
+        }
 
+        String[] tables = writeTables(tableName, true);
+        beginWrite(tables);
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             int index = 1;
             for (Object value : conditions.values()) {
                 setParameter(pstmt, index++, value);
             }
 
-            return pstmt.executeUpdate();
+            long startTime = System.nanoTime();
+            int affected = trackRatings ? executeTrackingRatings(pstmt, false) : pstmt.executeUpdate();
+            logStatement(sql, conditionValues(conditions), startTime, affected);
+            return affected;
+        } finally {
+            endWrite();
+            markRatingsStaleOnCascade(tableName, tables);
+        }
+    }
+
+
+    /**
+     * 批量按键更新：keys[i] 对应的行把每一列更新为 columnValues 中该列数组的第 i 个值。
+     * 每个分块只执行一条 UPDATE ... FROM unnest(?, ?, ...)，数组元素类型取表中对应列的类型。
+     * 同一个键出现多次时以最后一次为准。返回影响的行数。
+     */
+    public int bulkUpdate(String tableName, String keyColumn, long[] keys,
+                          Map<String, Object[]> columnValues) throws SQLException {
+        if (keys == null || keys.length == 0 || columnValues == null || columnValues.isEmpty()) {
+            return 0;
+        }
+        for (Map.Entry<String, Object[]> entry : columnValues.entrySet()) {
+            if (entry.getValue().length != keys.length) {
+                throw new IllegalArgumentException("列 " + entry.getKey() + " 的值个数与键个数不一致");
+            }
+        }
+
+        Map<String, String> types = columnTypes(tableName);
+        List<String> columns = new ArrayList<>(columnValues.keySet());
+        String[] arrayTypes = new String[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            arrayTypes[c] = types.get(columns.get(c).toLowerCase());
+            if (arrayTypes[c] == null) {
+                throw new SQLException("表 " + tableName + " 中不存在列: " + columns.get(c));
+            }
+        }
+
+        StringBuilder setClause = new StringBuilder();
+        StringBuilder unnest = new StringBuilder("unnest(?");
+        StringBuilder alias = new StringBuilder("v(bulk_key");
+        for (int c = 0; c < columns.size(); c++) {
+            setClause.append(c > 0 ? ", " : "").append(columns.get(c)).append(" = v.").append(columns.get(c));
+            unnest.append(", ?");
+            alias.append(", ").append(columns.get(c));
+        }
+        String source = unnest.append(") AS ").append(alias).append(")").toString();
+
+        boolean trackRatings = tracksRatings(tableName);
+        String sql;
+        if (trackRatings) {
+            // 与 update 相同：连接修改前的行，RETURNING 同时返回新旧 (recipeid, rating)。
+            // 目标行按主键与修改前的行一一对应，keyColumn 不唯一（例如 recipeid）时旧值也不会取错行
+            sql = "UPDATE reviews AS r SET " + setClause +
+                    " FROM (SELECT v.*, p.reviewid AS old_reviewid, p.recipeid AS old_recipeid, p.rating AS old_rating" +
+                    " FROM " + source + " JOIN reviews p ON p." + keyColumn + " = v.bulk_key FOR UPDATE OF p) AS v" +
+                    " WHERE r.reviewid = v.old_reviewid" +
+                    " RETURNING v.old_recipeid, v.old_rating, r.recipeid, r.rating";
+        } else {
+            sql = "UPDATE " + tableName + " AS t SET " + setClause + " FROM " + source +
+                    " WHERE t." + keyColumn + " = v.bulk_key";
+        }
+
+        int[] rows = lastOccurrences(keys);
+        int affected = 0;
+        beginWrite(writeTables(tableName, false));
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int from = 0; from < rows.length; from += KEY_CHUNK_SIZE) {
+                int to = Math.min(from + KEY_CHUNK_SIZE, rows.length);
+                Object[] arrays = new Object[columns.size() + 1];
+                Long[] chunkKeys = new Long[to - from];
+                for (int i = from; i < to; i++) {
+                    chunkKeys[i - from] = keys[rows[i]];
+                }
+                arrays[0] = connection.createArrayOf("bigint", chunkKeys);
+                for (int c = 0; c < columns.size(); c++) {
+                    Object[] values = columnValues.get(columns.get(c));
+                    Object[] chunkValues = new Object[to - from];
+                    for (int i = from; i < to; i++) {
+                        chunkValues[i - from] = values[rows[i]];
+                    }
+                    arrays[c + 1] = connection.createArrayOf(arrayTypes[c], chunkValues);
+                }
+                try {
+                    for (int i = 0; i < arrays.length; i++) {
+                        pstmt.setArray(i + 1, (Array) arrays[i]);
+                    }
+                    long startTime = System.nanoTime();
+                    int count = trackRatings ? executeTrackingRatings(pstmt, true) : pstmt.executeUpdate();
+                    logStatement(sql, arrays, startTime, count);
+                    affected += count;
+                } finally {
+                    for (Object array : arrays) {
+                        ((Array) array).free();
+                    }
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        return affected;
+    }
+
+
+    /**
+     * 批量按键删除，每个分块一条 DELETE ... WHERE key = ANY(?)，返回删除的行数
+     */
+    public int bulkDelete(String tableName, String keyColumn, long[] keys) throws SQLException {
+        if (keys == null || keys.length == 0) {
+            return 0;
+        }
+
+        String sql = "DELETE FROM " + tableName + " WHERE " + keyColumn + " = ANY(?)";
+        boolean trackRatings = tracksRatings(tableName);
+        if (trackRatings) {
+            sql += " RETURNING recipeid, rating";
+        }
+
+        Long[] distinctKeys = Arrays.stream(keys).distinct().boxed().toArray(Long[]::new);
+        int affected = 0;
+        String[] tables = writeTables(tableName, true);
+        beginWrite(tables);
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int from = 0; from < distinctKeys.length; from += KEY_CHUNK_SIZE) {
+                int to = Math.min(from + KEY_CHUNK_SIZE, distinctKeys.length);
+                Array keyArray = connection.createArrayOf("bigint", Arrays.copyOfRange(distinctKeys, from, to));
+                try {
+                    pstmt.setArray(1, keyArray);
+                    long startTime = System.nanoTime();
+                    int count = trackRatings ? executeTrackingRatings(pstmt, false) : pstmt.executeUpdate();
+                    logStatement(sql, new Object[]{keyArray}, startTime, count);
+                    affected += count;
+                } finally {
+                    keyArray.free();
+                }
+            }
+        } finally {
+            endWrite();
+            markRatingsStaleOnCascade(tableName, tables);
         }
+        return affected;
     }
 
 
     public List<Map<String, Object>> executeQuery(String sql, Object... params) throws SQLException {
+        long startTime = System.nanoTime();
         List<Map<String, Object>> results = new ArrayList<>();
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -210,22 +619,334 @@ public class DataQuery {
             }
 
             try (ResultSet rs = pstmt.executeQuery()) {
-                int columnCount = rs.getMetaData().getColumnCount();
+                RowMapper<Map<String, Object>> mapper = mapMapper(layoutFor(sql, rs), null);
                 while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = rs.getMetaData().getColumnName(i);
-                        row.put(columnName, rs.getObject(i));
-                    }
-                    results.add(row);
+                    results.add(mapper.mapRow(rs));
                 }
             }
         }
+        logStatement(sql, params, startTime, results.size());
 
         return results;
     }
 
 
+    public <T> List<T> executeQuery(String sql, RowMapper.Factory<T> factory, Object... params) throws SQLException {
+        long startTime = System.nanoTime();
+        List<T> results = new ArrayList<>();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                setParameter(pstmt, i + 1, params[i]);
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                RowMapper<T> mapper = layoutFor(sql, rs).compile(factory);
+                while (rs.next()) {
+                    results.add(mapper.mapRow(rs));
+                }
+            }
+        }
+        logStatement(sql, params, startTime, results.size());
+
+        return results;
+    }
+
+
+    /**
+     * 流式遍历结果集，每行的值写入同一个复用的 Object 数组（下标 0 对应第 1 列），
+     * 适合只做聚合或转存、不需要保留每行对象的场景。返回处理的行数。
+     */
+    public int forEachRow(String sql, RowHandler handler, Object... params) throws SQLException {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                setParameter(pstmt, i + 1, params[i]);
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int columnCount = layoutFor(sql, rs).columnCount();
+                Object[] row = new Object[columnCount];
+                while (rs.next()) {
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    handler.handle(row);
+                    rowCount++;
+                }
+            }
+        }
+        logStatement(sql, params, startTime, rowCount);
+
+        return rowCount;
+    }
+
+
+    private String buildSelectSql(String tableName, Map<String, Object> conditions, String[] columns) {
+        StringBuilder sqlBuilder = new StringBuilder("SELECT ");
+
+        if (columns == null || columns.length == 0) {
+            sqlBuilder.append("*");
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sqlBuilder.append(", ");
+                }
+                sqlBuilder.append(columns[i]);
+            }
+        }
+
+        sqlBuilder.append(" FROM ").append(tableName);
+
+        if (conditions != null && !conditions.isEmpty()) {
+            sqlBuilder.append(" WHERE ");
+            boolean first = true;
+            for (String column : conditions.keySet()) {
+                if (!first) {
+                    sqlBuilder.append(" AND ");
+                }
+                sqlBuilder.append(column).append(" = ?");
+                first = false;
+            }
+        }
+
+        return sqlBuilder.toString();
+    }
+
+
+    /**
+     * 表中各列的类型名（pg_type 名称，如 int8、text、timestamp），按表缓存
+     */
+    private Map<String, String> columnTypes(String tableName) throws SQLException {
+        String table = tableName.trim().toLowerCase();
+        Map<String, String> types = columnTypeCache.get(table);
+        if (types != null) {
+            return types;
+        }
+        types = new HashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT column_name, udt_name FROM information_schema.columns " +
+                        "WHERE table_schema = current_schema() AND table_name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    types.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+        if (types.isEmpty()) {
+            throw new SQLException("表不存在: " + tableName);
+        }
+        columnTypeCache.put(table, types);
+        return types;
+    }
+
+
+    /**
+     * 每个不同键最后一次出现的下标，按首次出现的顺序排列
+     */
+    private static int[] lastOccurrences(long[] keys) {
+        Map<Long, Integer> last = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            last.put(keys[i], i);
+        }
+        int[] rows = new int[last.size()];
+        int k = 0;
+        for (int index : last.values()) {
+            rows[k++] = index;
+        }
+        return rows;
+    }
+
+
+    /**
+     * 确保查询列中包含指定的列；columns 为空表示查询所有列
+     */
+    private static String[] withColumns(String[] columns, String... required) {
+        if (columns == null || columns.length == 0) {
+            return columns;
+        }
+        List<String> result = new ArrayList<>(Arrays.asList(columns));
+        for (String column : required) {
+            boolean present = false;
+            for (String existing : result) {
+                if (existing.equalsIgnoreCase(column)) {
+                    present = true;
+                    break;
+                }
+            }
+            if (!present) {
+                result.add(column);
+            }
+        }
+        return result.size() == columns.length ? columns : result.toArray(new String[0]);
+    }
+
+
+    private int bindConditions(PreparedStatement pstmt, Map<String, Object> conditions, int index) throws SQLException {
+        if (conditions != null && !conditions.isEmpty()) {
+            for (Object value : conditions.values()) {
+                setParameter(pstmt, index++, value);
+            }
+        }
+        return index;
+    }
+
+
+    private boolean tracksRatings(String tableName) {
+        return ratingSummary != null && "reviews".equalsIgnoreCase(tableName.trim());
+    }
+
+
+    private static int whereStart(String sql) {
+        int where = sql.indexOf(" WHERE ");
+        return where >= 0 ? where : sql.length();
+    }
+
+
+    /**
+     * 执行带 RETURNING 的 reviews 修改/删除，把评分变化交给 RatingSummary，返回影响的行数。
+     * 修改语句返回 (旧 recipeid, 旧 rating, 新 recipeid, 新 rating)，删除语句返回 (recipeid, rating)。
+     */
+    private int executeTrackingRatings(PreparedStatement pstmt, boolean isUpdate) throws SQLException {
+        List<long[]> changes = new ArrayList<>();
+        int affected = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                affected++;
+                long oldRecipeId = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    changes.add(new long[]{oldRecipeId, rs.getInt(2), -1});
+                }
+                if (isUpdate) {
+                    long newRecipeId = rs.getLong(3);
+                    if (!rs.wasNull()) {
+                        changes.add(new long[]{newRecipeId, rs.getInt(4), 1});
+                    }
+                }
+            }
+        }
+        ratingSummary.applyChanges(changes);
+        return affected;
+    }
+
+
+    private static Object[] conditionValues(Map<String, Object> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return new Object[0];
+        }
+        // 与 buildSelectSql 中条件列的遍历顺序一致
+        return conditions.values().toArray();
+    }
+
+
+    /**
+     * 语句成功执行后交给 SlowQueryLog 记录
+     */
+    private void logStatement(String sql, Object[] params, long startNanos, long rows) {
+        if (slowQueryLog != null) {
+            slowQueryLog.record(connection, sql, params, params.length, System.nanoTime() - startNanos, rows);
+        }
+    }
+
+
+    /**
+     * 写语句执行前调用：使缓存中这些表的结果失效，事务结束前不再缓存它们
+     */
+    private void beginWrite(String[] tables) {
+        if (queryCache != null) {
+            queryCache.beginWrite(connection, tables);
+        }
+    }
+
+
+    /**
+     * 写语句执行后调用：自动提交模式下语句已提交，立即结束；否则等事务提交或回滚时由 ConnectionManager 通知缓存
+     */
+    private void endWrite() throws SQLException {
+        if (queryCache != null && connection.getAutoCommit()) {
+            queryCache.afterCompletion(connection, true);
+        }
+    }
+
+
+    /**
+     * 删除 users / recipes 时级联删除的评论拿不到评分，只能让汇总重新载入
+     */
+    private void markRatingsStaleOnCascade(String tableName, String[] tables) {
+        if (ratingSummary != null && !tracksRatings(tableName) && Arrays.asList(tables).contains("reviews")) {
+            ratingSummary.markStale();
+        }
+    }
+
+
+    /**
+     * 一条写语句会修改的表：删除时包括外键级联的子表；涉及 reviews 且维护评分汇总时还包括汇总表
+     */
+    private String[] writeTables(String tableName, boolean cascade) {
+        Set<String> tables = new LinkedHashSet<>(Arrays.asList(
+                cascade ? cascadeTables(tableName) : new String[]{tableName.trim().toLowerCase()}));
+        if (tables.contains("reviews") && ratingSummary != null) {
+            tables.add("recipe_rating_summary");
+        }
+        return tables.toArray(new String[0]);
+    }
+
+
+    /**
+     * 从 tableName 删除行时可能被外键级联修改的所有表（含自身）
+     */
+    static String[] cascadeTables(String tableName) {
+        Set<String> tables = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(tableName.trim().toLowerCase());
+        while (!queue.isEmpty()) {
+            String table = queue.poll();
+            if (tables.add(table)) {
+                queue.addAll(Arrays.asList(CASCADE_CHILDREN.getOrDefault(table, new String[0])));
+            }
+        }
+        return tables.toArray(new String[0]);
+    }
+
+
+    /**
+     * 取得该 SQL 对应的列布局，同一查询形态只解析一次元数据
+     */
+    private ColumnLayout layoutFor(String sql, ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        ColumnLayout layout = layoutCache.get(sql);
+        if (layout == null || !layout.matches(metaData)) {
+            layout = ColumnLayout.of(metaData);
+            layoutCache.put(sql, layout);
+        }
+        return layout;
+    }
+
+
+    /**
+     * 生成 Map 形式的行映射器，keys 为 null 时使用结果集列名
+     */
+    private static RowMapper<Map<String, Object>> mapMapper(ColumnLayout layout, String[] keys) {
+        int columnCount = layout.columnCount();
+        String[] names = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = keys != null ? keys[i] : layout.label(i + 1);
+        }
+        // 预估容量，避免 HashMap 扩容
+        int capacity = (int) (columnCount / 0.75f) + 1;
+        return rs -> {
+            Map<String, Object> row = new HashMap<>(capacity);
+            for (int i = 0; i < columnCount; i++) {
+                row.put(names[i], rs.getObject(i + 1));
+            }
+            return row;
+        };
+    }
+
+
     private void setParameter(PreparedStatement pstmt, int index, Object value) throws SQLException {
         if (value == null) {
             pstmt.setNull(index, java.sql.Types.NULL);
@@ -249,4 +970,8 @@ public class DataQuery {
             pstmt.setObject(index, value);
         }
     }
+
+    public interface RowHandler {
+        void handle(Object[] row) throws SQLException;
+    }
 }
\ No newline at end of file
@@ -4,13 +4,24 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class DataWriter {
+    private static final Pattern TARGET_TABLE_PATTERN = Pattern.compile(
+            "^\\s*(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM)\\s+([A-Za-z_][A-Za-z0-9_.]*)",
+            Pattern.CASE_INSENSITIVE);
+
     private Connection connection;
     private int batchSize;
+    private QueryCache queryCache;
+    private RatingSummary ratingSummary;
+    private SlowQueryLog slowQueryLog;
 
 
     public DataWriter(Connection connection, int batchSize) {
@@ -19,14 +30,53 @@ public class DataWriter {
     }
 
 
+    /**
+     * 与 DataQuery 共享同一个 QueryCache 时，写入会使对应表的缓存失效（手动提交时同样需注册到 ConnectionManager）
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+
+    /**
+     * 设置后，向 reviews 批量插入时增量维护评分汇总，清空 reviews 时标记汇总失效
+     */
+    public void setRatingSummary(RatingSummary ratingSummary) {
+        this.ratingSummary = ratingSummary;
+    }
+
+
+    /**
+     * 设置后，每次批量执行都记录到 SlowQueryLog（传 null 关闭）
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+
     public void truncateTable(String tableName, boolean cascade) throws SQLException {
         String sql = cascade
                 ? "TRUNCATE TABLE " + tableName + " CASCADE"
                 : "TRUNCATE TABLE " + tableName;
 
+        // CASCADE 会一并清空引用该表的其它表；reviews 的点赞由触发器清空，不带 CASCADE 也一样
+        String[] tables = cascade || "reviews".equalsIgnoreCase(tableName.trim())
+                ? DataQuery.cascadeTables(tableName) : new String[]{tableName.trim().toLowerCase()};
+        beginWrite(tables);
         try (Statement stmt = connection.createStatement()) {
+            long startTime = System.nanoTime();
             stmt.executeUpdate(sql);
+            if (slowQueryLog != null) {
+                slowQueryLog.record(connection, sql, null, 0, System.nanoTime() - startTime, 0);
+            }
             System.out.println("已清空表: " + tableName);
+        } finally {
+            endWrite();
+            List<String> truncated = Arrays.asList(tables);
+            if (ratingSummary != null
+                    && (truncated.contains("reviews") || truncated.contains("recipe_rating_summary"))) {
+                ratingSummary.markStale();
+            }
         }
     }
 
@@ -57,6 +107,7 @@ public class DataWriter {
         int totalInserted = 0;
         int batchCounter = 0;
 
+        beginWrite(insertTables(tableName));
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             for (Map<String, Object> row : data) {
                 // 设置参数
@@ -70,16 +121,28 @@ public class DataWriter {
 
                 // 达到批次大小时执行
                 if (batchCounter % batchSize == 0) {
-                    int[] results = pstmt.executeBatch();
-                    totalInserted += countSuccess(results);
+                    totalInserted += executeBatch(pstmt, sql, batchSize);
                     pstmt.clearBatch();
                 }
             }
 
             if (batchCounter % batchSize != 0) {
-                int[] results = pstmt.executeBatch();
-                totalInserted += countSuccess(results);
+                totalInserted += executeBatch(pstmt, sql, batchCounter % batchSize);
+            }
+        } finally {
+            endWrite();
+        }
+
+        if (ratingSummary != null && "reviews".equalsIgnoreCase(tableName.trim())) {
+            List<long[]> changes = new ArrayList<>();
+            for (Map<String, Object> row : data) {
+                Object recipeId = row.get("recipeid");
+                Object rating = row.get("rating");
+                if (recipeId != null && rating != null) {
+                    changes.add(new long[]{((Number) recipeId).longValue(), ((Number) rating).longValue(), 1});
+                }
             }
+            ratingSummary.applyChanges(changes);
         }
 
         System.out.println("批量插入完成: " + totalInserted + " 条记录到表 " + tableName);
@@ -91,6 +154,13 @@ public class DataWriter {
         int totalInserted = 0;
         int batchCounter = 0;
 
+        String tableName = extractTableName(sql);
+        if (tableName != null) {
+            beginWrite(insertTables(tableName));
+        } else if (queryCache != null) {
+            // 无法从 SQL 中识别目标表时保守处理
+            queryCache.clear();
+        }
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             while (dataSetter.hasNext()) {
                 dataSetter.setParameters(pstmt);
@@ -99,21 +169,80 @@ public class DataWriter {
 
                 // 达到批次大小时执行
                 if (batchCounter % batchSize == 0) {
-                    int[] results = pstmt.executeBatch();
-                    totalInserted += countSuccess(results);
+                    totalInserted += executeBatch(pstmt, sql, batchSize);
                     pstmt.clearBatch();
                 }
             }
 
             if (batchCounter % batchSize != 0) {
-                int[] results = pstmt.executeBatch();
-                totalInserted += countSuccess(results);
+                totalInserted += executeBatch(pstmt, sql, batchCounter % batchSize);
             }
+        } finally {
+            endWrite();
+        }
+
+        if (ratingSummary != null && "reviews".equalsIgnoreCase(tableName)) {
+            // 通过 BatchDataSetter 写入时拿不到每行的评分，只能让汇总重新载入
+            ratingSummary.markStale();
         }
 
         return totalInserted;
     }
 
+
+    /**
+     * 执行一批并返回成功行数；批量语句没有可复现的单组参数，只记录不抓取执行计划
+     */
+    private int executeBatch(PreparedStatement pstmt, String sql, int batchRows) throws SQLException {
+        long startTime = System.nanoTime();
+        int inserted = countSuccess(pstmt.executeBatch());
+        if (slowQueryLog != null) {
+            slowQueryLog.record(connection, sql, null, SlowQueryLog.countPlaceholders(sql) * batchRows,
+                    System.nanoTime() - startTime, inserted);
+        }
+        return inserted;
+    }
+
+
+    /**
+     * 插入会修改的表：维护评分汇总时向 reviews 插入还会修改汇总表
+     */
+    private String[] insertTables(String tableName) {
+        if (!"reviews".equalsIgnoreCase(tableName.trim())) {
+            return new String[]{tableName};
+        }
+        return ratingSummary != null ? new String[]{tableName, "recipe_rating_summary"} : new String[]{tableName};
+    }
+
+
+    /**
+     * 写入前使缓存中这些表的结果失效，事务结束前不再缓存它们
+     */
+    private void beginWrite(String[] tables) {
+        if (queryCache != null) {
+            queryCache.beginWrite(connection, tables);
+        }
+    }
+
+
+    /**
+     * 自动提交模式下写入已提交，立即结束；否则等 ConnectionManager 提交或回滚时通知缓存
+     */
+    private void endWrite() throws SQLException {
+        if (queryCache != null && connection.getAutoCommit()) {
+            queryCache.afterCompletion(connection, true);
+        }
+    }
+
+
+    /**
+     * 从 INSERT INTO / UPDATE / DELETE FROM 语句中取出目标表名，识别失败返回 null
+     */
+    static String extractTableName(String sql) {
+        Matcher matcher = TARGET_TABLE_PATTERN.matcher(sql);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
     private void setParameter(PreparedStatement pstmt, int index, Object value) throws SQLException {
         if (value == null) {
             pstmt.setNull(index, java.sql.Types.NULL);
@@ -0,0 +1,265 @@
+package main.task3;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * user_follows 的压缩稀疏行（CSR）图，关注方向与被关注方向各一份。
+ * 用户 id 映射为 0..n-1 的稠密序号；每个方向为 offsets[n+1] + targets[m] 两个 int 数组，
+ * 邻接表内按序号升序，两个方向合计约每条边 8 字节。
+ * 构建完成后只读，可被多个线程同时查询。
+ */
+public class FollowGraph {
+    private static final int PARALLEL_FRONTIER = 4096; // BFS 前沿超过该大小时并行扩展
+
+    private final long[] userIds;        // 序号 -> 用户 id，升序
+    private final int[] outOffsets;      // 关注：follower -> following
+    private final int[] outTargets;
+    private final int[] inOffsets;       // 粉丝：following -> follower
+    private final int[] inTargets;
+
+
+    private FollowGraph(long[] userIds, CsrMatrix out, CsrMatrix in) {
+        this.userIds = userIds;
+        this.outOffsets = out.offsets;
+        this.outTargets = out.columns;
+        this.inOffsets = in.offsets;
+        this.inTargets = in.columns;
+    }
+
+
+    /**
+     * 由 (followerid, followingid) 边构建，两个数组等长、同一下标为一条边，重复边会被合并
+     */
+    public static FollowGraph build(long[] followerIds, long[] followingIds) {
+        if (followerIds.length != followingIds.length) {
+            throw new IllegalArgumentException("边的两端数组长度不一致");
+        }
+        int edgeCount = followerIds.length;
+
+        long[] all = new long[edgeCount * 2];
+        System.arraycopy(followerIds, 0, all, 0, edgeCount);
+        System.arraycopy(followingIds, 0, all, edgeCount, edgeCount);
+        long[] userIds = Arrays.stream(all).parallel().sorted().distinct().toArray();
+
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        IntStream.range(0, edgeCount).parallel().forEach(i -> {
+            from[i] = Arrays.binarySearch(userIds, followerIds[i]);
+            to[i] = Arrays.binarySearch(userIds, followingIds[i]);
+        });
+
+        return new FollowGraph(userIds,
+                CsrMatrix.build(userIds.length, from, to),
+                CsrMatrix.build(userIds.length, to, from));
+    }
+
+
+    /**
+     * 从 user_follows 表载入
+     */
+    public static FollowGraph load(Connection connection) throws SQLException {
+        long[] followers = new long[1024];
+        long[] followings = new long[1024];
+        int count = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT followerid, followingid FROM user_follows")) {
+            pstmt.setFetchSize(10000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == followers.length) {
+                        followers = Arrays.copyOf(followers, count * 2);
+                        followings = Arrays.copyOf(followings, count * 2);
+                    }
+                    followers[count] = rs.getLong(1);
+                    followings[count] = rs.getLong(2);
+                    count++;
+                }
+            }
+        }
+        return build(Arrays.copyOf(followers, count), Arrays.copyOf(followings, count));
+    }
+
+
+    public int userCount() {
+        return userIds.length;
+    }
+
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * 该用户关注的人数，用户不在图中时为 0
+     */
+    public int followingCount(long userId) {
+        int node = ordinal(userId);
+        return node < 0 ? 0 : outOffsets[node + 1] - outOffsets[node];
+    }
+
+    /**
+     * 该用户的粉丝数
+     */
+    public int followerCount(long userId) {
+        int node = ordinal(userId);
+        return node < 0 ? 0 : inOffsets[node + 1] - inOffsets[node];
+    }
+
+    public long[] following(long userId) {
+        int node = ordinal(userId);
+        return node < 0 ? new long[0] : toUserIds(outTargets, outOffsets[node], outOffsets[node + 1]);
+    }
+
+    public long[] followers(long userId) {
+        int node = ordinal(userId);
+        return node < 0 ? new long[0] : toUserIds(inTargets, inOffsets[node], inOffsets[node + 1]);
+    }
+
+
+    /**
+     * a 关注 b 且 b 关注 a
+     */
+    public boolean isMutual(long a, long b) {
+        int na = ordinal(a);
+        int nb = ordinal(b);
+        if (na < 0 || nb < 0) {
+            return false;
+        }
+        return Arrays.binarySearch(outTargets, outOffsets[na], outOffsets[na + 1], nb) >= 0
+                && Arrays.binarySearch(outTargets, outOffsets[nb], outOffsets[nb + 1], na) >= 0;
+    }
+
+
+    /**
+     * 与该用户互相关注的所有用户：关注列表与粉丝列表的有序归并求交
+     */
+    public long[] mutualFollows(long userId) {
+        int node = ordinal(userId);
+        if (node < 0) {
+            return new long[0];
+        }
+        int i = outOffsets[node];
+        int iEnd = outOffsets[node + 1];
+        int j = inOffsets[node];
+        int jEnd = inOffsets[node + 1];
+        long[] result = new long[Math.min(iEnd - i, jEnd - j)];
+        int k = 0;
+        while (i < iEnd && j < jEnd) {
+            if (outTargets[i] < inTargets[j]) {
+                i++;
+            } else if (outTargets[i] > inTargets[j]) {
+                j++;
+            } else {
+                result[k++] = userIds[outTargets[i]];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+
+    /**
+     * 沿关注方向做 k 跳 BFS，返回 1..k 跳内可达的用户（不含自己），按跳数由近到远排列。
+     * k = 2 即"朋友的朋友"。前沿较大时并行扩展，访问标记用原子位图。
+     */
+    public long[] kHop(long userId, int k) {
+        int start = ordinal(userId);
+        if (start < 0 || k <= 0) {
+            return new long[0];
+        }
+
+        AtomicLongArray visited = new AtomicLongArray((userIds.length + 63) >>> 6);
+        markVisited(visited, start);
+
+        int[] frontier = {start};
+        int[] reached = new int[0];
+        for (int hop = 0; hop < k && frontier.length > 0; hop++) {
+            frontier = expand(frontier, visited);
+            int[] merged = Arrays.copyOf(reached, reached.length + frontier.length);
+            System.arraycopy(frontier, 0, merged, reached.length, frontier.length);
+            reached = merged;
+        }
+        return toUserIds(reached, 0, reached.length);
+    }
+
+
+    private int[] expand(int[] frontier, AtomicLongArray visited) {
+        if (frontier.length < PARALLEL_FRONTIER) {
+            int[] next = new int[16];
+            int count = 0;
+            for (int node : frontier) {
+                for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+                    int target = outTargets[e];
+                    if (markVisited(visited, target)) {
+                        if (count == next.length) {
+                            next = Arrays.copyOf(next, count * 2);
+                        }
+                        next[count++] = target;
+                    }
+                }
+            }
+            return Arrays.copyOf(next, count);
+        }
+
+        // 并行：每个前沿节点各自产出新访问的邻居，CAS 保证每个节点只被一个线程认领
+        return Arrays.stream(frontier).parallel()
+                .flatMap(node -> IntStream.range(outOffsets[node], outOffsets[node + 1])
+                        .map(e -> outTargets[e])
+                        .filter(target -> markVisited(visited, target)))
+                .toArray();
+    }
+
+
+    /**
+     * 原子地设置访问标记，返回是否由本次调用首次设置
+     */
+    private static boolean markVisited(AtomicLongArray visited, int node) {
+        int word = node >>> 6;
+        long bit = 1L << node;
+        while (true) {
+            long current = visited.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (visited.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+
+
+    private int ordinal(long userId) {
+        int index = Arrays.binarySearch(userIds, userId);
+        return index >= 0 ? index : -1;
+    }
+
+    private long[] toUserIds(int[] nodes, int from, int to) {
+        long[] result = new long[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = userIds[nodes[i]];
+        }
+        return result;
+    }
+
+
+    /**
+     * 图结构占用的字节数
+     */
+    public long memoryBytes() {
+        return 8L * userIds.length
+                + 4L * (outOffsets.length + inOffsets.length)
+                + 4L * (outTargets.length + inTargets.length);
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("FollowGraph{users=%d, edges=%d, %.1f MB}",
+                userIds.length, outTargets.length, memoryBytes() / (1024.0 * 1024.0));
+    }
+}
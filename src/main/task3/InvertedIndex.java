@@ -0,0 +1,350 @@
+package main.task3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 内存倒排索引：词项 id -> 文档（食谱）集合。
+ * - 文档 id 先映射为 0..n-1 的稠密序号，倒排表存 int 序号而不是 long id
+ * - 稀疏词项用有序 int 数组，文档频率超过 1/32 的稠密词项改用位图（此时位图更小）
+ * - AND 从最短的倒排表出发，对其它数组用 galloping（指数 + 二分）前进，对位图直接测试
+ * - 候选较多时把序号空间切成若干段，用并行流在多核上分别求值再按段拼接
+ * 构建完成后只读，可被多个线程同时查询。
+ */
+public class InvertedIndex {
+    private static final int BITMAP_DIVISOR = 32;
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // 驱动倒排表超过该长度时并行求值
+
+    private final long[] docIds;                 // 序号 -> 文档 id，升序
+    private final Map<Long, Posting> postings;
+
+
+    /**
+     * 一个词项的倒排表，ids 与 bitmap 二选一
+     */
+    static final class Posting {
+        final int[] ids;
+        final long[] bitmap;
+        final int size;
+
+        Posting(int[] ids, long[] bitmap, int size) {
+            this.ids = ids;
+            this.bitmap = bitmap;
+            this.size = size;
+        }
+
+        boolean contains(int ordinal) {
+            if (bitmap != null) {
+                return (bitmap[ordinal >>> 6] & (1L << ordinal)) != 0;
+            }
+            return Arrays.binarySearch(ids, ordinal) >= 0;
+        }
+
+        long memoryBytes() {
+            return bitmap != null ? 8L * bitmap.length : 4L * ids.length;
+        }
+    }
+
+
+    /**
+     * 在有序 int 数组上单调前进的游标，advanceTo 使用 galloping 查找
+     */
+    static final class Cursor {
+        private final int[] ids;
+        private int pos;
+
+        Cursor(int[] ids, int from) {
+            this.ids = ids;
+            this.pos = lowerBound(ids, from, 0, ids.length);
+        }
+
+        /**
+         * 前进到第一个 >= target 的位置，返回该位置的值是否等于 target
+         */
+        boolean advanceTo(int target) {
+            if (pos >= ids.length) {
+                return false;
+            }
+            if (ids[pos] < target) {
+                // 指数步长确定区间，再在区间内二分
+                int step = 1;
+                int lo = pos;
+                int hi = pos + 1;
+                while (hi < ids.length && ids[hi] < target) {
+                    lo = hi;
+                    step <<= 1;
+                    hi = pos + step;
+                }
+                pos = lowerBound(ids, target, lo + 1, Math.min(hi + 1, ids.length));
+            }
+            return pos < ids.length && ids[pos] == target;
+        }
+    }
+
+
+    private InvertedIndex(long[] docIds, Map<Long, Posting> postings) {
+        this.docIds = docIds;
+        this.postings = postings;
+    }
+
+
+    /**
+     * 由 (词项 id, 文档 id) 对构建索引，两个数组等长、同一下标为一对，允许重复
+     */
+    public static InvertedIndex build(long[] termIds, long[] documentIds) {
+        if (termIds.length != documentIds.length) {
+            throw new IllegalArgumentException("词项与文档数组长度不一致");
+        }
+
+        long[] sortedDocs = Arrays.stream(documentIds).parallel().sorted().distinct().toArray();
+        int universe = sortedDocs.length;
+
+        // 按词项分组，记录每个词项的序号列表
+        Map<Long, int[]> buffers = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (int i = 0; i < termIds.length; i++) {
+            int ordinal = Arrays.binarySearch(sortedDocs, documentIds[i]);
+            Long term = termIds[i];
+            int size = sizes.getOrDefault(term, 0);
+            int[] buffer = buffers.get(term);
+            if (buffer == null) {
+                buffer = new int[4];
+                buffers.put(term, buffer);
+            } else if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+                buffers.put(term, buffer);
+            }
+            buffer[size] = ordinal;
+            sizes.put(term, size + 1);
+        }
+
+        // 各词项排序、去重、选择存储形式，彼此独立，可并行
+        List<Long> terms = new ArrayList<>(buffers.keySet());
+        Posting[] built = new Posting[terms.size()];
+        IntStream.range(0, terms.size()).parallel().forEach(t -> {
+            Long term = terms.get(t);
+            int[] ids = Arrays.copyOf(buffers.get(term), sizes.get(term));
+            Arrays.sort(ids);
+            int distinct = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            built[t] = toPosting(Arrays.copyOf(ids, distinct), universe);
+        });
+
+        Map<Long, Posting> postings = new HashMap<>(terms.size() * 2);
+        for (int t = 0; t < terms.size(); t++) {
+            postings.put(terms.get(t), built[t]);
+        }
+        return new InvertedIndex(sortedDocs, postings);
+    }
+
+
+    private static Posting toPosting(int[] ids, int universe) {
+        if ((long) ids.length * BITMAP_DIVISOR > universe) {
+            long[] bitmap = new long[(universe + 63) >>> 6];
+            for (int ordinal : ids) {
+                bitmap[ordinal >>> 6] |= 1L << ordinal;
+            }
+            return new Posting(null, bitmap, ids.length);
+        }
+        return new Posting(ids, null, ids.length);
+    }
+
+
+    /**
+     * 求值：包含 required 中全部词项、且（anyOf 非空时）至少包含 anyOf 中一个、且不含 excluded 中任何词项的文档。
+     * required 中有未知词项时结果为空；anyOf / excluded 中的未知词项被忽略。返回升序的文档 id。
+     */
+    public long[] evaluate(long[] required, long[] anyOf, long[] excluded) {
+        List<Posting> must = new ArrayList<>();
+        for (long term : required) {
+            Posting posting = postings.get(term);
+            if (posting == null) {
+                return new long[0];
+            }
+            must.add(posting);
+        }
+        List<Posting> should = resolve(anyOf);
+        if (anyOf.length > 0 && should.isEmpty()) {
+            return new long[0];
+        }
+        List<Posting> mustNot = resolve(excluded);
+
+        // 从最短的倒排表出发
+        must.sort((a, b) -> Integer.compare(a.size, b.size));
+        int driverSize = must.isEmpty() ? docIds.length : must.get(0).size;
+
+        int segments = driverSize >= PARALLEL_THRESHOLD ? Runtime.getRuntime().availableProcessors() * 4 : 1;
+        int segmentLength = (docIds.length + segments - 1) / Math.max(segments, 1);
+
+        int[][] parts = new int[segments][];
+        IntStream range = IntStream.range(0, segments);
+        (segments > 1 ? range.parallel() : range).forEach(s -> {
+            int lo = s * segmentLength;
+            int hi = Math.min(docIds.length, lo + segmentLength);
+            parts[s] = lo < hi ? evaluateRange(must, should, mustNot, lo, hi) : new int[0];
+        });
+
+        int total = 0;
+        for (int[] part : parts) {
+            total += part.length;
+        }
+        long[] result = new long[total];
+        int k = 0;
+        for (int[] part : parts) {
+            for (int ordinal : part) {
+                result[k++] = docIds[ordinal];
+            }
+        }
+        return result;
+    }
+
+
+    private List<Posting> resolve(long[] terms) {
+        List<Posting> result = new ArrayList<>();
+        for (long term : terms) {
+            Posting posting = postings.get(term);
+            if (posting != null) {
+                result.add(posting);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * 在序号区间 [lo, hi) 内求值
+     */
+    private static int[] evaluateRange(List<Posting> must, List<Posting> should, List<Posting> mustNot, int lo, int hi) {
+        Cursor[] mustCursors = cursors(must, lo);
+        Cursor[] shouldCursors = cursors(should, lo);
+        Cursor[] notCursors = cursors(mustNot, lo);
+
+        int[] out = new int[16];
+        int count = 0;
+
+        Posting driver = must.isEmpty() ? null : must.get(0);
+        if (driver != null && driver.ids != null) {
+            int start = lowerBound(driver.ids, lo, 0, driver.ids.length);
+            for (int i = start; i < driver.ids.length && driver.ids[i] < hi; i++) {
+                int candidate = driver.ids[i];
+                if (accept(candidate, must, mustCursors, 1, should, shouldCursors, mustNot, notCursors)) {
+                    if (count == out.length) {
+                        out = Arrays.copyOf(out, count * 2);
+                    }
+                    out[count++] = candidate;
+                }
+            }
+        } else {
+            // 没有必选词项，或最短的必选词项也是位图：逐个序号检查
+            for (int candidate = lo; candidate < hi; candidate++) {
+                if (driver != null && !driver.contains(candidate)) {
+                    continue;
+                }
+                if (accept(candidate, must, mustCursors, driver == null ? 0 : 1, should, shouldCursors, mustNot, notCursors)) {
+                    if (count == out.length) {
+                        out = Arrays.copyOf(out, count * 2);
+                    }
+                    out[count++] = candidate;
+                }
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+
+    private static boolean accept(int candidate,
+                                  List<Posting> must, Cursor[] mustCursors, int mustFrom,
+                                  List<Posting> should, Cursor[] shouldCursors,
+                                  List<Posting> mustNot, Cursor[] notCursors) {
+        for (int j = mustFrom; j < must.size(); j++) {
+            if (!matches(must.get(j), mustCursors[j], candidate)) {
+                return false;
+            }
+        }
+        if (!should.isEmpty()) {
+            boolean any = false;
+            // 每个游标都要前进到 candidate，保持单调，不能提前 break
+            for (int j = 0; j < should.size(); j++) {
+                any |= matches(should.get(j), shouldCursors[j], candidate);
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        for (int j = 0; j < mustNot.size(); j++) {
+            if (matches(mustNot.get(j), notCursors[j], candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static boolean matches(Posting posting, Cursor cursor, int candidate) {
+        return cursor != null ? cursor.advanceTo(candidate) : posting.contains(candidate);
+    }
+
+
+    private static Cursor[] cursors(List<Posting> list, int from) {
+        Cursor[] cursors = new Cursor[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            int[] ids = list.get(i).ids;
+            cursors[i] = ids != null ? new Cursor(ids, from) : null;
+        }
+        return cursors;
+    }
+
+
+    /**
+     * ids[from, to) 中第一个 >= key 的下标
+     */
+    private static int lowerBound(int[] ids, int key, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ids[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 包含该词项的文档数
+     */
+    public int documentFrequency(long termId) {
+        Posting posting = postings.get(termId);
+        return posting == null ? 0 : posting.size;
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    public int documentCount() {
+        return docIds.length;
+    }
+
+    /**
+     * 倒排表与序号映射占用的字节数（不含 HashMap 本身）
+     */
+    public long memoryBytes() {
+        long bytes = 8L * docIds.length;
+        for (Posting posting : postings.values()) {
+            bytes += posting.memoryBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+package main.task3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 键集（seek）分页的一页结果。
+ * nextToken 是不透明的续页令牌，编码了本页最后一行的排序键，下一页据此直接定位，
+ * 与 OFFSET 不同，翻到多深每页的代价都相同。
+ */
+public class KeysetPage<T> {
+    private final List<T> rows;
+    private final String nextToken;
+
+    KeysetPage(List<T> rows, String nextToken) {
+        this.rows = rows;
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    /**
+     * 下一页的令牌，没有更多数据时为 null
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+
+
+    /**
+     * 查询的指纹（表、条件列及其取值、排序列和方向），防止把一个查询的令牌用到另一个查询上，
+     * 例如把某个食谱评论的令牌用于另一个食谱
+     */
+    static int shapeHash(String tableName, Map<String, Object> conditions, String[] sortColumns, boolean descending) {
+        int hash = tableName.toLowerCase().hashCode();
+        if (conditions != null) {
+            for (Map.Entry<String, Object> condition : conditions.entrySet()) {
+                hash = 31 * hash + condition.getKey().toLowerCase().hashCode();
+                hash = 31 * hash + Objects.hashCode(condition.getValue());
+            }
+        }
+        for (String column : sortColumns) {
+            hash = 31 * hash + column.toLowerCase().hashCode();
+        }
+        return 31 * hash + (descending ? 1 : 0);
+    }
+
+
+    static String encodeToken(int shapeHash, Object[] sortValues) throws SQLException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(shapeHash);
+            out.writeByte(sortValues.length);
+            for (Object value : sortValues) {
+                if (value instanceof Long) {
+                    out.writeByte('L');
+                    out.writeLong((Long) value);
+                } else if (value instanceof Integer) {
+                    out.writeByte('I');
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Timestamp) {
+                    Timestamp ts = (Timestamp) value;
+                    out.writeByte('T');
+                    out.writeLong(ts.getTime());
+                    out.writeInt(ts.getNanos());
+                } else if (value instanceof Double) {
+                    out.writeByte('D');
+                    out.writeDouble((Double) value);
+                } else if (value instanceof BigDecimal) {
+                    out.writeByte('B');
+                    out.writeUTF(value.toString());
+                } else if (value instanceof String) {
+                    out.writeByte('S');
+                    out.writeUTF((String) value);
+                } else {
+                    throw new SQLException("不支持作为分页排序键的类型: "
+                            + (value == null ? "null" : value.getClass().getName()));
+                }
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new SQLException("生成续页令牌失败", e);
+        }
+    }
+
+
+    static Object[] decodeToken(String token, int expectedShapeHash, int sortColumnCount) throws SQLException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+            if (in.readInt() != expectedShapeHash || in.readByte() != sortColumnCount) {
+                throw new SQLException("续页令牌与当前查询不匹配");
+            }
+            Object[] values = new Object[sortColumnCount];
+            for (int i = 0; i < sortColumnCount; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case 'L':
+                        values[i] = in.readLong();
+                        break;
+                    case 'I':
+                        values[i] = in.readInt();
+                        break;
+                    case 'T':
+                        Timestamp ts = new Timestamp(in.readLong());
+                        ts.setNanos(in.readInt());
+                        values[i] = ts;
+                        break;
+                    case 'D':
+                        values[i] = in.readDouble();
+                        break;
+                    case 'B':
+                        values[i] = new BigDecimal(in.readUTF());
+                        break;
+                    case 'S':
+                        values[i] = in.readUTF();
+                        break;
+                    default:
+                        throw new SQLException("续页令牌格式错误");
+                }
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SQLException("续页令牌格式错误", e);
+        }
+    }
+}
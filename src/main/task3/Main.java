@@ -29,10 +29,22 @@ public class Main {
             System.out.println();
 
             try {
+                System.out.println("应用 schema 迁移");
+                try {
+                    int applied = new SchemaMigrator(connMgr.getConnection()).migrate(SchemaMigrator.DEFAULT_MIGRATION_DIR);
+                    System.out.println("本次执行迁移 " + applied + " 个");
+                } catch (Exception e) {
+                    // 后续导入和测试依赖迁移建立的表和列，继续运行只会在更晚的地方失败
+                    System.out.println("迁移失败，停止运行: " + e.getMessage());
+                    return;
+                }
+                System.out.println();
+
                 System.out.println("3. CSV 数据导入");
                 String dataDirectory = "final_data";
                 
                 CsvDataImporter importer = new CsvDataImporter(connMgr, dataDirectory);
+                importer.setReviewPartitioning(ReviewPartitions.Granularity.MONTHLY);
                 
                 try {
                     importer.importAllCsvFiles();
@@ -43,6 +55,9 @@ public class Main {
 
                 System.out.println("4. 性能测试");
                 PerformanceTest perfTest = new PerformanceTest(connMgr, "test_performance", 10000);
+                if (importer.getRatingSummary() != null) {
+                    perfTest.setRatingSummary(importer.getRatingSummary());
+                }
                 perfTest.createTestTable();
                 
                 if (args.length > 0 && args[0].equals("advanced")) {
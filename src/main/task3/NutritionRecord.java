@@ -0,0 +1,44 @@
+package main.task3;
+
+/**
+ * nutrition 表的一行，可空的数值列以 NaN 表示 NULL
+ */
+public class NutritionRecord {
+    public long recipeid;
+    public double calories;
+    public double fatcontent;
+    public double saturatedfatcontent;
+    public double cholesterolcontent;
+    public double sodiumcontent;
+    public double carbohydratecontent;
+    public double fibercontent;
+    public double sugarcontent;
+    public double proteincontent;
+
+    public static final RowMapper.Factory<NutritionRecord> MAPPER = layout -> {
+        int recipeId = layout.require("recipeid");
+        int calories = layout.indexOf("calories");
+        int fat = layout.indexOf("fatcontent");
+        int saturatedFat = layout.indexOf("saturatedfatcontent");
+        int cholesterol = layout.indexOf("cholesterolcontent");
+        int sodium = layout.indexOf("sodiumcontent");
+        int carbohydrate = layout.indexOf("carbohydratecontent");
+        int fiber = layout.indexOf("fibercontent");
+        int sugar = layout.indexOf("sugarcontent");
+        int protein = layout.indexOf("proteincontent");
+        return rs -> {
+            NutritionRecord record = new NutritionRecord();
+            record.recipeid = rs.getLong(recipeId);
+            record.calories = RowMapper.getDoubleOrNaN(rs, calories);
+            record.fatcontent = RowMapper.getDoubleOrNaN(rs, fat);
+            record.saturatedfatcontent = RowMapper.getDoubleOrNaN(rs, saturatedFat);
+            record.cholesterolcontent = RowMapper.getDoubleOrNaN(rs, cholesterol);
+            record.sodiumcontent = RowMapper.getDoubleOrNaN(rs, sodium);
+            record.carbohydratecontent = RowMapper.getDoubleOrNaN(rs, carbohydrate);
+            record.fibercontent = RowMapper.getDoubleOrNaN(rs, fiber);
+            record.sugarcontent = RowMapper.getDoubleOrNaN(rs, sugar);
+            record.proteincontent = RowMapper.getDoubleOrNaN(rs, protein);
+            return record;
+        };
+    };
+}
@@ -0,0 +1,343 @@
+package main.task3;
+
+import main.common.ConnectionManager;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 查询结果缓存，键为 (SQL, 参数)。
+ * - 按估算的字节数限制总容量，超出时按 LRU 顺序淘汰
+ * - 每个条目有 TTL，过期后读取视为未命中
+ * - 每个条目登记其依赖的表，写操作按表失效
+ * - 手动提交模式下，写过的表在事务结束前不接受新结果，提交或回滚后再失效一次（注册到 ConnectionManager 后自动完成）
+ * - 每次失效递增版本号，查询开始后其依赖的表被失效过的结果不写入，避免并发读者把旧数据重新放回缓存
+ * 缓存返回的结果对象由所有调用方共享，调用方不应修改。
+ */
+public class QueryCache implements ConnectionManager.TransactionListener {
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_TTL_MILLIS = 60_000;
+
+    private final long maxBytes;
+    private final long ttlNanos;
+
+    // accessOrder = true，迭代顺序即 LRU 顺序
+    private final LinkedHashMap<Key, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Set<Key>> keysByTable = new HashMap<>();
+    private long currentBytes;
+
+    private long version;
+    private long clearedVersion;
+    private final Map<String, Long> invalidatedVersion = new HashMap<>();
+    // 未结束的写事务：连接 -> 写过的表；任一连接在写的表都不接受新结果
+    private final Map<Connection, Set<String>> pendingByConnection = new IdentityHashMap<>();
+    private final Map<String, Integer> pendingWriters = new HashMap<>();
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+    private long invalidationCount;
+    private long savedNanos;
+
+
+    private static final class Key {
+        final String sql;
+        final Object[] params;
+        final int hash;
+
+        Key(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params == null ? new Object[0] : params.clone();
+            this.hash = 31 * sql.hashCode() + Arrays.hashCode(this.params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && sql.equals(other.sql) && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+
+    private static final class CacheEntry {
+        final Object value;
+        final String[] tables;
+        final long sizeBytes;
+        final long expireAt;
+        final long loadNanos;
+
+        CacheEntry(Object value, String[] tables, long sizeBytes, long expireAt, long loadNanos) {
+            this.value = value;
+            this.tables = tables;
+            this.sizeBytes = sizeBytes;
+            this.expireAt = expireAt;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+
+    public QueryCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS);
+    }
+
+
+    public QueryCache(long maxBytes, long ttlMillis) {
+        if (maxBytes <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("缓存容量和 TTL 必须为正数");
+        }
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+
+    /**
+     * 读取缓存，未命中或已过期时返回 null
+     */
+    public synchronized Object get(String sql, Object[] params) {
+        Key key = new Key(sql, params);
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (System.nanoTime() - entry.expireAt > 0) {
+            removeEntry(key, entry);
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        savedNanos += entry.loadNanos;
+        return entry.value;
+    }
+
+
+    /**
+     * 当前版本号，查询执行前取得，写入结果时传给 put
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+
+    /**
+     * 写入缓存。tables 为该结果依赖的表，loadNanos 为实际查询耗时（用于统计节省的延迟），
+     * readVersion 为查询开始前的 version()；此后依赖的表被失效过或仍有未结束的写事务时不缓存
+     */
+    public synchronized void put(String sql, Object[] params, String[] tables, Object value, long loadNanos,
+                                 long readVersion) {
+        if (readVersion < clearedVersion) {
+            return;
+        }
+        String[] normalized = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            normalized[i] = normalizeTable(tables[i]);
+            if (pendingWriters.containsKey(normalized[i])
+                    || invalidatedVersion.getOrDefault(normalized[i], 0L) > readVersion) {
+                return;
+            }
+        }
+
+        long sizeBytes = estimateSize(sql) + estimateSize(value);
+        if (sizeBytes > maxBytes) {
+            // 单个结果超过总容量，不缓存
+            return;
+        }
+
+        Key key = new Key(sql, params);
+        CacheEntry old = entries.get(key);
+        if (old != null) {
+            removeEntry(key, old);
+        }
+
+        CacheEntry entry = new CacheEntry(value, normalized, sizeBytes, System.nanoTime() + ttlNanos, loadNanos);
+        entries.put(key, entry);
+        currentBytes += sizeBytes;
+        for (String table : normalized) {
+            keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        }
+
+        evictIfNeeded();
+    }
+
+
+    /**
+     * 使依赖该表的所有缓存条目失效
+     */
+    public synchronized void invalidateTable(String tableName) {
+        if (tableName == null) {
+            return;
+        }
+        String table = normalizeTable(tableName);
+        invalidatedVersion.put(table, ++version);
+        Set<Key> keys = keysByTable.remove(table);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null) {
+                removeEntry(key, entry);
+                invalidationCount++;
+            }
+        }
+    }
+
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByTable.clear();
+        invalidatedVersion.clear();
+        currentBytes = 0;
+        clearedVersion = ++version;
+    }
+
+
+    /**
+     * 写语句执行前调用：立即使这些表失效，并在该连接的事务结束（afterCompletion）前不再缓存它们的结果
+     */
+    public synchronized void beginWrite(Connection connection, String... tables) {
+        Set<String> pending = pendingByConnection.computeIfAbsent(connection, c -> new HashSet<>());
+        for (String tableName : tables) {
+            invalidateTable(tableName);
+            if (pending.add(normalizeTable(tableName))) {
+                pendingWriters.merge(normalizeTable(tableName), 1, Integer::sum);
+            }
+        }
+    }
+
+
+    /**
+     * 事务提交或回滚后调用（自动提交模式下每条写语句之后调用），再次使该连接写过的表失效
+     */
+    @Override
+    public synchronized void afterCompletion(Connection connection, boolean committed) {
+        Set<String> pending = pendingByConnection.remove(connection);
+        if (pending == null) {
+            return;
+        }
+        for (String table : pending) {
+            pendingWriters.computeIfPresent(table, (t, count) -> count > 1 ? count - 1 : null);
+            invalidateTable(table);
+        }
+    }
+
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<Key, CacheEntry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, CacheEntry> eldest = it.next();
+            it.remove();
+            unregister(eldest.getKey(), eldest.getValue());
+            evictionCount++;
+        }
+    }
+
+
+    private void removeEntry(Key key, CacheEntry entry) {
+        entries.remove(key);
+        unregister(key, entry);
+    }
+
+
+    private void unregister(Key key, CacheEntry entry) {
+        currentBytes -= entry.sizeBytes;
+        for (String table : entry.tables) {
+            Set<Key> keys = keysByTable.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTable.remove(table);
+                }
+            }
+        }
+    }
+
+
+    private static String normalizeTable(String tableName) {
+        return tableName.trim().toLowerCase();
+    }
+
+
+    /**
+     * 粗略估算结果占用的堆内存字节数，用于容量控制
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 8;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        if (value instanceof java.util.Date) {
+            return 32;
+        }
+        if (value instanceof Map) {
+            long size = 48;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                // 每个 HashMap.Node 约 32 字节，键通常与其它行共享，只计值
+                size += 32 + estimateSize(e.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 40;
+            for (Object item : (Collection<?>) value) {
+                size += 8 + estimateSize(item);
+            }
+            return size;
+        }
+        if (value instanceof Object[]) {
+            long size = 16;
+            for (Object item : (Object[]) value) {
+                size += 8 + estimateSize(item);
+            }
+            return size;
+        }
+        return 64;
+    }
+
+
+    public synchronized long getHitCount() { return hitCount; }
+    public synchronized long getMissCount() { return missCount; }
+    public synchronized long getEvictionCount() { return evictionCount; }
+    public synchronized long getExpiredCount() { return expiredCount; }
+    public synchronized long getInvalidationCount() { return invalidationCount; }
+    public synchronized long getSavedNanos() { return savedNanos; }
+    public synchronized long getCurrentBytes() { return currentBytes; }
+    public synchronized int getEntryCount() { return entries.size(); }
+
+
+    public synchronized double getHitRatio() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return String.format("QueryCache{entries=%d, bytes=%d/%d, hitRatio=%.2f%%, hits=%d, misses=%d, " +
+                        "evictions=%d, expired=%d, invalidations=%d, saved=%.2fms}",
+                entries.size(), currentBytes, maxBytes, getHitRatio() * 100, hitCount, missCount,
+                evictionCount, expiredCount, invalidationCount, savedNanos / 1_000_000.0);
+    }
+}
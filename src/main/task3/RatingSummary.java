@@ -0,0 +1,366 @@
+package main.task3;
+
+import main.common.ConnectionManager;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 按食谱汇总的评分统计（评论数、评分和、0~5 分直方图）。
+ * 同时维护两份：
+ * - recipe_rating_summary 表，导入后整体构建一次，之后按增量 upsert；avg_rating / review_count 上有索引
+ * - 内存中的两棵有序树（按平均分、按评论数），"评分最高 N 个" 和 "评论最多 N 个" 直接按序遍历
+ * DataWriter / DataQuery 设置了 RatingSummary 后，对 reviews 的插入、修改、删除会调用 applyChanges，
+ * 级联删除和 TRUNCATE 等拿不到具体评分的写入会调用 markStale，之后查询会报错，由调用方显式 rebuild()。
+ * 手动提交模式下内存中的增量在事务提交后才生效，需注册到 ConnectionManager.addTransactionListener。
+ */
+public class RatingSummary implements ConnectionManager.TransactionListener {
+    public static final int MAX_RATING = 5;
+
+    private static final String REBUILD_SQL =
+            "INSERT INTO recipe_rating_summary " +
+                    "SELECT recipeid, COUNT(*), SUM(rating), " +
+                    "COUNT(*) FILTER (WHERE rating <= 0), COUNT(*) FILTER (WHERE rating = 1), " +
+                    "COUNT(*) FILTER (WHERE rating = 2), COUNT(*) FILTER (WHERE rating = 3), " +
+                    "COUNT(*) FILTER (WHERE rating = 4), COUNT(*) FILTER (WHERE rating >= 5), " +
+                    "AVG(rating)::double precision " +
+                    "FROM reviews WHERE recipeid IS NOT NULL GROUP BY recipeid";
+    private static final String UPSERT_DELTA_SQL =
+            "INSERT INTO recipe_rating_summary AS s VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, NULL) " +
+                    "ON CONFLICT (recipeid) DO UPDATE SET " +
+                    "review_count = s.review_count + EXCLUDED.review_count, " +
+                    "rating_sum = s.rating_sum + EXCLUDED.rating_sum, " +
+                    "rating_0 = s.rating_0 + EXCLUDED.rating_0, rating_1 = s.rating_1 + EXCLUDED.rating_1, " +
+                    "rating_2 = s.rating_2 + EXCLUDED.rating_2, rating_3 = s.rating_3 + EXCLUDED.rating_3, " +
+                    "rating_4 = s.rating_4 + EXCLUDED.rating_4, rating_5 = s.rating_5 + EXCLUDED.rating_5";
+    private static final String REFRESH_AVG_SQL =
+            "UPDATE recipe_rating_summary SET avg_rating = " +
+                    "CASE WHEN review_count > 0 THEN rating_sum::double precision / review_count END " +
+                    "WHERE recipeid = ANY(?)";
+
+    private Connection connection;
+    private final Map<Long, Summary> summaries = new HashMap<>();
+    private final TreeSet<Summary> byRating = new TreeSet<>(
+            Comparator.comparingDouble(Summary::average).reversed()
+                    .thenComparing(Comparator.comparingInt(Summary::getCount).reversed())
+                    .thenComparingLong(Summary::getRecipeId));
+    private final TreeSet<Summary> byCount = new TreeSet<>(
+            Comparator.comparingInt(Summary::getCount).reversed()
+                    .thenComparingLong(Summary::getRecipeId));
+    private boolean loaded = false;
+    private boolean needsRebuild = false;
+    // 当前事务中已写入汇总表、尚未提交的增量，提交后才合并到内存
+    private final Map<Long, Summary> pendingDeltas = new HashMap<>();
+    // 当前事务修改过汇总表（增量或重建），回滚后内存与表的一致性无法保证
+    private boolean transactionDirty = false;
+
+
+    public static class Summary {
+        private final long recipeId;
+        private int count;
+        private long sum;
+        private final int[] histogram = new int[MAX_RATING + 1];
+
+        Summary(long recipeId) {
+            this.recipeId = recipeId;
+        }
+
+        private Summary(Summary other) {
+            this.recipeId = other.recipeId;
+            this.count = other.count;
+            this.sum = other.sum;
+            System.arraycopy(other.histogram, 0, this.histogram, 0, histogram.length);
+        }
+
+        public long getRecipeId() { return recipeId; }
+        public int getCount() { return count; }
+        public long getSum() { return sum; }
+
+        /**
+         * 评分为 rating 的评论数
+         */
+        public int getHistogram(int rating) {
+            return histogram[rating];
+        }
+
+        public double average() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Summary{recipeid=%d, count=%d, avg=%.3f}", recipeId, count, average());
+        }
+    }
+
+
+    public RatingSummary(Connection connection) {
+        this.connection = connection;
+    }
+
+
+    /**
+     * 从 reviews 全量重建汇总表并载入内存，导入完成后以及 isStale() 为 true 时由调用方显式调用。
+     * 在当前事务中执行，TRUNCATE 会锁住汇总表直到调用方提交。汇总表由迁移 V005 创建
+     */
+    public synchronized void rebuild() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE recipe_rating_summary");
+            stmt.executeUpdate(REBUILD_SQL);
+        }
+        needsRebuild = false;
+        pendingDeltas.clear();
+        transactionDirty = !connection.getAutoCommit();
+        load();
+    }
+
+
+    /**
+     * 从汇总表载入内存结构。读到的已包含当前事务写入的增量，不再等提交后重复合并
+     */
+    public synchronized void load() throws SQLException {
+        pendingDeltas.clear();
+        summaries.clear();
+        byRating.clear();
+        byCount.clear();
+
+        String sql = "SELECT recipeid, review_count, rating_sum, rating_0, rating_1, rating_2, rating_3, rating_4, rating_5 " +
+                "FROM recipe_rating_summary";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Summary summary = new Summary(rs.getLong(1));
+                summary.count = rs.getInt(2);
+                summary.sum = rs.getLong(3);
+                for (int r = 0; r <= MAX_RATING; r++) {
+                    summary.histogram[r] = rs.getInt(4 + r);
+                }
+                summaries.put(summary.recipeId, summary);
+                index(summary);
+            }
+        }
+        loaded = true;
+    }
+
+
+    /**
+     * 标记汇总失效（例如无法确定具体变更的写入），之后需调用 rebuild() 才能继续查询
+     */
+    public synchronized void markStale() {
+        needsRebuild = true;
+        pendingDeltas.clear();
+    }
+
+
+    /**
+     * 汇总是否已失效。查询方法不会自行重建，失效时抛出 IllegalStateException
+     */
+    public synchronized boolean isStale() {
+        return needsRebuild;
+    }
+
+
+    /**
+     * 应用一组评论变更。每个元素为 {recipeid, rating, +1 或 -1}：插入为 +1，删除为 -1，
+     * 修改拆成旧值 -1 和新值 +1。汇总表在当前事务中按增量 upsert；内存在自动提交模式下立即更新，
+     * 否则等 afterCompletion 收到提交再合并，回滚则标记失效。写汇总表失败时同样标记失效。
+     */
+    public synchronized void applyChanges(List<long[]> changes) throws SQLException {
+        if (changes == null || changes.isEmpty() || needsRebuild) {
+            // 已标记重建时增量没有意义，重建会从 reviews 重新汇总
+            return;
+        }
+
+        // 先按食谱合并增量，每个食谱只写一次
+        Map<Long, Summary> deltas = new HashMap<>();
+        for (long[] change : changes) {
+            Summary delta = deltas.computeIfAbsent(change[0], Summary::new);
+            int sign = (int) change[2];
+            delta.count += sign;
+            delta.sum += sign * change[1];
+            delta.histogram[bucket(change[1])] += sign;
+        }
+
+        boolean autoCommit;
+        try {
+            autoCommit = connection.getAutoCommit();
+            writeDeltas(deltas);
+        } catch (SQLException e) {
+            markStale();
+            throw e;
+        }
+
+        if (autoCommit) {
+            mergeIntoMemory(deltas);
+        } else {
+            transactionDirty = true;
+            for (Summary delta : deltas.values()) {
+                Summary pending = pendingDeltas.computeIfAbsent(delta.recipeId, Summary::new);
+                pending.count += delta.count;
+                pending.sum += delta.sum;
+                for (int r = 0; r <= MAX_RATING; r++) {
+                    pending.histogram[r] += delta.histogram[r];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 事务结束：提交时把本事务的增量合并到内存；回滚时汇总表已恢复，但内存可能含有事务中重建的结果，标记失效
+     */
+    @Override
+    public synchronized void afterCompletion(Connection connection, boolean committed) {
+        if (connection != this.connection) {
+            return;
+        }
+        if (committed) {
+            if (!needsRebuild) {
+                mergeIntoMemory(pendingDeltas);
+            }
+        } else if (transactionDirty) {
+            needsRebuild = true;
+        }
+        pendingDeltas.clear();
+        transactionDirty = false;
+    }
+
+
+    private void mergeIntoMemory(Map<Long, Summary> deltas) {
+        if (!loaded) {
+            return;
+        }
+        for (Summary delta : deltas.values()) {
+            Summary summary = summaries.get(delta.recipeId);
+            if (summary == null) {
+                summary = new Summary(delta.recipeId);
+                summaries.put(delta.recipeId, summary);
+            } else {
+                unindex(summary);
+            }
+            summary.count += delta.count;
+            summary.sum += delta.sum;
+            for (int r = 0; r <= MAX_RATING; r++) {
+                summary.histogram[r] += delta.histogram[r];
+            }
+            if (summary.count > 0) {
+                index(summary);
+            }
+        }
+    }
+
+
+    private void writeDeltas(Map<Long, Summary> deltas) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPSERT_DELTA_SQL)) {
+            for (Summary delta : deltas.values()) {
+                pstmt.setLong(1, delta.recipeId);
+                pstmt.setInt(2, delta.count);
+                pstmt.setLong(3, delta.sum);
+                for (int r = 0; r <= MAX_RATING; r++) {
+                    pstmt.setInt(4 + r, delta.histogram[r]);
+                }
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        Array ids = connection.createArrayOf("bigint", deltas.keySet().toArray(new Long[0]));
+        try (PreparedStatement pstmt = connection.prepareStatement(REFRESH_AVG_SQL)) {
+            pstmt.setArray(1, ids);
+            pstmt.executeUpdate();
+        } finally {
+            ids.free();
+        }
+    }
+
+
+    /**
+     * 单个食谱的统计，没有评论时返回 null。以下查询在汇总失效时抛出 IllegalStateException
+     */
+    public synchronized Summary get(long recipeId) throws SQLException {
+        ensureLoaded();
+        Summary summary = summaries.get(recipeId);
+        return summary == null || summary.count == 0 ? null : new Summary(summary);
+    }
+
+
+    /**
+     * 平均分最高的 n 个食谱（评论数不少于 minReviews），平均分相同时评论多的在前
+     */
+    public synchronized List<Summary> topRated(int n, int minReviews) throws SQLException {
+        ensureLoaded();
+        List<Summary> result = new ArrayList<>(n);
+        for (Summary summary : byRating) {
+            if (result.size() >= n) {
+                break;
+            }
+            if (summary.count >= minReviews) {
+                result.add(new Summary(summary));
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * 评论数最多的 n 个食谱
+     */
+    public synchronized List<Summary> mostReviewed(int n) throws SQLException {
+        ensureLoaded();
+        List<Summary> result = new ArrayList<>(n);
+        for (Summary summary : byCount) {
+            if (result.size() >= n) {
+                break;
+            }
+            result.add(new Summary(summary));
+        }
+        return result;
+    }
+
+
+    /**
+     * 直接从汇总表取平均分最高的 n 个食谱，走 idx_rating_summary_avg 索引
+     */
+    public List<Map<String, Object>> topRatedFromTable(int n, int minReviews) throws SQLException {
+        return new DataQuery(connection).executeQuery(
+                "SELECT recipeid, review_count, avg_rating FROM recipe_rating_summary " +
+                        "WHERE review_count >= ? AND avg_rating IS NOT NULL " +
+                        "ORDER BY avg_rating DESC, review_count DESC LIMIT ?", minReviews, n);
+    }
+
+
+    /**
+     * 查询只读：尚未载入时从汇总表载入，已失效时不重建（重建会在调用方的事务中 TRUNCATE 并全表聚合）
+     */
+    private void ensureLoaded() throws SQLException {
+        if (needsRebuild) {
+            throw new IllegalStateException("评分汇总已失效，需先调用 rebuild()");
+        }
+        if (!loaded) {
+            load();
+        }
+    }
+
+    private void index(Summary summary) {
+        byRating.add(summary);
+        byCount.add(summary);
+    }
+
+    private void unindex(Summary summary) {
+        byRating.remove(summary);
+        byCount.remove(summary);
+    }
+
+    private static int bucket(long rating) {
+        return (int) Math.max(0, Math.min(MAX_RATING, rating));
+    }
+}
@@ -0,0 +1,26 @@
+package main.task3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个食谱的完整信息：食谱本身、营养、步骤、关键词、配料和评论
+ */
+public class RecipeDetail {
+    public RecipeRecord recipe;
+    public NutritionRecord nutrition; // 没有营养数据时为 null
+    public List<String> instructions = new ArrayList<>(); // 按步骤顺序
+    public List<String> keywords = new ArrayList<>();
+    public List<String> ingredients = new ArrayList<>();
+    public List<ReviewRecord> reviews = new ArrayList<>();
+
+    public RecipeDetail(RecipeRecord recipe) {
+        this.recipe = recipe;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecipeDetail{recipeid=%d, name='%s', steps=%d, keywords=%d, ingredients=%d, reviews=%d}",
+                recipe.recipeid, recipe.name, instructions.size(), keywords.size(), ingredients.size(), reviews.size());
+    }
+}
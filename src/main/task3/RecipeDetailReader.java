@@ -0,0 +1,185 @@
+package main.task3;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 食谱聚合读取。
+ * 六个子查询（recipes、nutrition、instructions、keywords、ingredients、reviews）放在同一条
+ * 多语句 SQL 中一次发送，驱动在一次往返中返回多个结果集，再按 recipeid 组装成 RecipeDetail。
+ * 批量读取时所有 id 作为一个数组参数，往返次数与食谱数量无关。
+ */
+public class RecipeDetailReader {
+    private static final String DETAIL_SQL =
+            "SELECT recipeid, authorid, name, cooktime, preptime, datepublished, description, recipecategory, " +
+                    "recipeservings, recipeyield FROM recipes WHERE recipeid = ANY(?);" +
+            "SELECT * FROM nutrition WHERE recipeid = ANY(?);" +
+            "SELECT recipeid, instructiontext FROM instructions WHERE recipeid = ANY(?) ORDER BY recipeid, stepnumber;" +
+            "SELECT rk.recipeid, k.keywordtext FROM recipe_keywords rk JOIN keywords k ON k.keywordid = rk.keywordid " +
+                    "WHERE rk.recipeid = ANY(?) ORDER BY rk.recipeid, k.keywordtext;" +
+            "SELECT ri.recipeid, i.ingredientname FROM recipe_ingredients ri JOIN ingredients i ON i.ingredientid = ri.ingredientid " +
+                    "WHERE ri.recipeid = ANY(?) ORDER BY ri.recipeid, i.ingredientname;" +
+            "SELECT reviewid, recipeid, authorid, rating, review, datesubmitted, datemodified " +
+                    "FROM reviews WHERE recipeid = ANY(?) ORDER BY recipeid, reviewid";
+    private static final int STATEMENT_COUNT = 6;
+    private static final String[] RECIPE_COLUMNS = {"recipeid", "authorid", "name", "cooktime", "preptime",
+            "datepublished", "description", "recipecategory", "recipeservings", "recipeyield"};
+
+    private Connection connection;
+    private DataQuery dataQuery;
+
+    public RecipeDetailReader(Connection connection) {
+        this.connection = connection;
+        this.dataQuery = new DataQuery(connection);
+    }
+
+
+    /**
+     * 读取单个食谱，不存在时返回 null
+     */
+    public RecipeDetail read(long recipeId) throws SQLException {
+        return readAll(List.of(recipeId)).get(recipeId);
+    }
+
+
+    /**
+     * 一次往返读取一批食谱，结果按传入顺序排列，不存在的 id 不出现在结果中
+     */
+    public Map<Long, RecipeDetail> readAll(Collection<Long> recipeIds) throws SQLException {
+        Map<Long, RecipeDetail> details = new LinkedHashMap<>();
+        if (recipeIds == null || recipeIds.isEmpty()) {
+            return details;
+        }
+
+        Long[] ids = new LinkedHashSet<>(recipeIds).toArray(new Long[0]);
+        Map<Long, RecipeDetail> byId = new HashMap<>(ids.length * 2);
+        Array idArray = connection.createArrayOf("bigint", ids);
+
+        try (PreparedStatement pstmt = connection.prepareStatement(DETAIL_SQL)) {
+            for (int i = 1; i <= STATEMENT_COUNT; i++) {
+                pstmt.setArray(i, idArray);
+            }
+
+            boolean hasResult = pstmt.execute();
+            for (int statement = 0; statement < STATEMENT_COUNT; statement++) {
+                if (!hasResult) {
+                    throw new SQLException("食谱聚合查询缺少第 " + (statement + 1) + " 个结果集");
+                }
+                try (ResultSet rs = pstmt.getResultSet()) {
+                    decode(statement, rs, byId);
+                }
+                hasResult = pstmt.getMoreResults();
+            }
+        } finally {
+            idArray.free();
+        }
+
+        for (Long id : ids) {
+            RecipeDetail detail = byId.get(id);
+            if (detail != null) {
+                details.put(id, detail);
+            }
+        }
+        return details;
+    }
+
+
+    private void decode(int statement, ResultSet rs, Map<Long, RecipeDetail> byId) throws SQLException {
+        ColumnLayout layout = ColumnLayout.of(rs.getMetaData());
+        switch (statement) {
+            case 0: {
+                RowMapper<RecipeRecord> mapper = layout.compile(RecipeRecord.MAPPER);
+                while (rs.next()) {
+                    RecipeRecord recipe = mapper.mapRow(rs);
+                    byId.put(recipe.recipeid, new RecipeDetail(recipe));
+                }
+                break;
+            }
+            case 1: {
+                RowMapper<NutritionRecord> mapper = layout.compile(NutritionRecord.MAPPER);
+                while (rs.next()) {
+                    NutritionRecord nutrition = mapper.mapRow(rs);
+                    RecipeDetail detail = byId.get(nutrition.recipeid);
+                    if (detail != null) {
+                        detail.nutrition = nutrition;
+                    }
+                }
+                break;
+            }
+            case 5: {
+                RowMapper<ReviewRecord> mapper = layout.compile(ReviewRecord.MAPPER);
+                while (rs.next()) {
+                    ReviewRecord review = mapper.mapRow(rs);
+                    RecipeDetail detail = review.recipeid == null ? null : byId.get(review.recipeid);
+                    if (detail != null) {
+                        detail.reviews.add(review);
+                    }
+                }
+                break;
+            }
+            default:
+                // instructions / keywords / ingredients：两列 (recipeid, 文本)
+                while (rs.next()) {
+                    RecipeDetail detail = byId.get(rs.getLong(1));
+                    if (detail == null) {
+                        continue;
+                    }
+                    String text = rs.getString(2);
+                    if (statement == 2) {
+                        detail.instructions.add(text);
+                    } else if (statement == 3) {
+                        detail.keywords.add(text);
+                    } else {
+                        detail.ingredients.add(text);
+                    }
+                }
+                break;
+        }
+    }
+
+
+    /**
+     * N+1 方式：每个食谱分别发送 6 条查询，仅用于与 readAll 做性能对比
+     */
+    public RecipeDetail readWithSeparateQueries(long recipeId) throws SQLException {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("recipeid", recipeId);
+
+        List<RecipeRecord> recipes = dataQuery.selectByConditions("recipes", conditions, RECIPE_COLUMNS, RecipeRecord.MAPPER);
+        if (recipes.isEmpty()) {
+            return null;
+        }
+        RecipeDetail detail = new RecipeDetail(recipes.get(0));
+
+        List<NutritionRecord> nutrition = dataQuery.selectByConditions("nutrition", conditions, null, NutritionRecord.MAPPER);
+        detail.nutrition = nutrition.isEmpty() ? null : nutrition.get(0);
+
+        for (Map<String, Object> row : dataQuery.executeQuery(
+                "SELECT instructiontext FROM instructions WHERE recipeid = ? ORDER BY stepnumber", recipeId)) {
+            detail.instructions.add((String) row.get("instructiontext"));
+        }
+        for (Map<String, Object> row : dataQuery.executeQuery(
+                "SELECT k.keywordtext FROM recipe_keywords rk JOIN keywords k ON k.keywordid = rk.keywordid " +
+                        "WHERE rk.recipeid = ? ORDER BY k.keywordtext", recipeId)) {
+            detail.keywords.add((String) row.get("keywordtext"));
+        }
+        for (Map<String, Object> row : dataQuery.executeQuery(
+                "SELECT i.ingredientname FROM recipe_ingredients ri JOIN ingredients i ON i.ingredientid = ri.ingredientid " +
+                        "WHERE ri.recipeid = ? ORDER BY i.ingredientname", recipeId)) {
+            detail.ingredients.add((String) row.get("ingredientname"));
+        }
+        detail.reviews.addAll(dataQuery.executeQuery(
+                "SELECT reviewid, recipeid, authorid, rating, review, datesubmitted, datemodified " +
+                        "FROM reviews WHERE recipeid = ? ORDER BY reviewid", ReviewRecord.MAPPER, recipeId));
+        return detail;
+    }
+}
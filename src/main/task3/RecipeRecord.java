@@ -0,0 +1,46 @@
+package main.task3;
+
+import java.sql.Timestamp;
+
+/**
+ * recipes 表的一行
+ */
+public class RecipeRecord {
+    public long recipeid;
+    public Long authorid;
+    public String name;
+    public String cooktime;
+    public String preptime;
+    public Timestamp datepublished;
+    public String description;
+    public String recipecategory;
+    public Integer recipeservings;
+    public String recipeyield;
+
+    public static final RowMapper.Factory<RecipeRecord> MAPPER = layout -> {
+        int recipeId = layout.require("recipeid");
+        int authorId = layout.indexOf("authorid");
+        int name = layout.indexOf("name");
+        int cookTime = layout.indexOf("cooktime");
+        int prepTime = layout.indexOf("preptime");
+        int datePublished = layout.indexOf("datepublished");
+        int description = layout.indexOf("description");
+        int recipeCategory = layout.indexOf("recipecategory");
+        int recipeServings = layout.indexOf("recipeservings");
+        int recipeYield = layout.indexOf("recipeyield");
+        return rs -> {
+            RecipeRecord record = new RecipeRecord();
+            record.recipeid = rs.getLong(recipeId);
+            record.authorid = RowMapper.getNullableLong(rs, authorId);
+            record.name = RowMapper.getString(rs, name);
+            record.cooktime = RowMapper.getString(rs, cookTime);
+            record.preptime = RowMapper.getString(rs, prepTime);
+            record.datepublished = RowMapper.getTimestamp(rs, datePublished);
+            record.description = RowMapper.getString(rs, description);
+            record.recipecategory = RowMapper.getString(rs, recipeCategory);
+            record.recipeservings = RowMapper.getNullableInt(rs, recipeServings);
+            record.recipeyield = RowMapper.getString(rs, recipeYield);
+            return record;
+        };
+    };
+}
@@ -0,0 +1,193 @@
+package main.task3;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 食谱名称/描述与评论内容的全文检索。
+ * 依赖迁移 V001__fulltext_search.sql 建立的 search_tsv 生成列和 GIN 索引。
+ * 查询词按空白切分后以 AND 连接，每个词做前缀匹配（"chick" 可以匹配 "chicken"），
+ * 结果按 ts_rank_cd 排序；recipes 中名称权重高于描述。
+ */
+public class RecipeSearch {
+    private static final String TEXT_CONFIG = "english";
+
+    private Connection connection;
+
+
+    public static class SearchHit {
+        public final long id;       // recipes 为 recipeid，reviews 为 reviewid
+        public final long recipeid;
+        public final String text;   // recipes 为名称，reviews 为评论内容
+        public final double rank;
+
+        SearchHit(long id, long recipeid, String text, double rank) {
+            this.id = id;
+            this.recipeid = recipeid;
+            this.text = text;
+            this.rank = rank;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SearchHit{id=%d, recipeid=%d, rank=%.4f, text='%s'}", id, recipeid, rank, text);
+        }
+    }
+
+
+    public RecipeSearch(Connection connection) {
+        this.connection = connection;
+    }
+
+
+    public List<SearchHit> searchRecipes(String query, int limit) throws SQLException {
+        String tsQuery = toPrefixTsQuery(query);
+        if (tsQuery == null) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT recipeid, name, ts_rank_cd(search_tsv, q) AS rank " +
+                "FROM recipes, to_tsquery('" + TEXT_CONFIG + "', ?) q " +
+                "WHERE search_tsv @@ q ORDER BY rank DESC, recipeid LIMIT ?";
+        List<SearchHit> hits = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, tsQuery);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long recipeId = rs.getLong(1);
+                    hits.add(new SearchHit(recipeId, recipeId, rs.getString(2), rs.getDouble(3)));
+                }
+            }
+        }
+        return hits;
+    }
+
+
+    public List<SearchHit> searchReviews(String query, int limit) throws SQLException {
+        String tsQuery = toPrefixTsQuery(query);
+        if (tsQuery == null) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT reviewid, recipeid, review, ts_rank_cd(search_tsv, q) AS rank " +
+                "FROM reviews, to_tsquery('" + TEXT_CONFIG + "', ?) q " +
+                "WHERE search_tsv @@ q ORDER BY rank DESC, reviewid LIMIT ?";
+        List<SearchHit> hits = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, tsQuery);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    hits.add(new SearchHit(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getDouble(4)));
+                }
+            }
+        }
+        return hits;
+    }
+
+
+    /**
+     * ILIKE 基线：每个词都必须出现在名称或描述中，顺序扫描，仅用于性能对比
+     */
+    public List<SearchHit> searchRecipesIlike(String query, int limit) throws SQLException {
+        List<String> terms = splitTerms(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder sqlBuilder = new StringBuilder("SELECT recipeid, name FROM recipes WHERE ");
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0) {
+                sqlBuilder.append(" AND ");
+            }
+            sqlBuilder.append("(name ILIKE ? OR description ILIKE ?)");
+        }
+        sqlBuilder.append(" ORDER BY recipeid LIMIT ?");
+
+        List<SearchHit> hits = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sqlBuilder.toString())) {
+            int index = 1;
+            for (String term : terms) {
+                String pattern = "%" + term + "%";
+                pstmt.setString(index++, pattern);
+                pstmt.setString(index++, pattern);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long recipeId = rs.getLong(1);
+                    hits.add(new SearchHit(recipeId, recipeId, rs.getString(2), 0.0));
+                }
+            }
+        }
+        return hits;
+    }
+
+
+    public List<SearchHit> searchReviewsIlike(String query, int limit) throws SQLException {
+        List<String> terms = splitTerms(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder sqlBuilder = new StringBuilder("SELECT reviewid, recipeid, review FROM reviews WHERE ");
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0) {
+                sqlBuilder.append(" AND ");
+            }
+            sqlBuilder.append("review ILIKE ?");
+        }
+        sqlBuilder.append(" ORDER BY reviewid LIMIT ?");
+
+        List<SearchHit> hits = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sqlBuilder.toString())) {
+            int index = 1;
+            for (String term : terms) {
+                pstmt.setString(index++, "%" + term + "%");
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    hits.add(new SearchHit(rs.getLong(1), rs.getLong(2), rs.getString(3), 0.0));
+                }
+            }
+        }
+        return hits;
+    }
+
+
+    /**
+     * 把用户输入转换为 to_tsquery 语法："garlic chick" -> "garlic:* & chick:*"。
+     * 只保留字母和数字，避免用户输入中的 & | ! ( ) : 等被当作 tsquery 运算符；没有有效词时返回 null
+     */
+    static String toPrefixTsQuery(String query) {
+        List<String> terms = splitTerms(query);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String term : terms) {
+            if (builder.length() > 0) {
+                builder.append(" & ");
+            }
+            builder.append(term).append(":*");
+        }
+        return builder.toString();
+    }
+
+
+    private static List<String> splitTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String token : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,251 @@
+package main.task3;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按配料和关键词匹配食谱的内存索引，例如 "同时含有 chicken、garlic、lemon 但不含 nuts"。
+ * 配料和关键词各自一个 InvertedIndex（两者的 id 空间互相独立）。
+ * 由 CsvDataImporter 在每次导入后用已经准备好的关联数据重建，也可以从数据库载入。
+ */
+public class RecipeTermIndex {
+    private final InvertedIndex ingredients;
+    private final InvertedIndex keywords;
+    private final Map<String, Long> ingredientIds;
+    private final Map<String, Long> keywordIds;
+
+
+    /**
+     * 查询条件，未知的必选名称会使结果为空，未知的可选/排除名称被忽略
+     */
+    public static class Query {
+        private final List<String> requiredIngredients = new ArrayList<>();
+        private final List<String> anyIngredients = new ArrayList<>();
+        private final List<String> excludedIngredients = new ArrayList<>();
+        private final List<String> requiredKeywords = new ArrayList<>();
+        private final List<String> excludedKeywords = new ArrayList<>();
+
+        public Query withIngredients(String... names) {
+            requiredIngredients.addAll(List.of(names));
+            return this;
+        }
+
+        public Query withAnyIngredient(String... names) {
+            anyIngredients.addAll(List.of(names));
+            return this;
+        }
+
+        public Query withoutIngredients(String... names) {
+            excludedIngredients.addAll(List.of(names));
+            return this;
+        }
+
+        public Query withKeywords(String... names) {
+            requiredKeywords.addAll(List.of(names));
+            return this;
+        }
+
+        public Query withoutKeywords(String... names) {
+            excludedKeywords.addAll(List.of(names));
+            return this;
+        }
+    }
+
+
+    private RecipeTermIndex(InvertedIndex ingredients, InvertedIndex keywords,
+                            Map<String, Long> ingredientIds, Map<String, Long> keywordIds) {
+        this.ingredients = ingredients;
+        this.keywords = keywords;
+        this.ingredientIds = ingredientIds;
+        this.keywordIds = keywordIds;
+    }
+
+
+    /**
+     * 由导入器准备好的 recipe_ingredients / recipe_keywords 行（recipeid + ingredientid / keywordid）构建
+     */
+    public static RecipeTermIndex build(List<Map<String, Object>> recipeIngredients,
+                                        List<Map<String, Object>> recipeKeywords,
+                                        Map<String, Long> ingredientIds,
+                                        Map<String, Long> keywordIds) {
+        return new RecipeTermIndex(
+                buildIndex(recipeIngredients, "ingredientid"),
+                buildIndex(recipeKeywords, "keywordid"),
+                new HashMap<>(ingredientIds),
+                new HashMap<>(keywordIds));
+    }
+
+
+    /**
+     * 从数据库中的关联表载入
+     */
+    public static RecipeTermIndex load(Connection connection) throws SQLException {
+        Map<String, Long> ingredientIds = new HashMap<>();
+        Map<String, Long> keywordIds = new HashMap<>();
+        loadNames(connection, "SELECT ingredientname, ingredientid FROM ingredients", ingredientIds);
+        loadNames(connection, "SELECT keywordtext, keywordid FROM keywords", keywordIds);
+        return new RecipeTermIndex(
+                loadIndex(connection, "SELECT ingredientid, recipeid FROM recipe_ingredients"),
+                loadIndex(connection, "SELECT keywordid, recipeid FROM recipe_keywords"),
+                ingredientIds, keywordIds);
+    }
+
+
+    /**
+     * 返回满足条件的 recipeid，升序
+     */
+    public long[] find(Query query) {
+        long[] excludedIngredients = ids(query.excludedIngredients, ingredientIds, false);
+        long[] excludedKeywords = ids(query.excludedKeywords, keywordIds, false);
+        boolean ingredientTerms = !query.requiredIngredients.isEmpty() || !query.anyIngredients.isEmpty();
+        boolean keywordTerms = !query.requiredKeywords.isEmpty();
+
+        long[] result = null;
+        if (ingredientTerms) {
+            result = ingredients.evaluate(
+                    ids(query.requiredIngredients, ingredientIds, true),
+                    ids(query.anyIngredients, ingredientIds, false),
+                    excludedIngredients);
+        }
+        if (keywordTerms) {
+            long[] byKeyword = keywords.evaluate(
+                    ids(query.requiredKeywords, keywordIds, true), new long[0], excludedKeywords);
+            result = result == null ? byKeyword : intersect(result, byKeyword);
+        }
+        if (result == null) {
+            // 没有任何正向条件：从所有有配料的食谱出发
+            result = ingredients.evaluate(new long[0], new long[0], excludedIngredients);
+        } else if (!ingredientTerms && excludedIngredients.length > 0) {
+            result = subtract(result, ingredients.evaluate(new long[0], excludedIngredients, new long[0]));
+        }
+        if (!keywordTerms && excludedKeywords.length > 0) {
+            result = subtract(result, keywords.evaluate(new long[0], excludedKeywords, new long[0]));
+        }
+        return result;
+    }
+
+
+    public InvertedIndex getIngredientIndex() {
+        return ingredients;
+    }
+
+    public InvertedIndex getKeywordIndex() {
+        return keywords;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("RecipeTermIndex{ingredients=%d terms/%d recipes, keywords=%d terms/%d recipes, %.1f MB}",
+                ingredients.termCount(), ingredients.documentCount(),
+                keywords.termCount(), keywords.documentCount(),
+                (ingredients.memoryBytes() + keywords.memoryBytes()) / (1024.0 * 1024.0));
+    }
+
+
+    private static InvertedIndex buildIndex(List<Map<String, Object>> rows, String termColumn) {
+        long[] terms = new long[rows.size()];
+        long[] recipes = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> row = rows.get(i);
+            terms[i] = ((Number) row.get(termColumn)).longValue();
+            recipes[i] = ((Number) row.get("recipeid")).longValue();
+        }
+        return InvertedIndex.build(terms, recipes);
+    }
+
+
+    private static InvertedIndex loadIndex(Connection connection, String sql) throws SQLException {
+        long[] terms = new long[1024];
+        long[] recipes = new long[1024];
+        int count = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setFetchSize(10000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == terms.length) {
+                        terms = Arrays.copyOf(terms, count * 2);
+                        recipes = Arrays.copyOf(recipes, count * 2);
+                    }
+                    terms[count] = rs.getLong(1);
+                    recipes[count] = rs.getLong(2);
+                    count++;
+                }
+            }
+        }
+        return InvertedIndex.build(Arrays.copyOf(terms, count), Arrays.copyOf(recipes, count));
+    }
+
+
+    private static void loadNames(Connection connection, String sql, Map<String, Long> target) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                target.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+    }
+
+
+    /**
+     * 名称转为 id；required 为 true 时未知名称映射为 -1（不存在的词项，使 AND 结果为空）
+     */
+    private static long[] ids(List<String> names, Map<String, Long> lookup, boolean required) {
+        List<Long> result = new ArrayList<>();
+        for (String name : names) {
+            Long id = lookup.get(name);
+            if (id != null) {
+                result.add(id);
+            } else if (required) {
+                result.add(-1L);
+            }
+        }
+        long[] ids = new long[result.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = result.get(i);
+        }
+        return ids;
+    }
+
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+
+    private static long[] subtract(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length) {
+            if (j >= b.length || a[i] < b[j]) {
+                out[k++] = a[i++];
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+}
@@ -0,0 +1,341 @@
+package main.task3;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * 食谱之间的物品相似度（item-to-item）："收藏了 X 的用户也收藏了 Y"。
+ * 用户与食谱的交互来自 user_favorite_recipes，以及 user_liked_reviews 中点赞评论所属的食谱。
+ * - 用户 × 食谱 与 食谱 × 用户 两个 CSR 稀疏矩阵，全部为 int 数组
+ * - 对每个食谱 x，沿 x -> 用户 -> 食谱 累加共现次数，相似度为余弦 co(x,y) / sqrt(|x| * |y|)
+ * - 共现次数低于 minSupport 的组合丢弃；交互过多的用户（超过 maxUserItems）不参与计算，
+ *   避免单个用户带来平方级的组合数
+ * - 食谱区间用 fork-join 递归切分并行计算，每个线程复用自己的累加数组
+ * 每个食谱保留相似度最高的 topK 个邻居，可直接从内存查询，也可批量写回 recipe_similarity 表。
+ */
+public class RecommendationEngine {
+    private static final int LEAF_SIZE = 256;
+
+    private final long[] recipeIds;      // 序号 -> recipeid，升序
+    private final int topK;
+    private final int[] neighborCounts;
+    private final int[] neighbors;       // 食谱 x 的邻居位于 [x * topK, x * topK + neighborCounts[x])
+    private final float[] scores;
+    private final int[] supports;
+
+
+    public static class Neighbor {
+        public final long recipeid;
+        public final float score;
+        public final int support;
+
+        Neighbor(long recipeid, float score, int support) {
+            this.recipeid = recipeid;
+            this.score = score;
+            this.support = support;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Neighbor{recipeid=%d, score=%.4f, support=%d}", recipeid, score, support);
+        }
+    }
+
+
+    private RecommendationEngine(long[] recipeIds, int topK) {
+        this.recipeIds = recipeIds;
+        this.topK = topK;
+        this.neighborCounts = new int[recipeIds.length];
+        this.neighbors = new int[recipeIds.length * topK];
+        this.scores = new float[recipeIds.length * topK];
+        this.supports = new int[recipeIds.length * topK];
+    }
+
+
+    /**
+     * 由 (用户, 食谱) 交互对计算，两个数组等长、同一下标为一次交互，重复交互只计一次
+     */
+    public static RecommendationEngine compute(long[] userIds, long[] interactionRecipeIds,
+                                               int topK, int minSupport, int maxUserItems) {
+        if (userIds.length != interactionRecipeIds.length) {
+            throw new IllegalArgumentException("用户与食谱数组长度不一致");
+        }
+        if (topK <= 0 || minSupport <= 0) {
+            throw new IllegalArgumentException("topK 与 minSupport 必须为正数");
+        }
+
+        long[] users = Arrays.stream(userIds).parallel().sorted().distinct().toArray();
+        long[] recipes = Arrays.stream(interactionRecipeIds).parallel().sorted().distinct().toArray();
+        int[] userOrdinals = new int[userIds.length];
+        int[] recipeOrdinals = new int[userIds.length];
+        IntStream.range(0, userIds.length).parallel().forEach(i -> {
+            userOrdinals[i] = Arrays.binarySearch(users, userIds[i]);
+            recipeOrdinals[i] = Arrays.binarySearch(recipes, interactionRecipeIds[i]);
+        });
+
+        CsrMatrix userItems = CsrMatrix.build(users.length, userOrdinals, recipeOrdinals);
+        CsrMatrix itemUsers = CsrMatrix.build(recipes.length, recipeOrdinals, userOrdinals);
+
+        RecommendationEngine engine = new RecommendationEngine(recipes, topK);
+        ForkJoinPool.commonPool().invoke(
+                engine.new SimilarityTask(userItems, itemUsers, minSupport, maxUserItems, 0, recipes.length));
+        return engine;
+    }
+
+
+    /**
+     * 从收藏表和点赞表载入交互并计算
+     */
+    public static RecommendationEngine load(Connection connection, int topK, int minSupport, int maxUserItems)
+            throws SQLException {
+        String sql = "SELECT authorid, recipeid FROM user_favorite_recipes " +
+                "UNION " +
+                "SELECT l.authorid, r.recipeid FROM user_liked_reviews l JOIN reviews r ON r.reviewid = l.reviewid " +
+                "WHERE r.recipeid IS NOT NULL";
+        long[] users = new long[1024];
+        long[] recipes = new long[1024];
+        int count = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setFetchSize(10000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == users.length) {
+                        users = Arrays.copyOf(users, count * 2);
+                        recipes = Arrays.copyOf(recipes, count * 2);
+                    }
+                    users[count] = rs.getLong(1);
+                    recipes[count] = rs.getLong(2);
+                    count++;
+                }
+            }
+        }
+        return compute(Arrays.copyOf(users, count), Arrays.copyOf(recipes, count), topK, minSupport, maxUserItems);
+    }
+
+
+    /**
+     * 按区间递归切分的相似度计算任务
+     */
+    private class SimilarityTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CsrMatrix userItems;
+        private final CsrMatrix itemUsers;
+        private final int minSupport;
+        private final int maxUserItems;
+        private final int from;
+        private final int to;
+
+        SimilarityTask(CsrMatrix userItems, CsrMatrix itemUsers, int minSupport, int maxUserItems, int from, int to) {
+            this.userItems = userItems;
+            this.itemUsers = itemUsers;
+            this.minSupport = minSupport;
+            this.maxUserItems = maxUserItems;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SimilarityTask(userItems, itemUsers, minSupport, maxUserItems, from, mid),
+                        new SimilarityTask(userItems, itemUsers, minSupport, maxUserItems, mid, to));
+                return;
+            }
+
+            Accumulator acc = ACCUMULATOR.get();
+            acc.ensureCapacity(recipeIds.length);
+            for (int x = from; x < to; x++) {
+                computeItem(x, acc);
+            }
+        }
+
+        private void computeItem(int x, Accumulator acc) {
+            int[] counts = acc.counts;
+            int[] touched = acc.touched;
+            int touchedCount = 0;
+
+            for (int i = itemUsers.offsets[x]; i < itemUsers.offsets[x + 1]; i++) {
+                int user = itemUsers.columns[i];
+                if (userItems.degree(user) > maxUserItems) {
+                    continue;
+                }
+                for (int j = userItems.offsets[user]; j < userItems.offsets[user + 1]; j++) {
+                    int y = userItems.columns[j];
+                    if (y != x && counts[y]++ == 0) {
+                        touched[touchedCount++] = y;
+                    }
+                }
+            }
+
+            // 用大小为 topK 的最小堆挑选相似度最高的邻居
+            int base = x * topK;
+            int heapSize = 0;
+            double degreeX = itemUsers.degree(x);
+            for (int t = 0; t < touchedCount; t++) {
+                int y = touched[t];
+                int support = counts[y];
+                counts[y] = 0;
+                if (support < minSupport) {
+                    continue;
+                }
+                float score = (float) (support / Math.sqrt(degreeX * itemUsers.degree(y)));
+                if (heapSize < topK) {
+                    neighbors[base + heapSize] = y;
+                    scores[base + heapSize] = score;
+                    supports[base + heapSize] = support;
+                    siftUp(base, heapSize++);
+                } else if (score > scores[base]) {
+                    neighbors[base] = y;
+                    scores[base] = score;
+                    supports[base] = support;
+                    siftDown(base, heapSize);
+                }
+            }
+
+            // 堆排序为相似度降序
+            for (int end = heapSize - 1; end > 0; end--) {
+                swap(base, base + end);
+                siftDown(base, end);
+            }
+            neighborCounts[x] = heapSize;
+        }
+    }
+
+
+    /**
+     * 每个线程复用的共现计数数组和已触及列表
+     */
+    private static final class Accumulator {
+        int[] counts = new int[0];
+        int[] touched = new int[0];
+
+        void ensureCapacity(int size) {
+            if (counts.length < size) {
+                counts = new int[size];
+                touched = new int[size];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Accumulator> ACCUMULATOR = ThreadLocal.withInitial(Accumulator::new);
+
+
+    private void siftUp(int base, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[base + index] >= scores[base + parent]) {
+                break;
+            }
+            swap(base + index, base + parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int base, int size) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            if (left + 1 < size && scores[base + left + 1] < scores[base + left]) {
+                smallest = left + 1;
+            }
+            if (scores[base + index] <= scores[base + smallest]) {
+                break;
+            }
+            swap(base + index, base + smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int n = neighbors[a];
+        neighbors[a] = neighbors[b];
+        neighbors[b] = n;
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        int c = supports[a];
+        supports[a] = supports[b];
+        supports[b] = c;
+    }
+
+
+    /**
+     * 与该食谱最相似的食谱，相似度降序；食谱没有交互数据时返回空列表
+     */
+    public List<Neighbor> similarTo(long recipeId) {
+        List<Neighbor> result = new ArrayList<>();
+        int x = Arrays.binarySearch(recipeIds, recipeId);
+        if (x < 0) {
+            return result;
+        }
+        int base = x * topK;
+        for (int i = 0; i < neighborCounts[x]; i++) {
+            result.add(new Neighbor(recipeIds[neighbors[base + i]], scores[base + i], supports[base + i]));
+        }
+        return result;
+    }
+
+
+    /**
+     * 清空 recipe_similarity 并批量写入全部结果（表由迁移 V002 创建），返回写入行数
+     */
+    public int writeToTable(Connection connection, int batchSize) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE recipe_similarity");
+        }
+
+        String sql = "INSERT INTO recipe_similarity (recipeid, rank, similar_recipeid, score, support) VALUES (?, ?, ?, ?, ?)";
+        int written = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int x = 0; x < recipeIds.length; x++) {
+                int base = x * topK;
+                for (int i = 0; i < neighborCounts[x]; i++) {
+                    pstmt.setLong(1, recipeIds[x]);
+                    pstmt.setInt(2, i + 1);
+                    pstmt.setLong(3, recipeIds[neighbors[base + i]]);
+                    pstmt.setFloat(4, scores[base + i]);
+                    pstmt.setInt(5, supports[base + i]);
+                    pstmt.addBatch();
+                    if (++written % batchSize == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+            }
+            if (written % batchSize != 0) {
+                pstmt.executeBatch();
+            }
+        }
+        return written;
+    }
+
+
+    public int recipeCount() {
+        return recipeIds.length;
+    }
+
+    /**
+     * 所有食谱的邻居总数
+     */
+    public long pairCount() {
+        long total = 0;
+        for (int count : neighborCounts) {
+            total += count;
+        }
+        return total;
+    }
+}
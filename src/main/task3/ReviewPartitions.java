@@ -0,0 +1,247 @@
+package main.task3;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * reviews 的分区管理和利用分区裁剪的查询。迁移 V006 把 reviews 改为按 datesubmitted 范围分区的表：
+ * - 分区按月或按年划分，命名为 reviews_p2021_03 / reviews_p2021；没有对应分区的行进入默认分区 reviews_default
+ * - 导入前用 createPartitionsFor() 为待导入数据的月份建好分区，插入时由数据库直接路由到对应分区；
+ *   已落入默认分区的行由 createMissingPartitions() 移到新建的分区
+ * - 归档时 dropPartitionsBefore() 直接删除整个分区，不产生逐行删除和之后的 vacuum
+ * - 查询都带 datesubmitted 的范围条件，数据库只扫描窗口覆盖的分区（参数化查询也能在执行期裁剪）
+ * 同一张表只应使用一种粒度；由单个导入进程创建分区。
+ */
+public class ReviewPartitions {
+    public static final String PARENT_TABLE = "reviews";
+    public static final String DEFAULT_PARTITION = PARENT_TABLE + "_default";
+
+    private static final String[] COLUMNS =
+            {"reviewid", "recipeid", "authorid", "rating", "review", "datesubmitted", "datemodified"};
+    private static final String SELECT_COLUMNS = String.join(", ", COLUMNS);
+
+    private Connection connection;
+    private final Granularity granularity;
+    private final DataQuery dataQuery;
+
+
+    public enum Granularity {
+        MONTHLY,
+        YEARLY;
+
+        LocalDate start(LocalDateTime time) {
+            return this == MONTHLY
+                    ? LocalDate.of(time.getYear(), time.getMonth(), 1)
+                    : LocalDate.of(time.getYear(), 1, 1);
+        }
+
+        LocalDate next(LocalDate start) {
+            return this == MONTHLY ? start.plusMonths(1) : start.plusYears(1);
+        }
+
+        String partitionName(LocalDate start) {
+            return this == MONTHLY
+                    ? String.format("%s_p%04d_%02d", PARENT_TABLE, start.getYear(), start.getMonthValue())
+                    : String.format("%s_p%04d", PARENT_TABLE, start.getYear());
+        }
+    }
+
+
+    public ReviewPartitions(Connection connection, Granularity granularity) {
+        this.connection = connection;
+        this.granularity = granularity;
+        this.dataQuery = new DataQuery(connection);
+    }
+
+
+    /**
+     * 为 dates 覆盖的月份（或年份）中还没有分区的创建分区，导入前调用。null 会被忽略。返回新建的分区数
+     */
+    public int createPartitionsFor(Iterable<Timestamp> dates) throws SQLException {
+        Set<LocalDate> starts = new TreeSet<>();
+        for (Timestamp date : dates) {
+            if (date != null) {
+                starts.add(granularity.start(date.toLocalDateTime()));
+            }
+        }
+        return createMissing(starts);
+    }
+
+
+    /**
+     * 为默认分区中的行所在、但还没有分区的月份（或年份）创建分区，这些行随之移入。返回新建的分区数
+     */
+    public int createMissingPartitions() throws SQLException {
+        String unit = granularity == Granularity.MONTHLY ? "month" : "year";
+        Set<LocalDate> starts = new TreeSet<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT DISTINCT date_trunc('" + unit + "', datesubmitted) FROM " + DEFAULT_PARTITION);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                starts.add(rs.getTimestamp(1).toLocalDateTime().toLocalDate());
+            }
+        }
+        return createMissing(starts);
+    }
+
+
+    private int createMissing(Set<LocalDate> starts) throws SQLException {
+        Set<String> existing = existingPartitions();
+        int created = 0;
+        for (LocalDate start : starts) {
+            if (!existing.contains(granularity.partitionName(start))) {
+                createPartition(start);
+                created++;
+            }
+        }
+        return created;
+    }
+
+
+    /**
+     * 创建 [start, next(start)) 分区。默认分区中已有落在该范围内的行会先移到新表，
+     * 再挂载为分区（挂载时数据库自动补建父表上的索引和外键）。
+     */
+    public String createPartition(LocalDate start) throws SQLException {
+        String name = granularity.partitionName(start);
+        String from = start.atStartOfDay().toString().replace('T', ' ');
+        String to = granularity.next(start).atStartOfDay().toString().replace('T', ' ');
+        String range = "datesubmitted >= '" + from + "' AND datesubmitted < '" + to + "'";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + name + " (LIKE " + PARENT_TABLE +
+                    " INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING GENERATED)");
+            // 直接操作默认分区不会触发 reviews 上的语句级触发器，移动的行不会级联删除点赞；
+            // search_tsv 是生成列，只复制普通列
+            stmt.execute("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range +
+                    " RETURNING " + SELECT_COLUMNS + ") " +
+                    "INSERT INTO " + name + " (" + SELECT_COLUMNS + ") SELECT " + SELECT_COLUMNS + " FROM moved");
+            stmt.execute("ALTER TABLE " + PARENT_TABLE + " ATTACH PARTITION " + name +
+                    " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        }
+        return name;
+    }
+
+
+    /**
+     * 现有分区名（不含默认分区）
+     */
+    public Set<String> existingPartitions() throws SQLException {
+        Set<String> names = new HashSet<>();
+        String sql = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = ?::regclass";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, PARENT_TABLE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        names.remove(DEFAULT_PARTITION);
+        return names;
+    }
+
+
+    /**
+     * 归档早于 cutoff 的评论：删除整个范围早于 cutoff 的分区。直接删除分区不经过 reviews 上的触发器，
+     * 因此先删除这些评论的点赞，再 DETACH 并 DROP 分区表。返回删除的分区数。
+     * 设置了 RatingSummary 时调用方需随后调用 markStale() 和 rebuild()。
+     */
+    public int dropPartitionsBefore(Timestamp cutoff) throws SQLException {
+        LocalDateTime limit = cutoff.toLocalDateTime();
+        int dropped = 0;
+        for (String name : existingPartitions()) {
+            LocalDate start = parseStart(name);
+            if (start != null && !granularity.next(start).atStartOfDay().isAfter(limit)) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM user_liked_reviews l USING " + name + " r WHERE l.reviewid = r.reviewid");
+                    stmt.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + name);
+                    stmt.execute("DROP TABLE " + name);
+                }
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+
+    /**
+     * [from, to) 时间窗口内的评论，按提交时间倒序
+     */
+    public List<ReviewRecord> selectWindow(Timestamp from, Timestamp to, int limit) throws SQLException {
+        return dataQuery.executeQuery(
+                "SELECT " + SELECT_COLUMNS + " FROM " + PARENT_TABLE +
+                        " WHERE datesubmitted >= ? AND datesubmitted < ? ORDER BY datesubmitted DESC LIMIT ?",
+                ReviewRecord.MAPPER, from, to, limit);
+    }
+
+
+    /**
+     * 某食谱在 [from, to) 内的评论
+     */
+    public List<ReviewRecord> selectRecipeWindow(long recipeId, Timestamp from, Timestamp to) throws SQLException {
+        return dataQuery.executeQuery(
+                "SELECT " + SELECT_COLUMNS + " FROM " + PARENT_TABLE +
+                        " WHERE recipeid = ? AND datesubmitted >= ? AND datesubmitted < ? ORDER BY datesubmitted DESC",
+                ReviewRecord.MAPPER, recipeId, from, to);
+    }
+
+
+    /**
+     * [from, to) 内的评论数与平均评分：{count, avg}，没有评论时 avg 为 NaN
+     */
+    public double[] ratingStats(Timestamp from, Timestamp to) throws SQLException {
+        double[] stats = {0, Double.NaN};
+        dataQuery.forEachRow(
+                "SELECT COUNT(*), AVG(rating) FROM " + PARENT_TABLE + " WHERE datesubmitted >= ? AND datesubmitted < ?",
+                row -> {
+                    stats[0] = ((Number) row[0]).doubleValue();
+                    if (row[1] != null) {
+                        stats[1] = ((Number) row[1]).doubleValue();
+                    }
+                }, from, to);
+        return stats;
+    }
+
+
+    /**
+     * 最新的提交时间，没有数据时返回 null
+     */
+    public Timestamp latestDate() throws SQLException {
+        List<Map<String, Object>> rows = dataQuery.executeQuery("SELECT MAX(datesubmitted) AS latest FROM " + PARENT_TABLE);
+        return rows.isEmpty() ? null : (Timestamp) rows.get(0).get("latest");
+    }
+
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+
+    private LocalDate parseStart(String partitionName) {
+        if (!partitionName.startsWith(PARENT_TABLE + "_p")) {
+            return null;
+        }
+        String suffix = partitionName.substring(PARENT_TABLE.length() + 2);
+        try {
+            if (suffix.length() == 7) {
+                return LocalDate.of(Integer.parseInt(suffix.substring(0, 4)), Integer.parseInt(suffix.substring(5)), 1);
+            }
+            return LocalDate.of(Integer.parseInt(suffix), 1, 1);
+        } catch (NumberFormatException | java.time.DateTimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package main.task3;
+
+import java.sql.Timestamp;
+
+/**
+ * reviews 表的一行
+ */
+public class ReviewRecord {
+    public long reviewid;
+    public Long recipeid;
+    public Long authorid;
+    public int rating;
+    public String review;
+    public Timestamp datesubmitted;
+    public Timestamp datemodified;
+
+    public static final RowMapper.Factory<ReviewRecord> MAPPER = layout -> {
+        int reviewId = layout.require("reviewid");
+        int recipeId = layout.indexOf("recipeid");
+        int authorId = layout.indexOf("authorid");
+        int rating = layout.indexOf("rating");
+        int review = layout.indexOf("review");
+        int dateSubmitted = layout.indexOf("datesubmitted");
+        int dateModified = layout.indexOf("datemodified");
+        return rs -> {
+            ReviewRecord record = new ReviewRecord();
+            record.reviewid = rs.getLong(reviewId);
+            record.recipeid = RowMapper.getNullableLong(rs, recipeId);
+            record.authorid = RowMapper.getNullableLong(rs, authorId);
+            record.rating = RowMapper.getInt(rs, rating);
+            record.review = RowMapper.getString(rs, review);
+            record.datesubmitted = RowMapper.getTimestamp(rs, dateSubmitted);
+            record.datemodified = RowMapper.getTimestamp(rs, dateModified);
+            return record;
+        };
+    };
+}
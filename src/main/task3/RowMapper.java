@@ -0,0 +1,64 @@
+package main.task3;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * 把结果集的当前行解码为对象。
+ * 映射器由 {@link Factory} 针对某个 {@link ColumnLayout} 编译得到，列下标在编译时确定，
+ * 每行只做按下标的取值，不再查询元数据或按列名查找。
+ */
+public interface RowMapper<T> {
+
+    T mapRow(ResultSet rs) throws SQLException;
+
+    interface Factory<T> {
+        RowMapper<T> compile(ColumnLayout layout) throws SQLException;
+    }
+
+    // ---------- 以下为按下标读取可空列的辅助方法，index 为 0 表示该列不在结果中 ----------
+
+    static long getLong(ResultSet rs, int index) throws SQLException {
+        return index > 0 ? rs.getLong(index) : 0L;
+    }
+
+    static Long getNullableLong(ResultSet rs, int index) throws SQLException {
+        if (index == 0) {
+            return null;
+        }
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    static int getInt(ResultSet rs, int index) throws SQLException {
+        return index > 0 ? rs.getInt(index) : 0;
+    }
+
+    static Integer getNullableInt(ResultSet rs, int index) throws SQLException {
+        if (index == 0) {
+            return null;
+        }
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * 读取 double 列，NULL 或列不存在时返回 NaN，避免装箱
+     */
+    static double getDoubleOrNaN(ResultSet rs, int index) throws SQLException {
+        if (index == 0) {
+            return Double.NaN;
+        }
+        double value = rs.getDouble(index);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    static String getString(ResultSet rs, int index) throws SQLException {
+        return index > 0 ? rs.getString(index) : null;
+    }
+
+    static Timestamp getTimestamp(ResultSet rs, int index) throws SQLException {
+        return index > 0 ? rs.getTimestamp(index) : null;
+    }
+}
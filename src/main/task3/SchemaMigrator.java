@@ -0,0 +1,161 @@
+package main.task3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 版本化的 schema 迁移。
+ * 迁移脚本放在 migrations 目录下，文件名形如 V001__description.sql，按版本号顺序执行，
+ * 已执行的版本记录在 schema_migrations 表中，重复运行只会执行新增的脚本。
+ * 每个脚本在自己的事务中整体执行（整个文件一次发送），失败时回滚该脚本。
+ */
+public class SchemaMigrator {
+    public static final String DEFAULT_MIGRATION_DIR = "src/main/task3/migrations";
+
+    private static final Pattern FILE_PATTERN = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private Connection connection;
+
+
+    public static class Migration {
+        public final int version;
+        public final String description;
+        public final Path path;
+
+        Migration(int version, String description, Path path) {
+            this.version = version;
+            this.description = description;
+            this.path = path;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("V%03d %s", version, description);
+        }
+    }
+
+
+    public SchemaMigrator(Connection connection) {
+        this.connection = connection;
+    }
+
+
+    /**
+     * 执行目录中所有未执行的迁移，返回本次执行的数量
+     */
+    public int migrate(String migrationDir) throws SQLException, IOException {
+        ensureHistoryTable();
+        Set<Integer> applied = appliedVersions();
+
+        int count = 0;
+        for (Migration migration : listMigrations(migrationDir)) {
+            if (applied.contains(migration.version)) {
+                continue;
+            }
+            apply(migration);
+            System.out.println("已执行迁移: " + migration);
+            count++;
+        }
+        return count;
+    }
+
+
+    public List<Migration> listMigrations(String migrationDir) throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        Path dir = Paths.get(migrationDir);
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("迁移目录不存在: " + migrationDir);
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = FILE_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    migrations.add(new Migration(Integer.parseInt(matcher.group(1)),
+                            matcher.group(2).replace('_', ' '), path));
+                }
+            }
+        }
+        migrations.sort((a, b) -> Integer.compare(a.version, b.version));
+
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version == migrations.get(i - 1).version) {
+                throw new IOException("迁移版本号重复: V" + migrations.get(i).version);
+            }
+        }
+        return migrations;
+    }
+
+
+    public Set<Integer> appliedVersions() throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT version FROM schema_migrations");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+
+    /**
+     * 执行单个迁移脚本（不检查是否已执行），供基准测试等需要反复建删对象的场景使用
+     */
+    public void executeScript(Path path) throws SQLException, IOException {
+        String script = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(script);
+        }
+    }
+
+
+    private void apply(Migration migration) throws SQLException, IOException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            executeScript(migration.path);
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO schema_migrations (version, description) VALUES (?, ?)")) {
+                pstmt.setInt(1, migration.version);
+                pstmt.setString(2, migration.description);
+                pstmt.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+
+    private void ensureHistoryTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                    "version integer primary key, " +
+                    "description text not null, " +
+                    "applied_at timestamp not null default now()" +
+                    ")");
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package main.task3;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 语句级的性能记录。DataQuery / DataWriter 设置了 SlowQueryLog 后，每条语句执行完都会调用 record：
+ * - 所有记录进入固定大小的环形缓冲区，可在进程内按条件查询
+ * - 超过阈值的慢语句追加到本地日志文件，文件超过上限时滚动（.1、.2 ...）
+ * - 慢语句按采样率抓取执行计划：SELECT 用 EXPLAIN (ANALYZE, BUFFERS)，写语句只用 EXPLAIN，
+ *   避免重复执行修改；同一语句形态在冷却时间内只抓一次
+ */
+public class SlowQueryLog {
+    private static final Set<String> INTERNAL_CLASSES = Set.of(
+            DataQuery.class.getName(), DataWriter.class.getName(), SlowQueryLog.class.getName());
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long thresholdNanos;
+    private final double planSampleRate;
+    private final long planCooldownNanos;
+    private final Entry[] ring;
+    private long nextSequence;
+
+    private final Path logFile;
+    private final long maxLogBytes;
+    private final int maxLogFiles;
+
+    private final Map<String, Long> lastPlanAt = new ConcurrentHashMap<>();
+
+
+    public static class Entry {
+        public final long sequence;
+        public final long timestamp;     // 毫秒
+        public final String shape;       // 归一化后的 SQL
+        public final int paramCount;
+        public final long latencyNanos;
+        public final long rows;          // 返回或影响的行数
+        public final String caller;      // 只对慢语句记录调用位置，其余为 null
+        public final boolean slow;
+        public final String plan;        // 未抓取时为 null
+
+        Entry(long sequence, long timestamp, String shape, int paramCount, long latencyNanos,
+              long rows, String caller, boolean slow, String plan) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.shape = shape;
+            this.paramCount = paramCount;
+            this.latencyNanos = latencyNanos;
+            this.rows = rows;
+            this.caller = caller;
+            this.slow = slow;
+            this.plan = plan;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] %.3fms rows=%d params=%d caller=%s%s sql=%s",
+                    new Timestamp(timestamp), latencyNanos / 1_000_000.0, rows, paramCount, caller,
+                    slow ? " SLOW" : "", shape);
+        }
+    }
+
+
+    /**
+     * @param thresholdMillis 慢语句阈值
+     * @param planSampleRate  慢语句抓取执行计划的概率，0 表示不抓取
+     * @param ringSize        环形缓冲区容量
+     * @param logFile         慢语句日志文件，null 表示不写文件
+     */
+    public SlowQueryLog(long thresholdMillis, double planSampleRate, int ringSize, String logFile) {
+        this(thresholdMillis, planSampleRate, ringSize, logFile, 10L * 1024 * 1024, 5, 60_000);
+    }
+
+
+    public SlowQueryLog(long thresholdMillis, double planSampleRate, int ringSize, String logFile,
+                        long maxLogBytes, int maxLogFiles, long planCooldownMillis) {
+        if (ringSize <= 0) {
+            throw new IllegalArgumentException("环形缓冲区容量必须为正数");
+        }
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+        this.planSampleRate = planSampleRate;
+        this.planCooldownNanos = planCooldownMillis * 1_000_000L;
+        this.ring = new Entry[ringSize];
+        this.logFile = logFile == null ? null : Paths.get(logFile);
+        this.maxLogBytes = maxLogBytes;
+        this.maxLogFiles = maxLogFiles;
+    }
+
+
+    /**
+     * 记录一条已执行完的语句。params 为 null 表示参数不可用（例如批量语句），此时不抓取执行计划。
+     */
+    public void record(Connection connection, String sql, Object[] params, int paramCount,
+                       long latencyNanos, long rows) {
+        String shape = normalize(sql);
+        boolean slow = latencyNanos >= thresholdNanos;
+        String plan = null;
+        String caller = null;
+        if (slow) {
+            // 遍历调用栈的代价只花在慢语句上，并且在锁外完成
+            caller = callerOf();
+            if (params != null && shouldCapturePlan(shape)) {
+                plan = explain(connection, sql, params);
+            }
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(nextSequence, System.currentTimeMillis(), shape, paramCount, latencyNanos,
+                    rows, caller, slow, plan);
+            ring[(int) (nextSequence % ring.length)] = entry;
+            nextSequence++;
+        }
+
+        if (slow && logFile != null) {
+            append(entry);
+        }
+    }
+
+
+    /**
+     * 环形缓冲区中的记录，从旧到新
+     */
+    public synchronized List<Entry> recent() {
+        List<Entry> entries = new ArrayList<>();
+        long first = Math.max(0, nextSequence - ring.length);
+        for (long seq = first; seq < nextSequence; seq++) {
+            entries.add(ring[(int) (seq % ring.length)]);
+        }
+        return entries;
+    }
+
+
+    public List<Entry> find(Predicate<Entry> filter) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : recent()) {
+            if (filter.test(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * 缓冲区中最慢的 n 条记录
+     */
+    public List<Entry> slowest(int n) {
+        List<Entry> entries = recent();
+        entries.sort(Comparator.comparingLong((Entry e) -> e.latencyNanos).reversed());
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+
+    public synchronized long totalRecorded() {
+        return nextSequence;
+    }
+
+
+    private boolean shouldCapturePlan(String shape) {
+        if (planSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= planSampleRate) {
+            return false;
+        }
+        long now = System.nanoTime();
+        Long last = lastPlanAt.get(shape);
+        if (last != null && now - last < planCooldownNanos) {
+            return false;
+        }
+        lastPlanAt.put(shape, now);
+        return true;
+    }
+
+
+    private String explain(Connection connection, String sql, Object[] params) {
+        String trimmed = sql.trim();
+        if (trimmed.contains(";")) {
+            // 多语句无法整体 EXPLAIN
+            return null;
+        }
+        boolean readOnly = trimmed.regionMatches(true, 0, "SELECT", 0, 6)
+                || trimmed.regionMatches(true, 0, "WITH", 0, 4) && !trimmed.matches("(?is).*\\b(INSERT|UPDATE|DELETE)\\b.*");
+        String explainSql = (readOnly ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + trimmed;
+
+        StringBuilder plan = new StringBuilder();
+        Savepoint savepoint = null;
+        try {
+            // 处于事务中时用保存点隔离，EXPLAIN 失败不能让调用方的事务进入中止状态
+            if (!connection.getAutoCommit()) {
+                savepoint = connection.setSavepoint();
+            }
+        } catch (SQLException e) {
+            return "执行计划获取失败: " + e.getMessage();
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(explainSql)) {
+            for (int i = 0; i < params.length; i++) {
+                Object value = params[i];
+                if (value instanceof Long[]) {
+                    pstmt.setArray(i + 1, connection.createArrayOf("bigint", (Long[]) value));
+                } else if (value == null) {
+                    pstmt.setNull(i + 1, java.sql.Types.NULL);
+                } else {
+                    pstmt.setObject(i + 1, value);
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                try {
+                    connection.rollback(savepoint);
+                } catch (SQLException ignored) {
+                    // 连接已不可用，交由调用方下一条语句报告
+                }
+            }
+            return "执行计划获取失败: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
+
+    private static String callerOf() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> !INTERNAL_CLASSES.contains(f.getClassName()))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown"));
+    }
+
+
+    /**
+     * 归一化 SQL：常量替换为 ?，合并空白，相同形态的语句归为一类
+     */
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+
+    /**
+     * SQL 中 ? 占位符的个数（忽略字符串常量中的 ?）
+     */
+    static int countPlaceholders(String sql) {
+        String stripped = STRING_LITERAL.matcher(sql).replaceAll("");
+        int count = 0;
+        for (int i = 0; i < stripped.length(); i++) {
+            if (stripped.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    private synchronized void append(Entry entry) {
+        try {
+            Path dir = logFile.toAbsolutePath().getParent();
+            if (dir != null && !Files.exists(dir)) {
+                Files.createDirectories(dir);
+            }
+            if (Files.exists(logFile) && Files.size(logFile) >= maxLogBytes) {
+                rotate();
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(entry.toString());
+                writer.newLine();
+                if (entry.plan != null) {
+                    writer.write(entry.plan);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("写入慢查询日志失败: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * slow.log -> slow.log.1 -> slow.log.2 ...，超过 maxLogFiles 的最旧文件被删除
+     */
+    private void rotate() throws IOException {
+        Path oldest = Paths.get(logFile + "." + maxLogFiles);
+        Files.deleteIfExists(oldest);
+        for (int i = maxLogFiles - 1; i >= 1; i--) {
+            Path source = Paths.get(logFile + "." + i);
+            if (Files.exists(source)) {
+                Files.move(source, Paths.get(logFile + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(logFile, Paths.get(logFile + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
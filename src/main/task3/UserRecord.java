@@ -0,0 +1,26 @@
+package main.task3;
+
+/**
+ * users 表的一行
+ */
+public class UserRecord {
+    public long authorid;
+    public String authorname;
+    public String gender;
+    public Integer age;
+
+    public static final RowMapper.Factory<UserRecord> MAPPER = layout -> {
+        int authorId = layout.require("authorid");
+        int authorName = layout.indexOf("authorname");
+        int gender = layout.indexOf("gender");
+        int age = layout.indexOf("age");
+        return rs -> {
+            UserRecord record = new UserRecord();
+            record.authorid = rs.getLong(authorId);
+            record.authorname = RowMapper.getString(rs, authorName);
+            record.gender = RowMapper.getString(rs, gender);
+            record.age = RowMapper.getNullableInt(rs, age);
+            return record;
+        };
+    };
+}
@@ -0,0 +1,482 @@
+package main.task3;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 点赞、收藏、关注等高频小写入的后写（write-behind）队列。
+ * - 调用方只把变更放入内存缓冲，同一 (类型, a, b) 的多次变更合并为最后一次（点赞后取消点赞只剩一次删除）
+ * - 后台线程在待写变更达到 flushSize 或最早一条等待超过 maxDelayMillis 时刷写：
+ *   每种类型的新增、删除各一条 unnest 批量语句，整批一次提交（组提交）
+ * - DURABLE 模式下调用方阻塞到包含自己变更的那一批提交为止；ASYNC 模式立即返回，刷写失败的变更重新入队
+ * - 缓冲达到 capacity 时调用方阻塞，直到后台线程取走一批
+ * 队列独占传入的连接（设置为手动提交），调用方不应再在该连接上执行其它语句。
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    public enum Mode {
+        ASYNC,
+        DURABLE
+    }
+
+
+    public enum Kind {
+        LIKE("user_liked_reviews", "authorid", "reviewid",
+                "EXISTS (SELECT 1 FROM users WHERE authorid = u.a) AND EXISTS (SELECT 1 FROM reviews WHERE reviewid = u.b)"),
+        FAVORITE("user_favorite_recipes", "authorid", "recipeid",
+                "EXISTS (SELECT 1 FROM users WHERE authorid = u.a) AND EXISTS (SELECT 1 FROM recipes WHERE recipeid = u.b)"),
+        FOLLOW("user_follows", "followerid", "followingid",
+                "EXISTS (SELECT 1 FROM users WHERE authorid = u.a) AND EXISTS (SELECT 1 FROM users WHERE authorid = u.b)");
+
+        final String table;
+        final String insertSql;
+        final String deleteSql;
+
+        Kind(String table, String first, String second, String parentsExist) {
+            this.table = table;
+            // 引用不存在的用户/评论/食谱的行被跳过，不让一条坏数据使整批失败
+            this.insertSql = "INSERT INTO " + table + " (" + first + ", " + second + ") " +
+                    "SELECT u.a, u.b FROM unnest(?::bigint[], ?::bigint[]) AS u(a, b) WHERE " + parentsExist +
+                    " ON CONFLICT DO NOTHING";
+            this.deleteSql = "DELETE FROM " + table + " t USING unnest(?::bigint[], ?::bigint[]) AS u(a, b) " +
+                    "WHERE t." + first + " = u.a AND t." + second + " = u.b";
+        }
+    }
+
+
+    private static final class Key {
+        final Kind kind;
+        final long a;
+        final long b;
+
+        Key(Kind kind, long a, long b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && a == other.a && b == other.b;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, a, b);
+        }
+    }
+
+
+    /**
+     * 一次刷写对应的一批，DURABLE 模式的调用方等待其 committed
+     */
+    private static final class Batch {
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+    }
+
+
+    public static class Metrics {
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final long enqueued;
+        public final long coalesced;          // 被后续变更合并掉的次数
+        public final long flushes;
+        public final long flushedMutations;
+        public final long rowsWritten;        // 实际插入或删除的行数
+        public final long failures;
+        public final long lastFlushNanos;
+        public final long maxFlushNanos;
+        public final long totalFlushNanos;
+
+        Metrics(int queueDepth, int maxQueueDepth, long enqueued, long coalesced, long flushes,
+                long flushedMutations, long rowsWritten, long failures,
+                long lastFlushNanos, long maxFlushNanos, long totalFlushNanos) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.enqueued = enqueued;
+            this.coalesced = coalesced;
+            this.flushes = flushes;
+            this.flushedMutations = flushedMutations;
+            this.rowsWritten = rowsWritten;
+            this.failures = failures;
+            this.lastFlushNanos = lastFlushNanos;
+            this.maxFlushNanos = maxFlushNanos;
+            this.totalFlushNanos = totalFlushNanos;
+        }
+
+        public double averageFlushMillis() {
+            return flushes == 0 ? 0 : totalFlushNanos / 1_000_000.0 / flushes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("WriteBehindQueue{depth=%d, maxDepth=%d, enqueued=%d, coalesced=%d, flushes=%d, " +
+                            "flushed=%d, rows=%d, failures=%d, flush avg=%.2fms, max=%.2fms}",
+                    queueDepth, maxQueueDepth, enqueued, coalesced, flushes, flushedMutations, rowsWritten, failures,
+                    averageFlushMillis(), maxFlushNanos / 1_000_000.0);
+        }
+    }
+
+
+    private final Connection connection;
+    private final Mode mode;
+    private final int flushSize;
+    private final long maxDelayNanos;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private LinkedHashMap<Key, Boolean> pending = new LinkedHashMap<>();   // true 新增，false 删除
+    private Batch currentBatch = new Batch();
+    private long firstPendingNanos;
+    private boolean flushRequested;
+    private boolean closed;
+    private final Thread flusher;
+    private volatile QueryCache queryCache;
+
+    // 以下统计在 lock 下更新
+    private int maxQueueDepth;
+    private long enqueued;
+    private long coalesced;
+    private long flushes;
+    private long flushedMutations;
+    private long rowsWritten;
+    private long failures;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+
+
+    public WriteBehindQueue(Connection connection, Mode mode) throws SQLException {
+        this(connection, mode, 1000, 50, 100_000);
+    }
+
+
+    /**
+     * @param flushSize      待写变更达到该数量时立即刷写
+     * @param maxDelayMillis 最早一条变更最多等待的时间
+     * @param capacity       缓冲上限，达到后调用方阻塞
+     */
+    public WriteBehindQueue(Connection connection, Mode mode, int flushSize, long maxDelayMillis, int capacity)
+            throws SQLException {
+        if (flushSize <= 0 || capacity < flushSize) {
+            throw new IllegalArgumentException("flushSize 必须为正数且不大于 capacity");
+        }
+        this.connection = connection;
+        this.mode = mode;
+        this.flushSize = flushSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.capacity = capacity;
+        connection.setAutoCommit(false);
+
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+
+    /**
+     * 与 DataQuery 共享同一个 QueryCache 时，每次组提交前使本批涉及的表失效，提交或回滚后再次失效
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+
+    public void like(long authorId, long reviewId) throws SQLException {
+        submit(Kind.LIKE, authorId, reviewId, true);
+    }
+
+    public void unlike(long authorId, long reviewId) throws SQLException {
+        submit(Kind.LIKE, authorId, reviewId, false);
+    }
+
+    public void favorite(long authorId, long recipeId) throws SQLException {
+        submit(Kind.FAVORITE, authorId, recipeId, true);
+    }
+
+    public void unfavorite(long authorId, long recipeId) throws SQLException {
+        submit(Kind.FAVORITE, authorId, recipeId, false);
+    }
+
+    public void follow(long followerId, long followingId) throws SQLException {
+        submit(Kind.FOLLOW, followerId, followingId, true);
+    }
+
+    public void unfollow(long followerId, long followingId) throws SQLException {
+        submit(Kind.FOLLOW, followerId, followingId, false);
+    }
+
+
+    /**
+     * 放入一条变更。DURABLE 模式下返回时该变更已提交，提交失败时抛出 SQLException。
+     */
+    public void submit(Kind kind, long a, long b, boolean add) throws SQLException {
+        Batch batch;
+        lock.lock();
+        try {
+            while (pending.size() >= capacity && !closed) {
+                spaceAvailable.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("队列已关闭");
+            }
+            if (pending.isEmpty()) {
+                firstPendingNanos = System.nanoTime();
+            }
+            if (pending.put(new Key(kind, a, b), add) != null) {
+                coalesced++;
+            }
+            enqueued++;
+            maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+            if (pending.size() == 1 || pending.size() >= flushSize) {
+                flushNeeded.signal();
+            }
+            batch = currentBatch;
+        } finally {
+            lock.unlock();
+        }
+
+        if (mode == Mode.DURABLE) {
+            await(batch);
+        }
+    }
+
+
+    /**
+     * 立即刷写当前缓冲并等待提交
+     */
+    public void flush() throws SQLException {
+        Batch batch;
+        lock.lock();
+        try {
+            flushRequested = true;
+            batch = currentBatch;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        await(batch);
+    }
+
+
+    /**
+     * 刷写剩余变更并停止后台线程
+     */
+    @Override
+    public void close() throws SQLException {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待后写队列关闭时被中断", e);
+        }
+    }
+
+
+    public Metrics getMetrics() {
+        lock.lock();
+        try {
+            return new Metrics(pending.size(), maxQueueDepth, enqueued, coalesced, flushes, flushedMutations,
+                    rowsWritten, failures, lastFlushNanos, maxFlushNanos, totalFlushNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void await(Batch batch) throws SQLException {
+        try {
+            batch.committed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待提交时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+        }
+    }
+
+
+    private void runFlusher() {
+        while (true) {
+            LinkedHashMap<Key, Boolean> mutations;
+            Batch batch;
+            lock.lock();
+            try {
+                waitForTrigger();
+                mutations = pending;
+                batch = currentBatch;
+                pending = new LinkedHashMap<>();
+                currentBatch = new Batch();
+                flushRequested = false;
+                spaceAvailable.signalAll();
+                if (mutations.isEmpty() && closed) {
+                    batch.committed.complete(null);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (mutations.isEmpty()) {
+                batch.committed.complete(null);
+                continue;
+            }
+
+            long startTime = System.nanoTime();
+            try {
+                int rows = write(mutations);
+                long elapsed = System.nanoTime() - startTime;
+                lock.lock();
+                try {
+                    flushes++;
+                    flushedMutations += mutations.size();
+                    rowsWritten += rows;
+                    lastFlushNanos = elapsed;
+                    maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+                    totalFlushNanos += elapsed;
+                } finally {
+                    lock.unlock();
+                }
+                batch.committed.complete(null);
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                    // 连接不可用，下一次刷写会再次报告
+                }
+                QueryCache cache = queryCache;
+                if (cache != null) {
+                    cache.afterCompletion(connection, false);
+                }
+                lock.lock();
+                try {
+                    failures++;
+                    if (mode == Mode.ASYNC && !closed) {
+                        // 重新入队，期间到达的较新变更优先
+                        for (Map.Entry<Key, Boolean> entry : mutations.entrySet()) {
+                            pending.putIfAbsent(entry.getKey(), entry.getValue());
+                        }
+                        // 等待一个 maxDelay 后重试
+                        firstPendingNanos = System.nanoTime();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                System.err.println("后写队列刷写失败: " + e.getMessage());
+                batch.committed.completeExceptionally(e);
+            }
+        }
+    }
+
+
+    /**
+     * 在 lock 下等待刷写条件：关闭、显式刷写、达到 flushSize，或最早一条变更等待超过 maxDelay
+     */
+    private void waitForTrigger() {
+        while (!closed && !flushRequested && pending.size() < flushSize) {
+            if (pending.isEmpty()) {
+                flushNeeded.awaitUninterruptibly();
+                continue;
+            }
+            long remaining = firstPendingNanos + maxDelayNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                flushNeeded.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * 按类型和操作分组，每组一条 unnest 语句，最后一次提交；返回影响的行数。
+     * 失败时由 runFlusher 回滚并通知缓存
+     */
+    private int write(Map<Key, Boolean> mutations) throws SQLException {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            Set<String> tables = new LinkedHashSet<>();
+            for (Key key : mutations.keySet()) {
+                tables.add(key.kind.table);
+            }
+            cache.beginWrite(connection, tables.toArray(new String[0]));
+        }
+
+        int rows = 0;
+        for (Kind kind : Kind.values()) {
+            List<Long> addA = new ArrayList<>();
+            List<Long> addB = new ArrayList<>();
+            List<Long> removeA = new ArrayList<>();
+            List<Long> removeB = new ArrayList<>();
+            for (Map.Entry<Key, Boolean> entry : mutations.entrySet()) {
+                Key key = entry.getKey();
+                if (key.kind != kind) {
+                    continue;
+                }
+                if (entry.getValue()) {
+                    addA.add(key.a);
+                    addB.add(key.b);
+                } else {
+                    removeA.add(key.a);
+                    removeB.add(key.b);
+                }
+            }
+            rows += execute(kind.deleteSql, removeA, removeB);
+            rows += execute(kind.insertSql, addA, addB);
+        }
+        connection.commit();
+        if (cache != null) {
+            cache.afterCompletion(connection, true);
+        }
+        return rows;
+    }
+
+
+    private int execute(String sql, List<Long> first, List<Long> second) throws SQLException {
+        if (first.isEmpty()) {
+            return 0;
+        }
+        Array a = connection.createArrayOf("bigint", first.toArray(new Long[0]));
+        Array b = connection.createArrayOf("bigint", second.toArray(new Long[0]));
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setArray(1, a);
+            pstmt.setArray(2, b);
+            return pstmt.executeUpdate();
+        } finally {
+            a.free();
+            b.free();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- 全文检索：recipes（名称 + 描述）与 reviews（评论内容）上的 tsvector 列及 GIN 索引
+-- 使用存储生成列，插入和修改时由数据库自动维护，无需触发器
+
+alter table recipes
+    add column if not exists search_tsv tsvector
+        generated always as (
+            setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+            setweight(to_tsvector('english', coalesce(description, '')), 'B')
+        ) stored;
+
+alter table reviews
+    add column if not exists search_tsv tsvector
+        generated always as (to_tsvector('english', coalesce(review, ''))) stored;
+
+create index if not exists idx_recipes_search_tsv on recipes using gin (search_tsv);
+create index if not exists idx_reviews_search_tsv on reviews using gin (search_tsv);
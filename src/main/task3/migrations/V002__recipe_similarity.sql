@@ -0,0 +1,12 @@
+-- 食谱相似度（"收藏了 X 的用户也收藏了 Y"），由 RecommendationEngine 计算后批量写回
+
+create table if not exists recipe_similarity (
+    recipeid bigint not null,
+    rank integer not null,
+    similar_recipeid bigint not null,
+    score real not null,
+    support integer not null,
+    primary key (recipeid, rank),
+    foreign key (recipeid) references recipes(recipeid) on delete cascade,
+    foreign key (similar_recipeid) references recipes(recipeid) on delete cascade
+);
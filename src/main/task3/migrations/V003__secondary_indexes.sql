@@ -0,0 +1,9 @@
+-- 热点查询列上的二级索引。主键只覆盖联合主键的前导列，以下查询原本都是顺序扫描：
+-- 某食谱的评论、某用户的评论、某用户发布的食谱、含某配料的食谱、某用户的粉丝
+-- IndexBenchmark 按这里的定义逐个建删索引，对比查询延迟和写入开销
+
+create index if not exists idx_reviews_recipeid on reviews (recipeid);
+create index if not exists idx_reviews_authorid on reviews (authorid);
+create index if not exists idx_recipes_authorid on recipes (authorid);
+create index if not exists idx_recipe_ingredients_ingredientid on recipe_ingredients (ingredientid);
+create index if not exists idx_user_follows_followingid on user_follows (followingid);
@@ -0,0 +1,24 @@
+-- 按 datesubmitted 范围分区的评论表，分区由 ReviewPartitions 按月或按年自动创建
+-- reviews 本身不能直接改为分区表：分区表的主键/唯一约束必须包含分区键，
+-- 而 user_liked_reviews 的外键只引用 reviewid。因此分区布局是导入时同步写入的另一份数据，
+-- 供按时间窗口的查询与归档使用
+-- datesubmitted 为 NULL 或尚无对应分区的行进入默认分区
+
+create table if not exists reviews_partitioned (
+    reviewid bigint not null,
+    recipeid bigint,
+    authorid bigint,
+    rating integer not null,
+    review text,
+    datesubmitted timestamp,
+    datemodified timestamp,
+    foreign key (recipeid) references recipes(recipeid) on delete cascade,
+    foreign key (authorid) references users(authorid) on delete cascade
+) partition by range (datesubmitted);
+
+create table if not exists reviews_partitioned_default partition of reviews_partitioned default;
+
+-- 分区表上的索引会自动在每个分区上创建
+create index if not exists idx_reviews_partitioned_date on reviews_partitioned (datesubmitted);
+create index if not exists idx_reviews_partitioned_reviewid on reviews_partitioned (reviewid);
+create index if not exists idx_reviews_partitioned_recipeid on reviews_partitioned (recipeid);
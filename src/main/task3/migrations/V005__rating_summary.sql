@@ -0,0 +1,19 @@
+-- 按食谱汇总的评分统计，导入后由 RatingSummary.rebuild() 构建，之后增量维护
+
+create table if not exists recipe_rating_summary (
+    recipeid bigint primary key,
+    review_count integer not null,
+    rating_sum bigint not null,
+    rating_0 integer not null,
+    rating_1 integer not null,
+    rating_2 integer not null,
+    rating_3 integer not null,
+    rating_4 integer not null,
+    rating_5 integer not null,
+    avg_rating double precision,
+    foreign key (recipeid) references recipes(recipeid) on delete cascade
+);
+
+-- "评分最高 N 个" 和 "评论最多 N 个" 直接按索引顺序读取
+create index if not exists idx_rating_summary_avg on recipe_rating_summary (avg_rating desc, review_count desc);
+create index if not exists idx_rating_summary_count on recipe_rating_summary (review_count desc);
@@ -0,0 +1,95 @@
+-- reviews 改为按 datesubmitted 范围分区的表，取代 V004 中由触发器同步的副本 reviews_partitioned。
+-- 分区表的主键必须包含分区键，因此主键改为 (reviewid, datesubmitted)，datesubmitted 不再允许 NULL
+-- （原有 NULL 取 datemodified，两者都为 NULL 时迁移失败，需先手工补齐）。
+-- user_liked_reviews 只记录 reviewid，无法再用外键引用 reviews，改由下面的语句级触发器维护同样的约束：
+-- 插入或修改点赞时评论必须存在，删除评论时级联删除点赞，TRUNCATE reviews 时一并清空点赞。
+-- 分区由 ReviewPartitions 按月或按年创建，尚无对应分区的行进入默认分区
+
+drop trigger if exists reviews_mirror_insert on reviews;
+drop trigger if exists reviews_mirror_update on reviews;
+drop trigger if exists reviews_mirror_delete on reviews;
+drop trigger if exists reviews_mirror_truncate on reviews;
+drop function if exists reviews_mirror_to_partitioned();
+drop table if exists reviews_partitioned;
+
+alter table user_liked_reviews drop constraint if exists user_liked_reviews_reviewid_fkey;
+
+alter table reviews rename to reviews_unpartitioned;
+
+create table reviews (
+    reviewid bigint not null,
+    recipeid bigint,
+    authorid bigint,
+    rating integer not null,
+    review text,
+    datesubmitted timestamp not null,
+    datemodified timestamp,
+    search_tsv tsvector generated always as (to_tsvector('english', coalesce(review, ''))) stored,
+    primary key (reviewid, datesubmitted),
+    foreign key (recipeid) references recipes(recipeid) on delete cascade,
+    foreign key (authorid) references users(authorid) on delete cascade
+) partition by range (datesubmitted);
+
+create table reviews_default partition of reviews default;
+
+insert into reviews (reviewid, recipeid, authorid, rating, review, datesubmitted, datemodified)
+select reviewid, recipeid, authorid, rating, review, coalesce(datesubmitted, datemodified), datemodified
+from reviews_unpartitioned;
+
+drop table reviews_unpartitioned;
+
+-- 分区表上的索引会自动在每个分区上创建；原表上 V001 / V003 的索引随原表删除，这里按原名重建
+create index if not exists idx_reviews_reviewid on reviews (reviewid);
+create index if not exists idx_reviews_datesubmitted on reviews (datesubmitted);
+create index if not exists idx_reviews_recipeid on reviews (recipeid);
+create index if not exists idx_reviews_authorid on reviews (authorid);
+create index if not exists idx_reviews_search_tsv on reviews using gin (search_tsv);
+
+-- 点赞引用的评论必须存在。与外键一样先对被引用的评论加 KEY SHARE 锁，避免与并发删除交错
+create or replace function user_liked_reviews_check_review() returns trigger as $$
+begin
+    perform 1 from reviews r join new_rows n on r.reviewid = n.reviewid for key share of r;
+    if exists (select 1 from new_rows n
+               where n.reviewid is not null
+                 and not exists (select 1 from reviews r where r.reviewid = n.reviewid)) then
+        raise exception 'user_liked_reviews 引用了不存在的评论' using errcode = 'foreign_key_violation';
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+-- 带转换表的触发器只能对应一种事件，插入和修改各一个
+create trigger user_liked_reviews_check_insert
+    after insert on user_liked_reviews referencing new table as new_rows
+    for each statement execute procedure user_liked_reviews_check_review();
+create trigger user_liked_reviews_check_update
+    after update on user_liked_reviews referencing new table as new_rows
+    for each statement execute procedure user_liked_reviews_check_review();
+
+-- reviews 一侧：删除时级联删除点赞（包括 users / recipes 级联删除的评论）；
+-- 修改后不再存在的 reviewid 若仍被点赞引用则报错（原外键的 NO ACTION）；TRUNCATE 时清空点赞
+create or replace function reviews_cascade_likes() returns trigger as $$
+begin
+    if tg_op = 'TRUNCATE' then
+        truncate user_liked_reviews;
+    elsif tg_op = 'DELETE' then
+        delete from user_liked_reviews l using old_rows o
+        where l.reviewid = o.reviewid
+          and not exists (select 1 from reviews r where r.reviewid = o.reviewid);
+    elsif exists (select 1 from old_rows o join user_liked_reviews l on l.reviewid = o.reviewid
+                  where not exists (select 1 from reviews r where r.reviewid = o.reviewid)) then
+        raise exception '评论仍被 user_liked_reviews 引用' using errcode = 'foreign_key_violation';
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger reviews_cascade_likes_delete
+    after delete on reviews referencing old table as old_rows
+    for each statement execute procedure reviews_cascade_likes();
+create trigger reviews_cascade_likes_update
+    after update on reviews referencing old table as old_rows
+    for each statement execute procedure reviews_cascade_likes();
+create trigger reviews_cascade_likes_truncate
+    after truncate on reviews
+    for each statement execute procedure reviews_cascade_likes();
@@ -0,0 +1,430 @@
+package main.task4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * B+ 树索引：值只存放在叶子中，叶子之间用前后指针串成有序链表，内部节点只存分隔键。
+ * 范围查询只下降一次找到起始叶子，之后顺着叶子链表顺序扫描，只需和上界比较，O(log n + k)。
+ * 节点的键、值、子节点都存放在定长数组中，节点内用二分查找。
+ * 与 BTreeIndex 不同，put 已存在的键会替换原值（size 不变）。
+ */
+public class BPlusTreeIndex<K extends Comparable<K>, V> implements OrderedIndex<K, V> {
+    private static final int DEFAULT_ORDER = 64; // 叶子最多 order 个键，内部节点最多 order 个子节点
+
+    private final int order;
+    private Node root;
+    private int size;
+
+
+    private abstract static class Node {
+        Object[] keys;
+        int count;   // 键的个数
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+    }
+
+
+    private static final class Leaf extends Node {
+        Object[] values;
+        Leaf next;
+        Leaf prev;
+
+        Leaf(int order) {
+            super(order);
+            values = new Object[order];
+        }
+    }
+
+
+    private static final class Internal extends Node {
+        Node[] children;   // children[i] 中的键 < keys[i] <= children[i + 1] 中的键
+
+        Internal(int order) {
+            super(order - 1);
+            children = new Node[order];
+        }
+    }
+
+
+    /**
+     * 子节点分裂后需要插入父节点的分隔键和右半节点
+     */
+    private static final class Split {
+        final Object separator;
+        final Node right;
+
+        Split(Object separator, Node right) {
+            this.separator = separator;
+            this.right = right;
+        }
+    }
+
+
+    public BPlusTreeIndex() {
+        this(DEFAULT_ORDER);
+    }
+
+
+    public BPlusTreeIndex(int order) {
+        if (order < 3) {
+            throw new IllegalArgumentException("阶数不能小于 3");
+        }
+        this.order = order;
+        clear();
+    }
+
+
+    public void put(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+
+        Split split = insert(root, key, value);
+        if (split != null) {
+            Internal newRoot = new Internal(order);
+            newRoot.keys[0] = split.separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = split.right;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+    }
+
+
+    private Split insert(Node node, K key, V value) {
+        if (node instanceof Leaf) {
+            return insertIntoLeaf((Leaf) node, key, value);
+        }
+
+        Internal internal = (Internal) node;
+        int childIndex = childIndex(internal, key);
+        Split split = insert(internal.children[childIndex], key, value);
+        if (split == null) {
+            return null;
+        }
+
+        if (internal.count < order - 1) {
+            insertSeparator(internal, childIndex, split);
+            return null;
+        }
+
+        // 内部节点已满：先在临时数组中插入，再对半分开，中间键上移
+        Object[] keys = new Object[order];
+        Node[] children = new Node[order + 1];
+        System.arraycopy(internal.keys, 0, keys, 0, childIndex);
+        keys[childIndex] = split.separator;
+        System.arraycopy(internal.keys, childIndex, keys, childIndex + 1, internal.count - childIndex);
+        System.arraycopy(internal.children, 0, children, 0, childIndex + 1);
+        children[childIndex + 1] = split.right;
+        System.arraycopy(internal.children, childIndex + 1, children, childIndex + 2, internal.count - childIndex);
+
+        int mid = order / 2;
+        Internal right = new Internal(order);
+        internal.count = mid;
+        right.count = order - mid - 1;
+        System.arraycopy(keys, 0, internal.keys, 0, mid);
+        System.arraycopy(children, 0, internal.children, 0, mid + 1);
+        System.arraycopy(keys, mid + 1, right.keys, 0, right.count);
+        System.arraycopy(children, mid + 1, right.children, 0, right.count + 1);
+        for (int i = mid; i < internal.keys.length; i++) {
+            internal.keys[i] = null;
+        }
+        for (int i = mid + 1; i < internal.children.length; i++) {
+            internal.children[i] = null;
+        }
+        return new Split(keys[mid], right);
+    }
+
+
+    private Split insertIntoLeaf(Leaf leaf, K key, V value) {
+        int pos = search(leaf, key);
+        if (pos >= 0) {
+            leaf.values[pos] = value;
+            return null;
+        }
+        pos = -pos - 1;
+        size++;
+
+        if (leaf.count < order) {
+            insertAt(leaf, pos, key, value);
+            return null;
+        }
+
+        // 叶子已满：右半部分移到新叶子，新叶子的第一个键作为分隔键
+        Leaf right = new Leaf(order);
+        int mid = (order + 1) / 2;
+        right.count = leaf.count - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.count);
+        for (int i = mid; i < leaf.count; i++) {
+            leaf.keys[i] = null;
+            leaf.values[i] = null;
+        }
+        leaf.count = mid;
+
+        if (pos <= mid) {
+            insertAt(leaf, pos, key, value);
+        } else {
+            insertAt(right, pos - mid, key, value);
+        }
+
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        return new Split(right.keys[0], right);
+    }
+
+
+    private static void insertAt(Leaf leaf, int pos, Object key, Object value) {
+        System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.count - pos);
+        System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.count - pos);
+        leaf.keys[pos] = key;
+        leaf.values[pos] = value;
+        leaf.count++;
+    }
+
+
+    private static void insertSeparator(Internal node, int childIndex, Split split) {
+        System.arraycopy(node.keys, childIndex, node.keys, childIndex + 1, node.count - childIndex);
+        System.arraycopy(node.children, childIndex + 1, node.children, childIndex + 2, node.count - childIndex);
+        node.keys[childIndex] = split.separator;
+        node.children[childIndex + 1] = split.right;
+        node.count++;
+    }
+
+
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        Leaf leaf = findLeaf(key);
+        int pos = search(leaf, key);
+        @SuppressWarnings("unchecked")
+        V value = pos >= 0 ? (V) leaf.values[pos] : null;
+        return value;
+    }
+
+
+    public List<V> rangeQuery(K minKey, K maxKey) {
+        List<V> results = new ArrayList<>();
+        if (minKey == null || maxKey == null || minKey.compareTo(maxKey) > 0) {
+            return results;
+        }
+
+        Leaf leaf = findLeaf(minKey);
+        int pos = search(leaf, minKey);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        while (leaf != null) {
+            for (; pos < leaf.count; pos++) {
+                @SuppressWarnings("unchecked")
+                K key = (K) leaf.keys[pos];
+                if (key.compareTo(maxKey) > 0) {
+                    return results;
+                }
+                @SuppressWarnings("unchecked")
+                V value = (V) leaf.values[pos];
+                results.add(value);
+            }
+            leaf = leaf.next;
+            pos = 0;
+        }
+        return results;
+    }
+
+
+    /**
+     * 新游标，先 seek 再遍历。游标只记住当前叶子和下标，沿叶子的前后指针移动，O(1) 额外内存。
+     */
+    public Cursor<K, V> cursor() {
+        return new LeafCursor();
+    }
+
+
+    public boolean containsKey(K key) {
+        if (key == null) {
+            return false;
+        }
+        return search(findLeaf(key), key) >= 0;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public void clear() {
+        root = new Leaf(order);
+        size = 0;
+    }
+
+
+    /**
+     * 树高（只有一个叶子时为 1）
+     */
+    public int height() {
+        int height = 1;
+        for (Node node = root; node instanceof Internal; node = ((Internal) node).children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+
+    private Leaf findLeaf(K key) {
+        Node node = root;
+        while (node instanceof Internal) {
+            Internal internal = (Internal) node;
+            node = internal.children[childIndex(internal, key)];
+        }
+        return (Leaf) node;
+    }
+
+
+    /**
+     * 键应进入的子节点下标：第一个大于 key 的分隔键的位置
+     */
+    @SuppressWarnings("unchecked")
+    private int childIndex(Internal node, K key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareTo((K) node.keys[mid]) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 节点内二分查找，找到返回下标，否则返回 -(插入位置) - 1
+     */
+    @SuppressWarnings("unchecked")
+    private int search(Node node, K key) {
+        int lo = 0;
+        int hi = node.count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((K) node.keys[mid]).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+
+    private final class LeafCursor implements Cursor<K, V> {
+        private Leaf leaf;   // null 表示没有定位
+        private int pos;
+
+        public boolean seek(K key) {
+            leaf = findLeaf(key);
+            pos = search(leaf, key);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            return skipForward();
+        }
+
+        public boolean seekFloor(K key) {
+            leaf = findLeaf(key);
+            pos = search(leaf, key);
+            if (pos < 0) {
+                pos = -pos - 2;
+            }
+            return skipBackward();
+        }
+
+        public boolean seekFirst() {
+            Node node = root;
+            while (node instanceof Internal) {
+                node = ((Internal) node).children[0];
+            }
+            leaf = (Leaf) node;
+            pos = 0;
+            return skipForward();
+        }
+
+        public boolean seekLast() {
+            Node node = root;
+            while (node instanceof Internal) {
+                Internal internal = (Internal) node;
+                node = internal.children[internal.count];
+            }
+            leaf = (Leaf) node;
+            pos = leaf.count - 1;
+            return skipBackward();
+        }
+
+        public boolean next() {
+            if (leaf == null) {
+                return false;
+            }
+            pos++;
+            return skipForward();
+        }
+
+        public boolean previous() {
+            if (leaf == null) {
+                return false;
+            }
+            pos--;
+            return skipBackward();
+        }
+
+        public boolean isValid() {
+            return leaf != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K key() {
+            checkValid();
+            return (K) leaf.keys[pos];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkValid();
+            return (V) leaf.values[pos];
+        }
+
+        private boolean skipForward() {
+            while (leaf != null && pos >= leaf.count) {
+                leaf = leaf.next;
+                pos = 0;
+            }
+            return leaf != null;
+        }
+
+        private boolean skipBackward() {
+            while (leaf != null && pos < 0) {
+                leaf = leaf.prev;
+                pos = leaf == null ? 0 : leaf.count - 1;
+            }
+            return leaf != null;
+        }
+
+        private void checkValid() {
+            if (leaf == null) {
+                throw new IllegalStateException("游标没有指向任何条目");
+            }
+        }
+    }
+}
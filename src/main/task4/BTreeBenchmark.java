@@ -0,0 +1,587 @@
+package main.task4;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 内存索引实现之间的对比，不需要数据库：
+ * java -cp ... main.task4.BTreeBenchmark
+ */
+public class BTreeBenchmark {
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        System.out.println("========== 内存索引对比 ==========");
+        for (int keyCount : new int[]{10_000, 1_000_000, 10_000_000}) {
+            long[] times = testRangeScan(keyCount, 1000, 1000);
+            System.out.println(String.format("%,d 个键, 1000 次宽度 1000 的范围查询: BTree=%.3fms/次, B+Tree=%.3fms/次 (%.1f 倍)",
+                    keyCount, times[0] / 1_000_000.0, times[1] / 1_000_000.0, (double) times[0] / times[1]));
+        }
+
+        int[] orders = {4, 16, 64, 128, 256, 512};
+        long[][] rates = testOrderSweep(1_000_000, 1_000_000, orders);
+        System.out.println("BTreeIndex 阶数扫描 (1,000,000 个键):");
+        for (int i = 0; i < orders.length; i++) {
+            System.out.println(String.format("  order=%-4d 树高=%-3d 插入 %,d 次/秒, 点查 %,d 次/秒",
+                    orders[i], rates[i][2], rates[i][0], rates[i][1]));
+        }
+
+        String[] names = {"BPlusTreeIndex<Integer>", "IntBTreeIndex", "LongBTreeIndex"};
+        long[][] primitive = testPrimitiveKeys(1_000_000, 1_000_000, 1000);
+        System.out.println("装箱与基本类型键对比 (1,000,000 个键):");
+        for (int i = 0; i < names.length; i++) {
+            System.out.println(String.format("  %-24s 插入 %,d 次/秒, 点查 %,d 次/秒, 范围扫描 %,d 条/秒",
+                    names[i], primitive[i][0], primitive[i][1], primitive[i][2]));
+        }
+
+        long[] loadTimes = testBulkLoad(1_000_000);
+        System.out.println(String.format("BTreeIndex 构建 1,000,000 个键: 逐条 put=%.1fms, 有序批量构建=%.1fms, 乱序批量构建(含排序)=%.1fms",
+                loadTimes[0] / 1_000_000.0, loadTimes[1] / 1_000_000.0, loadTimes[2] / 1_000_000.0));
+
+        long[] scanTimes = testLazyScan(1_000_000, 200, 100_000, 20);
+        System.out.println(String.format("宽度 100,000 的范围取前 20 条: rangeQuery=%.3fms/次, 游标=%.3fms/次; 全范围求和: 顺序流=%.1fms, 并行流=%.1fms",
+                scanTimes[0] / 1_000_000.0, scanTimes[1] / 1_000_000.0, scanTimes[2] / 1_000_000.0, scanTimes[3] / 1_000_000.0));
+
+        long[] snapshot = testSnapshot(10_000_000);
+        System.out.println(String.format("10,000,000 条记录的快照: 文件 %,d MB, 保存=%.1fms, 加载=%.1fms",
+                snapshot[2] >> 20, snapshot[0] / 1_000_000.0, snapshot[1] / 1_000_000.0));
+
+        // 1000 万个装箱键值约需数 GB 堆，建议以 -Xmx4g 运行
+        String[] footprintNames = {"BTreeIndex<Long, Long>", "OffHeapBTreeIndex"};
+        long[][] footprint = testOffHeapFootprint(10_000_000);
+        System.out.println("堆内与堆外节点对比 (10,000,000 个键):");
+        for (int i = 0; i < footprintNames.length; i++) {
+            System.out.println(String.format("  %-22s 堆占用 %,d MB, 堆外 %,d MB, 构建期间 GC %d 次共 %dms, 完整 GC 一次 %dms",
+                    footprintNames[i], footprint[i][0] >> 20, footprint[i][1] >> 20, footprint[i][2], footprint[i][3], footprint[i][4]));
+        }
+
+        int[] threadCounts = {1, 2, 4, 8, 16, 32};
+        for (double readRatio : new double[]{0.95, 0.5}) {
+            long[][] throughput = testConcurrentScaling(1_000_000, 200_000, threadCounts, readRatio);
+            System.out.println(String.format("并发扩展 (1,000,000 个键, 读比例 %.0f%%):", readRatio * 100));
+            for (int i = 0; i < threadCounts.length; i++) {
+                System.out.println(String.format("  %2d 线程: 乐观锁耦合 %,d 次/秒, 读写锁 %,d 次/秒 (%.1f 倍)",
+                        threadCounts[i], throughput[i][0], throughput[i][1], (double) throughput[i][0] / throughput[i][1]));
+            }
+        }
+    }
+
+
+    /**
+     * 用一把 ReentrantReadWriteLock 保护整个索引，作为并发对比的基线
+     */
+    static final class ReadWriteLockedIndex<K extends Comparable<K>, V> implements OrderedIndex<K, V> {
+        private final OrderedIndex<K, V> index;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        ReadWriteLockedIndex(OrderedIndex<K, V> index) {
+            this.index = index;
+        }
+
+        public void put(K key, V value) {
+            lock.writeLock().lock();
+            try {
+                index.put(key, value);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public V get(K key) {
+            lock.readLock().lock();
+            try {
+                return index.get(key);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public List<V> rangeQuery(K minKey, K maxKey) {
+            lock.readLock().lock();
+            try {
+                return index.rangeQuery(minKey, maxKey);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public boolean containsKey(K key) {
+            return get(key) != null;
+        }
+
+        public int size() {
+            lock.readLock().lock();
+            try {
+                return index.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public void clear() {
+            lock.writeLock().lock();
+            try {
+                index.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+
+    /**
+     * 范围查询对比：键 0..keyCount-1 乱序插入后，执行 queries 次宽度为 width 的随机范围查询，
+     * 返回 {BTreeIndex 平均纳秒, BPlusTreeIndex 平均纳秒}
+     */
+    public static long[] testRangeScan(int keyCount, int queries, int width) {
+        int[] keys = shuffledKeys(keyCount, 42);
+        long bTreeTime = timeRangeQueries(build(BTreeIndex::new, keys), keyCount, queries, width);
+        long bPlusTreeTime = timeRangeQueries(build(BPlusTreeIndex::new, keys), keyCount, queries, width);
+        return new long[]{bTreeTime, bPlusTreeTime};
+    }
+
+
+    /**
+     * BTreeIndex 阶数扫描：每个阶数乱序插入 keyCount 个键，再做 lookups 次随机点查，
+     * 返回每个阶数的 {插入次数/秒, 点查次数/秒, 树高}
+     */
+    public static long[][] testOrderSweep(int keyCount, int lookups, int[] orders) {
+        int[] keys = shuffledKeys(keyCount, 42);
+        Integer[] boxedKeys = new Integer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            boxedKeys[i] = keys[i];
+        }
+        Integer[] probes = new Integer[lookups];
+        Random random = new Random(7);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = random.nextInt(keyCount);
+        }
+
+        long[][] rates = new long[orders.length][];
+        for (int o = 0; o < orders.length; o++) {
+            BTreeIndex<Integer, Integer> index = new BTreeIndex<>(orders[o]);
+            long startTime = System.nanoTime();
+            for (Integer key : boxedKeys) {
+                index.put(key, key);
+            }
+            long insertTime = System.nanoTime() - startTime;
+
+            long found = 0;
+            startTime = System.nanoTime();
+            for (Integer probe : probes) {
+                if (index.get(probe) != null) {
+                    found++;
+                }
+            }
+            long lookupTime = System.nanoTime() - startTime;
+            if (found != lookups) {
+                System.out.println("点查结果不完整: " + found + "/" + lookups);
+            }
+
+            rates[o] = new long[]{perSecond(keyCount, insertTime), perSecond(lookups, lookupTime), index.height()};
+        }
+        return rates;
+    }
+
+
+    /**
+     * 同样结构和阶数的 B+ 树，装箱 Integer 键与 int/long 键对比：乱序插入 keyCount 个键，
+     * lookups 次随机点查，再做宽度为 width 的范围扫描直到扫过约 keyCount 条。
+     * 返回 {BPlusTreeIndex, IntBTreeIndex, LongBTreeIndex} 各自的 {插入次数/秒, 点查次数/秒, 扫描条数/秒}
+     */
+    public static long[][] testPrimitiveKeys(int keyCount, int lookups, int width) {
+        int[] keys = shuffledKeys(keyCount, 42);
+        int[] probes = new int[lookups];
+        Random random = new Random(7);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = random.nextInt(keyCount);
+        }
+        int scans = Math.max(1, keyCount / width);
+        int[] scanStarts = new int[scans];
+        for (int i = 0; i < scans; i++) {
+            scanStarts[i] = random.nextInt(Math.max(1, keyCount - width));
+        }
+        Object payload = new Object();
+        long[][] rates = new long[3][];
+
+        // 装箱键：键在计时区间内装箱，与 PerformanceTest 中按 int 解析后 put 的用法一致
+        BPlusTreeIndex<Integer, Object> boxed = new BPlusTreeIndex<>(128);
+        long startTime = System.nanoTime();
+        for (int key : keys) {
+            boxed.put(key, payload);
+        }
+        long insertTime = System.nanoTime() - startTime;
+        long found = 0;
+        startTime = System.nanoTime();
+        for (int probe : probes) {
+            if (boxed.get(probe) != null) {
+                found++;
+            }
+        }
+        long lookupTime = System.nanoTime() - startTime;
+        long scanned = 0;
+        startTime = System.nanoTime();
+        for (int from : scanStarts) {
+            scanned += boxed.rangeQuery(from, from + width - 1).size();
+        }
+        long scanTime = System.nanoTime() - startTime;
+        rates[0] = new long[]{perSecond(keyCount, insertTime), perSecond(found, lookupTime), perSecond(scanned, scanTime)};
+        boxed = null;
+
+        IntBTreeIndex<Object> intIndex = new IntBTreeIndex<>(128);
+        startTime = System.nanoTime();
+        for (int key : keys) {
+            intIndex.put(key, payload);
+        }
+        insertTime = System.nanoTime() - startTime;
+        found = 0;
+        startTime = System.nanoTime();
+        for (int probe : probes) {
+            if (intIndex.get(probe) != null) {
+                found++;
+            }
+        }
+        lookupTime = System.nanoTime() - startTime;
+        scanned = 0;
+        startTime = System.nanoTime();
+        for (int from : scanStarts) {
+            scanned += intIndex.rangeQuery(from, from + width - 1).size();
+        }
+        scanTime = System.nanoTime() - startTime;
+        rates[1] = new long[]{perSecond(keyCount, insertTime), perSecond(found, lookupTime), perSecond(scanned, scanTime)};
+        intIndex = null;
+
+        LongBTreeIndex<Object> longIndex = new LongBTreeIndex<>(128);
+        startTime = System.nanoTime();
+        for (int key : keys) {
+            longIndex.put(key, payload);
+        }
+        insertTime = System.nanoTime() - startTime;
+        found = 0;
+        startTime = System.nanoTime();
+        for (int probe : probes) {
+            if (longIndex.get(probe) != null) {
+                found++;
+            }
+        }
+        lookupTime = System.nanoTime() - startTime;
+        scanned = 0;
+        startTime = System.nanoTime();
+        for (int from : scanStarts) {
+            scanned += longIndex.rangeQuery(from, from + width - 1).size();
+        }
+        scanTime = System.nanoTime() - startTime;
+        rates[2] = new long[]{perSecond(keyCount, insertTime), perSecond(found, lookupTime), perSecond(scanned, scanTime)};
+        return rates;
+    }
+
+
+    /**
+     * BTreeIndex 的三种构建方式耗时（纳秒）：{有序键逐条 put, 有序输入 bulkLoad, 乱序输入 bulkLoad}
+     */
+    public static long[] testBulkLoad(int keyCount) {
+        List<Map.Entry<Integer, Integer>> sortedEntries = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            sortedEntries.add(new AbstractMap.SimpleImmutableEntry<>(i, i));
+        }
+        List<Map.Entry<Integer, Integer>> shuffledEntries = new ArrayList<>(sortedEntries);
+        Collections.shuffle(shuffledEntries, new Random(42));
+
+        long[] times = new long[3];
+        BTreeIndex<Integer, Integer> index = new BTreeIndex<>();
+        long startTime = System.nanoTime();
+        for (Map.Entry<Integer, Integer> entry : sortedEntries) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+        times[0] = System.nanoTime() - startTime;
+
+        index = new BTreeIndex<>();
+        startTime = System.nanoTime();
+        index.bulkLoad(sortedEntries.iterator());
+        times[1] = System.nanoTime() - startTime;
+
+        index = new BTreeIndex<>();
+        startTime = System.nanoTime();
+        index.bulkLoad(shuffledEntries.iterator());
+        times[2] = System.nanoTime() - startTime;
+        return times;
+    }
+
+
+    /**
+     * BTreeIndex<Integer, TestRecord> 快照的 {保存耗时纳秒, 加载耗时纳秒, 文件字节数}
+     */
+    public static long[] testSnapshot(int keyCount) throws IOException {
+        BTreeIndex<Integer, PerformanceTest.TestRecord> index = new BTreeIndex<>();
+        List<Map.Entry<Integer, PerformanceTest.TestRecord>> entries = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(i,
+                    new PerformanceTest.TestRecord(i, "name_" + i, i % 1000, "category_" + (i % 10))));
+        }
+        index.bulkLoad(entries.iterator());
+        entries = null;
+
+        Path file = Files.createTempFile("btree", ".snapshot");
+        try {
+            long[] result = new long[3];
+            long startTime = System.nanoTime();
+            result[2] = BTreeSnapshot.save(index, file, BTreeSnapshot.INT, PerformanceTest.TestRecord.CODEC);
+            result[0] = System.nanoTime() - startTime;
+
+            index = null;
+            startTime = System.nanoTime();
+            BTreeIndex<Integer, PerformanceTest.TestRecord> loaded =
+                    BTreeSnapshot.load(file, BTreeSnapshot.INT, PerformanceTest.TestRecord.CODEC);
+            result[1] = System.nanoTime() - startTime;
+            if (loaded.size() != keyCount) {
+                throw new IllegalStateException("快照加载后条目数不一致: " + loaded.size());
+            }
+            return result;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    /**
+     * 并发吞吐量：预先乱序写入 keyCount 个键，每个线程执行 opsPerThread 次随机操作
+     * （readRatio 的比例为点查，其余为 put，键取自 [0, 2 * keyCount)，约一半是新键）。
+     * 返回每个线程数下的 {ConcurrentBTreeIndex 次数/秒, 读写锁包装的 BPlusTreeIndex 次数/秒}
+     */
+    public static long[][] testConcurrentScaling(int keyCount, int opsPerThread, int[] threadCounts, double readRatio)
+            throws InterruptedException {
+        int[] keys = shuffledKeys(keyCount, 42);
+        long[][] throughput = new long[threadCounts.length][];
+        for (int i = 0; i < threadCounts.length; i++) {
+            long optimistic = runConcurrent(build(ConcurrentBTreeIndex::new, keys), threadCounts[i], opsPerThread,
+                    keyCount, readRatio);
+            long locked = runConcurrent(new ReadWriteLockedIndex<>(build(BPlusTreeIndex::new, keys)), threadCounts[i],
+                    opsPerThread, keyCount, readRatio);
+            throughput[i] = new long[]{optimistic, locked};
+        }
+        return throughput;
+    }
+
+
+    private static long runConcurrent(OrderedIndex<Integer, Integer> index, int threads, int opsPerThread,
+                                      int keyCount, double readRatio) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                ready.countDown();
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int key = random.nextInt(keyCount * 2);
+                        if (random.nextDouble() < readRatio) {
+                            index.get(key);
+                        } else {
+                            index.put(key, key);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        ready.await();
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return perSecond((long) threads * opsPerThread, elapsed);
+    }
+
+
+    /**
+     * 惰性扫描：宽度为 width 的随机范围只取前 limit 条时，rangeQuery 先物化整个范围再截取，游标 seek 后只走 limit 步；
+     * 另对全部键的值求和比较顺序流与并行流。返回 {rangeQuery 平均纳秒, 游标平均纳秒, 顺序流纳秒, 并行流纳秒}
+     */
+    public static long[] testLazyScan(int keyCount, int queries, int width, int limit) {
+        int[] keys = shuffledKeys(keyCount, 42);
+        BTreeIndex<Integer, Integer> index = new BTreeIndex<>();
+        for (int key : keys) {
+            index.put(key, key);
+        }
+
+        Random random = new Random(7);
+        long checksum = 0;
+        long[] times = new long[4];
+        for (int i = 0; i < queries; i++) {
+            int from = random.nextInt(Math.max(1, keyCount - width));
+
+            long startTime = System.nanoTime();
+            List<Integer> values = index.rangeQuery(from, from + width - 1);
+            checksum += values.subList(0, Math.min(limit, values.size())).size();
+            times[0] += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            OrderedIndex.Cursor<Integer, Integer> cursor = index.cursor();
+            int taken = 0;
+            for (boolean found = cursor.seek(from); found && taken < limit && cursor.key() <= from + width - 1;
+                 found = cursor.next()) {
+                checksum += cursor.value() & 1;
+                taken++;
+            }
+            times[1] += System.nanoTime() - startTime;
+        }
+        times[0] /= queries;
+        times[1] /= queries;
+
+        long startTime = System.nanoTime();
+        checksum += index.stream(0, keyCount).mapToLong(Integer::longValue).sum();
+        times[2] = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        checksum += index.stream(0, keyCount).parallel().mapToLong(Integer::longValue).sum();
+        times[3] = System.nanoTime() - startTime;
+
+        if (checksum < 0) {
+            System.out.println(checksum);
+        }
+        return times;
+    }
+
+
+    /**
+     * 堆内 BTreeIndex<Long, Long> 与 OffHeapBTreeIndex 各自乱序写入 keyCount 个键后的内存与 GC 开销。
+     * 返回两行 {索引存活时的堆占用字节, 堆外字节, 构建期间 GC 次数, 构建期间 GC 毫秒, 索引存活时一次 System.gc() 的毫秒}
+     */
+    public static long[][] testOffHeapFootprint(int keyCount) {
+        int[] keys = shuffledKeys(keyCount, 42);
+        long[][] results = new long[2][];
+
+        long baseline = usedHeapAfterGc();
+        long[] gcBefore = gcTotals();
+        BTreeIndex<Long, Long> heapIndex = new BTreeIndex<>();
+        for (int key : keys) {
+            heapIndex.put((long) key, (long) key * 10);
+        }
+        long[] gcAfter = gcTotals();
+        long startTime = System.nanoTime();
+        long heapUsed = usedHeapAfterGc() - baseline;
+        long fullGcMillis = (System.nanoTime() - startTime) / 1_000_000;
+        if (heapIndex.get(keyCount / 2L) == null) {
+            System.out.println("堆内索引缺少键");
+        }
+        results[0] = new long[]{heapUsed, 0, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1], fullGcMillis};
+        heapIndex = null;
+
+        baseline = usedHeapAfterGc();
+        gcBefore = gcTotals();
+        try (OffHeapBTreeIndex offHeapIndex = new OffHeapBTreeIndex()) {
+            for (int key : keys) {
+                offHeapIndex.put(key, (long) key * 10);
+            }
+            gcAfter = gcTotals();
+            startTime = System.nanoTime();
+            heapUsed = usedHeapAfterGc() - baseline;
+            fullGcMillis = (System.nanoTime() - startTime) / 1_000_000;
+            if (offHeapIndex.get(keyCount / 2L, -1) < 0) {
+                System.out.println("堆外索引缺少键");
+            }
+            results[1] = new long[]{heapUsed, offHeapIndex.offHeapBytes(), gcAfter[0] - gcBefore[0],
+                    gcAfter[1] - gcBefore[1], fullGcMillis};
+        }
+        return results;
+    }
+
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    /**
+     * 所有收集器累计的 {GC 次数, GC 毫秒}
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+
+    static long perSecond(long operations, long nanos) {
+        return nanos == 0 ? 0 : operations * 1_000_000_000L / nanos;
+    }
+
+
+    static OrderedIndex<Integer, Integer> build(Supplier<OrderedIndex<Integer, Integer>> factory, int[] keys) {
+        OrderedIndex<Integer, Integer> index = factory.get();
+        for (int key : keys) {
+            index.put(key, key);
+        }
+        return index;
+    }
+
+
+    static long timeRangeQueries(OrderedIndex<Integer, Integer> index, int keyCount, int queries, int width) {
+        Random random = new Random(7);
+        long checksum = 0;
+        // 预热
+        for (int i = 0; i < Math.min(queries, 200); i++) {
+            int from = random.nextInt(Math.max(1, keyCount - width));
+            checksum += index.rangeQuery(from, from + width - 1).size();
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            int from = random.nextInt(Math.max(1, keyCount - width));
+            checksum += index.rangeQuery(from, from + width - 1).size();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        if (checksum < 0) {
+            System.out.println(checksum);
+        }
+        return elapsed / queries;
+    }
+
+
+    /**
+     * 0..count-1 的一个固定随机排列
+     */
+    static int[] shuffledKeys(int count, long seed) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+}
@@ -1,37 +1,46 @@
 package main.task4;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-
-
-public class BTreeIndex<K extends Comparable<K>, V> {
-    private static final int DEFAULT_ORDER = 3; // BTree 的阶数（每个节点最多有 order-1 个键）
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * 经典 B 树（值也存放在内部节点），允许重复键。
+ * 节点的键、值、子节点存放在定长数组中，节点内用二分查找；默认阶数较大，树高很低，
+ * 一个节点的键连续存放，查找时访问的缓存行更少。
+ */
+public class BTreeIndex<K extends Comparable<K>, V> implements OrderedIndex<K, V> {
+    private static final int DEFAULT_ORDER = 128; // BTree 的阶数（每个节点最多有 order-1 个键），建议 64~512
+    private static final int MAX_ORDER = 512; // 再大的节点二分查找和分裂搬移的开销抵消了树高降低的收益
+    private static final double DEFAULT_FILL_FACTOR = 0.9; // 批量构建时节点的装填比例，留出少量空位给后续插入
 
     private Node root;
-    private int order;
+    private final int order;
     private int size;
 
 
-    private class Node {
-        List<Entry> entries; // 键值对列表
-        List<Node> children; // 子节点列表
-        boolean isLeaf;
+    private static final class Node {
+        final Object[] keys;
+        final Object[] values;
+        final Node[] children; // 叶子节点为 null
+        int count;             // 键的个数
 
-        Node(boolean isLeaf) {
-            this.isLeaf = isLeaf;
-            this.entries = new ArrayList<>();
-            this.children = new ArrayList<>();
+        Node(int order, boolean isLeaf) {
+            this.keys = new Object[order - 1];
+            this.values = new Object[order - 1];
+            this.children = isLeaf ? null : new Node[order];
         }
-    }
-
-
-    private class Entry {
-        K key;
-        V value;
 
-        Entry(K key, V value) {
-            this.key = key;
-            this.value = value;
+        boolean isLeaf() {
+            return children == null;
         }
     }
 
@@ -42,8 +51,15 @@ public class BTreeIndex<K extends Comparable<K>, V> {
 
 
     public BTreeIndex(int order) {
+        // 自顶向下预分裂时 order = 3 的满节点只有 2 个键，分裂会留下空节点
+        if (order < 4) {
+            throw new IllegalArgumentException("阶数不能小于 4");
+        }
+        if (order > MAX_ORDER) {
+            throw new IllegalArgumentException("阶数不能大于 " + MAX_ORDER);
+        }
         this.order = order;
-        this.root = new Node(true);
+        this.root = new Node(order, true);
         this.size = 0;
     }
 
@@ -54,9 +70,9 @@ public class BTreeIndex<K extends Comparable<K>, V> {
         }
 
         // 如果根节点已满，需要分裂
-        if (root.entries.size() == order - 1) {
-            Node newRoot = new Node(false);
-            newRoot.children.add(root);
+        if (root.count == order - 1) {
+            Node newRoot = new Node(order, false);
+            newRoot.children[0] = root;
             splitChild(newRoot, 0);
             root = newRoot;
         }
@@ -67,85 +83,188 @@ public class BTreeIndex<K extends Comparable<K>, V> {
 
 
     private void insertNonFull(Node node, K key, V value) {
-        int i = node.entries.size() - 1;
-
-        if (node.isLeaf) {
-            // 叶子节点：找到插入位置并插入
-            while (i >= 0 && key.compareTo(node.entries.get(i).key) < 0) {
-                i--;
+        while (true) {
+            // 重复键插在已有相同键之后
+            int i = upperBound(node, key);
+
+            if (node.isLeaf()) {
+                System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+                System.arraycopy(node.values, i, node.values, i + 1, node.count - i);
+                node.keys[i] = key;
+                node.values[i] = value;
+                node.count++;
+                return;
             }
-            node.entries.add(i + 1, new Entry(key, value));
-        } else {
-            // 内部节点：找到合适的子节点
-            while (i >= 0 && key.compareTo(node.entries.get(i).key) < 0) {
-                i--;
-            }
-            i++;
 
             // 如果子节点已满，先分裂
-            if (node.children.get(i).entries.size() == order - 1) {
+            if (node.children[i].count == order - 1) {
                 splitChild(node, i);
-                if (key.compareTo(node.entries.get(i).key) > 0) {
+                if (compare(key, node.keys[i]) >= 0) {
                     i++;
                 }
             }
-
-            insertNonFull(node.children.get(i), key, value);
+            node = node.children[i];
         }
     }
 
+
     private void splitChild(Node parent, int index) {
-        Node child = parent.children.get(index);
-        Node newChild = new Node(child.isLeaf);
+        Node child = parent.children[index];
+        Node newChild = new Node(order, child.isLeaf());
 
         // 将子节点的后半部分移到新节点
         int mid = (order - 1) / 2;
-        for (int i = mid + 1; i < child.entries.size(); i++) {
-            newChild.entries.add(child.entries.get(i));
+        newChild.count = child.count - mid - 1;
+        System.arraycopy(child.keys, mid + 1, newChild.keys, 0, newChild.count);
+        System.arraycopy(child.values, mid + 1, newChild.values, 0, newChild.count);
+        if (!child.isLeaf()) {
+            System.arraycopy(child.children, mid + 1, newChild.children, 0, newChild.count + 1);
         }
-        child.entries.subList(mid + 1, child.entries.size()).clear();
 
-        // 如果不是叶子节点，也要移动子节点
-        if (!child.isLeaf) {
-            for (int i = mid + 1; i < child.children.size(); i++) {
-                newChild.children.add(child.children.get(i));
+        // 将中间键提升到父节点
+        System.arraycopy(parent.keys, index, parent.keys, index + 1, parent.count - index);
+        System.arraycopy(parent.values, index, parent.values, index + 1, parent.count - index);
+        System.arraycopy(parent.children, index + 1, parent.children, index + 2, parent.count - index);
+        parent.keys[index] = child.keys[mid];
+        parent.values[index] = child.values[mid];
+        parent.children[index + 1] = newChild;
+        parent.count++;
+
+        // 清掉移走的引用，避免残留对象无法回收
+        for (int i = mid; i < child.count; i++) {
+            child.keys[i] = null;
+            child.values[i] = null;
+            if (!child.isLeaf()) {
+                child.children[i + 1] = null;
             }
-            child.children.subList(mid + 1, child.children.size()).clear();
         }
+        child.count = mid;
+    }
 
-        // 将中间键提升到父节点。
-        Entry midEntry = child.entries.get(mid);
-        child.entries.remove(mid);
-        parent.entries.add(index, midEntry);
-        parent.children.add(index + 1, newChild);
+
+    public void bulkLoad(Iterator<? extends Map.Entry<K, V>> entries) {
+        bulkLoad(entries, DEFAULT_FILL_FACTOR);
     }
 
-    public V get(K key) {
-        if (key == null) {
-            return null;
+
+    /**
+     * 用条目自底向上重建整棵树，原有内容被替换：先按 fillFactor 装填叶子，再逐层构建内部节点，O(n)。
+     * 输入应按键升序；检测到乱序时先并行排序再构建（排序稳定，相同键保持输入顺序）。
+     */
+    public void bulkLoad(Iterator<? extends Map.Entry<K, V>> entries, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("装填因子必须在 (0, 1] 内");
         }
 
-        Entry entry = search(root, key);
-        return entry != null ? entry.value : null;
-    }
+        List<Map.Entry<K, V>> buffer = new ArrayList<>();
+        boolean sorted = true;
+        K previous = null;
+        while (entries.hasNext()) {
+            Map.Entry<K, V> entry = entries.next();
+            K key = entry.getKey();
+            if (key == null) {
+                throw new IllegalArgumentException("键不能为 null");
+            }
+            if (previous != null && key.compareTo(previous) < 0) {
+                sorted = false;
+            }
+            previous = key;
+            buffer.add(entry);
+        }
 
-    private Entry search(Node node, K key) {
-        int i = 0;
-        while (i < node.entries.size() && key.compareTo(node.entries.get(i).key) > 0) {
-            i++;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map.Entry<K, V>[] sortedEntries = buffer.toArray(new Map.Entry[0]);
+        buffer = null;
+        if (!sorted) {
+            Arrays.parallelSort(sortedEntries, Map.Entry.comparingByKey());
+        }
+
+        clear();
+        int n = sortedEntries.length;
+        if (n == 0) {
+            return;
+        }
+
+        // 叶子层：m 个叶子之间夹着 m - 1 个上移到父层的分隔条目；叶子数不超过 (n + 1) / 2，保证每个叶子至少一个键
+        int leafCapacity = Math.max(1, (int) ((order - 1) * fillFactor));
+        int leafCount = Math.max(1, Math.min((n + leafCapacity + 1) / (leafCapacity + 1), (n + 1) / 2));
+        Node[] nodes = new Node[leafCount];
+        Object[] separatorKeys = new Object[leafCount - 1];
+        Object[] separatorValues = new Object[leafCount - 1];
+        int keysInLeaves = n - (leafCount - 1);
+        int pos = 0;
+        for (int i = 0; i < leafCount; i++) {
+            Node leaf = new Node(order, true);
+            leaf.count = keysInLeaves / leafCount + (i < keysInLeaves % leafCount ? 1 : 0);
+            for (int j = 0; j < leaf.count; j++, pos++) {
+                leaf.keys[j] = sortedEntries[pos].getKey();
+                leaf.values[j] = sortedEntries[pos].getValue();
+            }
+            nodes[i] = leaf;
+            if (i < leafCount - 1) {
+                separatorKeys[i] = sortedEntries[pos].getKey();
+                separatorValues[i] = sortedEntries[pos].getValue();
+                pos++;
+            }
         }
 
-        if (i < node.entries.size() && key.equals(node.entries.get(i).key)) {
-            return node.entries.get(i);
+        // 内部层：每个父节点收下若干个子节点和它们之间的分隔条目，父节点之间的分隔条目继续上移
+        int fanout = Math.max(2, (int) (order * fillFactor));
+        while (nodes.length > 1) {
+            int childCount = nodes.length;
+            int parentCount = Math.max(1, Math.min((childCount + fanout - 1) / fanout, childCount / 2));
+            Node[] parents = new Node[parentCount];
+            Object[] parentSeparatorKeys = new Object[parentCount - 1];
+            Object[] parentSeparatorValues = new Object[parentCount - 1];
+            int child = 0;
+            for (int p = 0; p < parentCount; p++) {
+                Node parent = new Node(order, false);
+                int children = childCount / parentCount + (p < childCount % parentCount ? 1 : 0);
+                for (int j = 0; j < children; j++, child++) {
+                    parent.children[j] = nodes[child];
+                    if (j < children - 1) {
+                        parent.keys[j] = separatorKeys[child];
+                        parent.values[j] = separatorValues[child];
+                    }
+                }
+                parent.count = children - 1;
+                parents[p] = parent;
+                if (p < parentCount - 1) {
+                    parentSeparatorKeys[p] = separatorKeys[child - 1];
+                    parentSeparatorValues[p] = separatorValues[child - 1];
+                }
+            }
+            nodes = parents;
+            separatorKeys = parentSeparatorKeys;
+            separatorValues = parentSeparatorValues;
         }
 
-        if (node.isLeaf) {
+        root = nodes[0];
+        size = n;
+    }
+
+
+    public V get(K key) {
+        if (key == null) {
             return null;
         }
 
-        return search(node.children.get(i), key);
+        Node node = root;
+        while (true) {
+            int i = lowerBound(node, key);
+            if (i < node.count && compare(key, node.keys[i]) == 0) {
+                @SuppressWarnings("unchecked")
+                V value = (V) node.values[i];
+                return value;
+            }
+            if (node.isLeaf()) {
+                return null;
+            }
+            node = node.children[i];
+        }
     }
 
+
     public List<V> rangeQuery(K minKey, K maxKey) {
         List<V> results = new ArrayList<>();
         if (minKey == null || maxKey == null || minKey.compareTo(maxKey) > 0) {
@@ -156,32 +275,52 @@ public class BTreeIndex<K extends Comparable<K>, V> {
         return results;
     }
 
+
+    /**
+     * minKey 为 null 表示该子树的键都不小于下界，只需检查上界
+     */
     private void rangeQuery(Node node, K minKey, K maxKey, List<V> results) {
-        int i = 0;
+        // 第一个不小于下界的键
+        int i = minKey == null ? 0 : lowerBound(node, minKey);
 
-        // 找到第一个可能包含范围的子节点
-        while (i < node.entries.size() && minKey.compareTo(node.entries.get(i).key) > 0) {
-            i++;
+        if (!node.isLeaf()) {
+            rangeQuery(node.children[i], minKey, maxKey, results);
         }
 
-        if (!node.isLeaf) {
-            // 递归搜索子节点
-            rangeQuery(node.children.get(i), minKey, maxKey, results);
-        }
+        while (i < node.count && compare(maxKey, node.keys[i]) >= 0) {
+            @SuppressWarnings("unchecked")
+            V value = (V) node.values[i];
+            results.add(value);
 
-        // 检查当前节点的条目
-        while (i < node.entries.size() && node.entries.get(i).key.compareTo(maxKey) <= 0) {
-            Entry entry = node.entries.get(i);
-            if (entry.key.compareTo(minKey) >= 0 && entry.key.compareTo(maxKey) <= 0) {
-                results.add(entry.value);
+            if (!node.isLeaf()) {
+                rangeQuery(node.children[i + 1], null, maxKey, results);
             }
+            i++;
+        }
+    }
 
-            if (!node.isLeaf && i < node.children.size() - 1) {
-                rangeQuery(node.children.get(i + 1), minKey, maxKey, results);
-            }
 
-            i++;
+    /**
+     * 新游标，先 seek 再遍历。游标只保存从根到当前节点的路径（长度为树高），与遍历的条目数无关。
+     */
+    public Cursor<K, V> cursor() {
+        return new TreeCursor();
+    }
+
+
+    /**
+     * [minKey, maxKey] 内的值，按需逐个产生；trySplit 在树中找一个位于范围中部的键把范围一分为二，可用于并行流
+     */
+    public Spliterator<V> spliterator(K minKey, K maxKey) {
+        if (minKey == null || maxKey == null || minKey.compareTo(maxKey) > 0) {
+            return Spliterators.emptySpliterator();
         }
+        return new RangeSpliterator(minKey, maxKey, true, size);
+    }
+
+
+    public Stream<V> stream(K minKey, K maxKey) {
+        return StreamSupport.stream(spliterator(minKey, maxKey), false);
     }
 
 
@@ -196,7 +335,320 @@ public class BTreeIndex<K extends Comparable<K>, V> {
 
 
     public void clear() {
-        root = new Node(true);
+        root = new Node(order, true);
         size = 0;
     }
-}
\ No newline at end of file
+
+
+    public int getOrder() {
+        return order;
+    }
+
+
+    /**
+     * 树高（只有根节点时为 1）
+     */
+    public int height() {
+        int height = 1;
+        for (Node node = root; !node.isLeaf(); node = node.children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+
+    /**
+     * 第一个 >= key 的位置
+     */
+    private int lowerBound(Node node, K key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, node.keys[mid]) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 第一个 > key 的位置
+     */
+    private int upperBound(Node node, K key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, node.keys[mid]) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private int compare(K key, Object other) {
+        return key.compareTo((K) other);
+    }
+
+
+    /**
+     * path[0..depth] 是从根到当前节点的路径。对路径上的内部节点，index 为 i 表示当前在 children[i] 中；
+     * 对最后一个节点，index 为 i 表示当前条目就是它的 keys[i]。depth 为 -1 表示没有定位。
+     */
+    private final class TreeCursor implements Cursor<K, V> {
+        private Node[] path = new Node[0];
+        private int[] index = new int[0];
+        private int depth = -1;
+
+        public boolean seek(K key) {
+            descend(key, false);
+            // 停在叶子中第一个 >= key 的位置之前，再前进一步；该叶子里没有时 next 会回到祖先节点
+            index[depth]--;
+            return next();
+        }
+
+        public boolean seekFloor(K key) {
+            descend(key, true);
+            // 停在叶子中第一个 > key 的位置，再后退一步
+            return previous();
+        }
+
+        public boolean seekFirst() {
+            reset();
+            Node node = root;
+            while (!node.isLeaf()) {
+                push(node, 0);
+                node = node.children[0];
+            }
+            push(node, -1);
+            return next();
+        }
+
+        public boolean seekLast() {
+            reset();
+            Node node = root;
+            while (!node.isLeaf()) {
+                push(node, node.count);
+                node = node.children[node.count];
+            }
+            push(node, node.count);
+            return previous();
+        }
+
+        public boolean next() {
+            if (depth < 0) {
+                return false;
+            }
+            Node node = path[depth];
+            if (!node.isLeaf()) {
+                // 当前是内部节点的 keys[i]，后继是 children[i + 1] 中最左的条目
+                index[depth]++;
+                node = node.children[index[depth]];
+                while (!node.isLeaf()) {
+                    push(node, 0);
+                    node = node.children[0];
+                }
+                push(node, 0);
+                return true;
+            }
+
+            if (++index[depth] < node.count) {
+                return true;
+            }
+            // 叶子走完，回到第一个还有后续键的祖先
+            while (depth > 0) {
+                depth--;
+                if (index[depth] < path[depth].count) {
+                    return true;
+                }
+            }
+            depth = -1;
+            return false;
+        }
+
+        public boolean previous() {
+            if (depth < 0) {
+                return false;
+            }
+            Node node = path[depth];
+            if (!node.isLeaf()) {
+                // 当前是内部节点的 keys[i]，前驱是 children[i] 中最右的条目
+                node = node.children[index[depth]];
+                while (!node.isLeaf()) {
+                    push(node, node.count);
+                    node = node.children[node.count];
+                }
+                push(node, node.count - 1);
+                return true;
+            }
+
+            if (--index[depth] >= 0) {
+                return true;
+            }
+            while (depth > 0) {
+                depth--;
+                if (index[depth] > 0) {
+                    index[depth]--;
+                    return true;
+                }
+            }
+            depth = -1;
+            return false;
+        }
+
+        public boolean isValid() {
+            return depth >= 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K key() {
+            checkValid();
+            return (K) path[depth].keys[index[depth]];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkValid();
+            return (V) path[depth].values[index[depth]];
+        }
+
+        /**
+         * 从根下降到叶子；upper 为 false 时每层停在第一个 >= key 的位置，为 true 时停在第一个 > key 的位置
+         */
+        private void descend(K key, boolean upper) {
+            reset();
+            Node node = root;
+            while (true) {
+                int i = upper ? upperBound(node, key) : lowerBound(node, key);
+                push(node, i);
+                if (node.isLeaf()) {
+                    return;
+                }
+                node = node.children[i];
+            }
+        }
+
+        private void reset() {
+            int height = height();
+            if (path.length < height) {
+                path = new Node[height];
+                index = new int[height];
+            }
+            depth = -1;
+        }
+
+        private void push(Node node, int i) {
+            depth++;
+            path[depth] = node;
+            index[depth] = i;
+        }
+
+        private void checkValid() {
+            if (depth < 0) {
+                throw new IllegalStateException("游标没有指向任何条目");
+            }
+        }
+    }
+
+
+    /**
+     * [lo, hi] 或 [lo, hi) 范围内的值，第一次 tryAdvance 时才 seek
+     */
+    private final class RangeSpliterator implements Spliterator<V> {
+        private K lo;
+        private final K hi;
+        private final boolean hiInclusive;
+        private long estimate;
+        private TreeCursor cursor;
+        private boolean finished;
+
+        RangeSpliterator(K lo, K hi, boolean hiInclusive, long estimate) {
+            this.lo = lo;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (finished) {
+                return false;
+            }
+            boolean positioned;
+            if (cursor == null) {
+                cursor = new TreeCursor();
+                positioned = cursor.seek(lo);
+            } else {
+                positioned = cursor.next();
+            }
+            if (positioned) {
+                int cmp = compare(cursor.key(), hi);
+                positioned = cmp < 0 || (cmp == 0 && hiInclusive);
+            }
+            if (!positioned) {
+                finished = true;
+                return false;
+            }
+            action.accept(cursor.value());
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (cursor != null || finished) {
+                return null;
+            }
+            K mid = splitKey();
+            if (mid == null) {
+                return null;
+            }
+            RangeSpliterator prefix = new RangeSpliterator(lo, mid, false, estimate / 2);
+            lo = mid;
+            estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        /**
+         * 从根向下找第一个落在范围内的分隔键，取该节点范围内键的中间一个；越靠近根，两半越均衡
+         */
+        @SuppressWarnings("unchecked")
+        private K splitKey() {
+            Node node = root;
+            while (true) {
+                int i = lowerBound(node, lo);
+                int j = (hiInclusive ? upperBound(node, hi) : lowerBound(node, hi)) - 1;
+                if (i <= j) {
+                    // 分隔键必须大于 lo，否则前一半为空，重复键都等于 lo 时会无限分裂
+                    if (compare(lo, node.keys[(i + j + 1) >>> 1]) < 0) {
+                        return (K) node.keys[(i + j + 1) >>> 1];
+                    }
+                    if (compare(lo, node.keys[j]) < 0) {
+                        return (K) node.keys[j];
+                    }
+                }
+                if (node.isLeaf()) {
+                    return null;
+                }
+                node = node.children[i <= j ? j + 1 : i];
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED;
+        }
+    }
+}
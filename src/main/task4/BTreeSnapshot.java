@@ -0,0 +1,238 @@
+package main.task4;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * BTreeIndex 内容的二进制快照，启动时直接加载，不必重新解析 CSV 再逐条插入。
+ * 文件格式（大端）：魔数 "BTSN"、版本、条目数，之后按键升序依次是各条目的键和值（由 Codec 编码），
+ * 最后 8 字节是之前所有字节的 CRC32。
+ * 保存时按游标顺序写出并先写临时文件再改名；加载时内存映射整个文件、校验后直接用 bulkLoad 自底向上构建。
+ * 单个快照文件不能超过 2GB（一次映射的上限）。
+ */
+public final class BTreeSnapshot {
+    private static final int MAGIC = 0x4254534E; // "BTSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 8;
+
+
+    /**
+     * 键或值的编码方式：write 写入流，read 从当前位置读出并前移
+     */
+    public interface Codec<T> {
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(ByteBuffer in);
+    }
+
+
+    public static final Codec<Integer> INT = new Codec<Integer>() {
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        public Integer read(ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        public Long read(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+
+    public static final Codec<String> STRING = new Codec<String>() {
+        public void write(String value, DataOutput out) throws IOException {
+            writeString(value, out);
+        }
+
+        public String read(ByteBuffer in) {
+            return readString(in);
+        }
+    };
+
+
+    private BTreeSnapshot() {
+    }
+
+
+    /**
+     * 保存快照，返回文件字节数
+     */
+    public static <K extends Comparable<K>, V> long save(BTreeIndex<K, V> index, Path file,
+                                                        Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+        try {
+            CRC32 crc = new CRC32();
+            long entries = 0;
+            try (OutputStream fileOut = Files.newOutputStream(temp);
+                 CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, 1 << 20), crc)) {
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(index.size());
+
+                OrderedIndex.Cursor<K, V> cursor = index.cursor();
+                for (boolean found = cursor.seekFirst(); found; found = cursor.next()) {
+                    keyCodec.write(cursor.key(), out);
+                    valueCodec.write(cursor.value(), out);
+                    entries++;
+                }
+                out.flush();
+                if (entries != index.size()) {
+                    throw new IOException("保存期间索引被修改: 条目数 " + index.size() + "，实际写出 " + entries);
+                }
+
+                // CRC 本身不参与校验，直接写到底层流
+                DataOutputStream trailer = new DataOutputStream(fileOut);
+                trailer.writeLong(crc.getValue());
+                trailer.flush();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return Files.size(file);
+    }
+
+
+    public static <K extends Comparable<K>, V> BTreeIndex<K, V> load(Path file, Codec<K> keyCodec,
+                                                                    Codec<V> valueCodec) throws IOException {
+        BTreeIndex<K, V> index = new BTreeIndex<>();
+        load(file, index, keyCodec, valueCodec);
+        return index;
+    }
+
+
+    /**
+     * 加载快照，替换 index 中原有的内容
+     */
+    public static <K extends Comparable<K>, V> void load(Path file, BTreeIndex<K, V> index,
+                                                        Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("快照文件不完整: " + file);
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("快照文件超过 2GB: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("不是索引快照文件: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("不支持的快照版本 " + buffer.getInt(4) + ": " + file);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.limit((int) fileSize - TRAILER_SIZE);
+            crc.update(body);
+            if (crc.getValue() != buffer.getLong((int) fileSize - TRAILER_SIZE)) {
+                throw new IOException("快照校验和不一致，文件可能已损坏: " + file);
+            }
+
+            long count = buffer.getLong(8);
+            ByteBuffer entries = buffer.duplicate();
+            entries.position(HEADER_SIZE);
+            entries.limit((int) fileSize - TRAILER_SIZE);
+            try {
+                index.bulkLoad(new EntryIterator<>(entries, count, keyCodec, valueCodec));
+            } catch (RuntimeException e) {
+                // 校验和正确但解码失败，说明编码方式与保存时不一致
+                throw new IOException("快照内容无法按给定的编码方式解析: " + file, e);
+            }
+            if (entries.hasRemaining()) {
+                throw new IOException("快照条目数与内容长度不一致: " + file);
+            }
+        }
+    }
+
+
+    /**
+     * 字符串编码：4 字节 UTF-8 字节数（null 为 -1）加字节
+     */
+    public static void writeString(String value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    public static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * 从映射的缓冲区中按需解码条目
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final ByteBuffer buffer;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private long remaining;
+
+        EntryIterator(ByteBuffer buffer, long count, Codec<K> keyCodec, Codec<V> valueCodec) {
+            this.buffer = buffer;
+            this.remaining = count;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            K key = keyCodec.read(buffer);
+            V value = valueCodec.read(buffer);
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+    }
+}
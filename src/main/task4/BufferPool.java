@@ -0,0 +1,211 @@
+package main.task4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 定长页面文件的缓冲池：固定数量的页框，按 Clock 算法淘汰。
+ * - pin 返回的页面在 unpin 之前不会被淘汰；pin 计数为 0 的页才可能被换出
+ * - 被修改过的页在换出或 flush 时写回文件
+ * - 页号从 0 开始，页 p 位于文件偏移 p * pageSize
+ * 非线程安全。
+ */
+public class BufferPool {
+    private final FileChannel channel;
+    private final int pageSize;
+    private final Page[] frames;
+    private final Map<Long, Integer> pageTable = new HashMap<>();
+    private int clockHand;
+    private long pageCount;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writes;
+
+
+    public static final class Page {
+        private long pageId = -1;
+        private final ByteBuffer data;
+        private int pinCount;
+        private boolean dirty;
+        private boolean referenced;
+
+        Page(int pageSize) {
+            data = ByteBuffer.allocate(pageSize);
+        }
+
+        public long getPageId() {
+            return pageId;
+        }
+
+        /**
+         * 页面内容，按绝对位置读写（get/put(index, ...)），不要依赖 position
+         */
+        public ByteBuffer data() {
+            return data;
+        }
+    }
+
+
+    public BufferPool(FileChannel channel, int pageSize, int capacity) throws IOException {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("缓冲池至少需要 2 个页框");
+        }
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new Page[capacity];
+        this.pageCount = (channel.size() + pageSize - 1) / pageSize;
+    }
+
+
+    /**
+     * 固定已有页面（不在池中时从文件读入）
+     */
+    public Page pin(long pageId) throws IOException {
+        if (pageId < 0 || pageId >= pageCount) {
+            throw new IllegalArgumentException("页号越界: " + pageId);
+        }
+
+        Integer frame = pageTable.get(pageId);
+        if (frame != null) {
+            hits++;
+            Page page = frames[frame];
+            page.pinCount++;
+            page.referenced = true;
+            return page;
+        }
+
+        misses++;
+        Page page = claimFrame(pageId);
+        ByteBuffer buffer = page.data;
+        buffer.clear();
+        long position = pageId * pageSize;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        // 文件末尾不足一页的部分按 0 处理
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.clear();
+        return page;
+    }
+
+
+    /**
+     * 在文件末尾分配一个新页面并固定，内容全为 0，已标记为脏页
+     */
+    public Page allocate() throws IOException {
+        // 取页框可能失败（页框全被固定或脏页写回出错），成功后才占用页号，避免文件中留下未写入的空洞
+        long pageId = pageCount;
+        Page page = claimFrame(pageId);
+        pageCount++;
+        ByteBuffer buffer = page.data;
+        buffer.clear();
+        for (int i = 0; i < pageSize; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        page.dirty = true;
+        return page;
+    }
+
+
+    public void unpin(Page page, boolean dirty) {
+        if (page.pinCount <= 0) {
+            throw new IllegalStateException("页面未被固定: " + page.pageId);
+        }
+        page.pinCount--;
+        page.dirty |= dirty;
+    }
+
+
+    /**
+     * 写回所有脏页并刷到磁盘
+     */
+    public void flush() throws IOException {
+        for (Page page : frames) {
+            if (page != null && page.dirty) {
+                writeBack(page);
+            }
+        }
+        channel.force(false);
+    }
+
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+
+    /**
+     * {命中次数, 未命中次数, 淘汰次数, 写回次数}
+     */
+    public long[] getStats() {
+        return new long[]{hits, misses, evictions, writes};
+    }
+
+
+    /**
+     * 取一个页框给 pageId 使用：优先用空页框，否则按 Clock 淘汰一个未被固定的页（脏页先写回）
+     */
+    private Page claimFrame(long pageId) throws IOException {
+        int frame = -1;
+        for (int scanned = 0; scanned < frames.length * 2 && frame < 0; scanned++) {
+            int candidate = clockHand;
+            clockHand = (clockHand + 1) % frames.length;
+            Page page = frames[candidate];
+            if (page == null) {
+                frames[candidate] = new Page(pageSize);
+                frame = candidate;
+            } else if (page.pinCount == 0) {
+                if (page.referenced) {
+                    page.referenced = false;
+                } else {
+                    frame = candidate;
+                }
+            }
+        }
+        if (frame < 0) {
+            throw new IllegalStateException("缓冲池的页框全部被固定，无法换入页面 " + pageId);
+        }
+
+        Page page = frames[frame];
+        if (page.pageId >= 0) {
+            if (page.dirty) {
+                writeBack(page);
+            }
+            pageTable.remove(page.pageId);
+            evictions++;
+        }
+        page.pageId = pageId;
+        page.pinCount = 1;
+        page.dirty = false;
+        page.referenced = true;
+        pageTable.put(pageId, frame);
+        return page;
+    }
+
+
+    private void writeBack(Page page) throws IOException {
+        ByteBuffer buffer = page.data.duplicate();
+        buffer.clear();
+        long position = page.pageId * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        page.dirty = false;
+        writes++;
+    }
+}
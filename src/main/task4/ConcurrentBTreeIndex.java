@@ -0,0 +1,437 @@
+package main.task4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 线程安全的 B+ 树索引，采用乐观锁耦合（optimistic lock coupling）：
+ * - 每个节点带一个 StampedLock 作为版本号。读操作不加锁，只记录版本，读完节点内容后校验版本，
+ *   下降到子节点时先取子节点版本再校验父节点；校验失败说明期间有写入，从根重新开始
+ * - 写操作同样乐观地下降，只在最后把需要修改的节点（叶子，分裂时再加父节点）的版本原子地升级为写锁；
+ *   下降途中遇到已满的节点先分裂再重试，因此父节点总有空间接收分隔键
+ * put 已存在的键会替换原值。rangeQuery 是弱一致的：逐个叶子校验，叶子被并发修改时从最后读到的键继续。
+ * clear 不能与其他操作并发执行。
+ */
+public class ConcurrentBTreeIndex<K extends Comparable<K>, V> implements OrderedIndex<K, V> {
+    private static final int DEFAULT_ORDER = 64; // 叶子最多 order 个键，内部节点最多 order 个子节点
+    private static final Object RESTART = new Object();
+
+    private final int order;
+    private volatile Node root;
+    private final LongAdder size = new LongAdder();
+
+
+    private abstract static class Node {
+        final StampedLock lock = new StampedLock();
+        final Object[] keys;
+        int count;
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+    }
+
+
+    private static final class Leaf extends Node {
+        final Object[] values;
+        Leaf next;
+
+        Leaf(int order) {
+            super(order);
+            values = new Object[order];
+        }
+    }
+
+
+    private static final class Internal extends Node {
+        final Node[] children;   // children[i] 中的键 < keys[i] <= children[i + 1] 中的键
+
+        Internal(int order) {
+            super(order - 1);
+            children = new Node[order];
+        }
+    }
+
+
+    public ConcurrentBTreeIndex() {
+        this(DEFAULT_ORDER);
+    }
+
+
+    public ConcurrentBTreeIndex(int order) {
+        if (order < 4) {
+            throw new IllegalArgumentException("阶数不能小于 4");
+        }
+        this.order = order;
+        this.root = new Leaf(order);
+    }
+
+
+    public void put(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        while (!tryPut(key, value)) {
+            Thread.onSpinWait();
+        }
+    }
+
+
+    /**
+     * 一次乐观的插入尝试，需要重试时返回 false
+     */
+    private boolean tryPut(K key, V value) {
+        Node node = root;
+        long stamp = node.lock.tryOptimisticRead();
+        if (stamp == 0 || node != root) {
+            return false;
+        }
+        Internal parent = null;
+        long parentStamp = 0;
+
+        while (node instanceof Internal) {
+            Internal internal = (Internal) node;
+            if (internal.count == order - 1) {
+                splitNode(parent, parentStamp, internal, stamp);
+                return false;
+            }
+            Node child;
+            try {
+                child = internal.children[childIndex(internal, key)];
+            } catch (RuntimeException e) {
+                if (!internal.lock.validate(stamp)) {
+                    return false;
+                }
+                throw e;
+            }
+            if (!internal.lock.validate(stamp)) {
+                return false;
+            }
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0 || !internal.lock.validate(stamp)) {
+                return false;
+            }
+            parent = internal;
+            parentStamp = stamp;
+            node = child;
+            stamp = childStamp;
+        }
+
+        Leaf leaf = (Leaf) node;
+        if (leaf.count == order) {
+            splitNode(parent, parentStamp, leaf, stamp);
+            return false;
+        }
+
+        // 叶子自读取版本以来没有被修改过才能升级成功，此时它仍然是 key 所属的叶子
+        long writeStamp = leaf.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            return false;
+        }
+        try {
+            int pos = search(leaf, key);
+            if (pos >= 0) {
+                leaf.values[pos] = value;
+            } else {
+                pos = -pos - 1;
+                System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.count - pos);
+                System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.count - pos);
+                leaf.keys[pos] = key;
+                leaf.values[pos] = value;
+                leaf.count++;
+                size.increment();
+            }
+        } finally {
+            leaf.lock.unlockWrite(writeStamp);
+        }
+        return true;
+    }
+
+
+    /**
+     * 锁住父节点和已满的节点后将其分裂；任一版本已变化时放弃，由调用方重试
+     */
+    private void splitNode(Internal parent, long parentStamp, Node node, long stamp) {
+        long parentWriteStamp = 0;
+        if (parent != null) {
+            parentWriteStamp = parent.lock.tryConvertToWriteLock(parentStamp);
+            if (parentWriteStamp == 0) {
+                return;
+            }
+        }
+        long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            if (parent != null) {
+                parent.lock.unlockWrite(parentWriteStamp);
+            }
+            return;
+        }
+
+        try {
+            // 没有父节点时它应当是根；期间根已经分裂则放弃
+            if (parent == null && node != root) {
+                return;
+            }
+
+            Object separator;
+            Node right;
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                Leaf newLeaf = new Leaf(order);
+                int mid = leaf.count / 2;
+                newLeaf.count = leaf.count - mid;
+                System.arraycopy(leaf.keys, mid, newLeaf.keys, 0, newLeaf.count);
+                System.arraycopy(leaf.values, mid, newLeaf.values, 0, newLeaf.count);
+                newLeaf.next = leaf.next;
+                leaf.next = newLeaf;
+                leaf.count = mid;
+                for (int i = mid; i < leaf.keys.length; i++) {
+                    leaf.keys[i] = null;
+                    leaf.values[i] = null;
+                }
+                separator = newLeaf.keys[0];
+                right = newLeaf;
+            } else {
+                Internal internal = (Internal) node;
+                Internal newInternal = new Internal(order);
+                int mid = internal.count / 2;
+                newInternal.count = internal.count - mid - 1;
+                System.arraycopy(internal.keys, mid + 1, newInternal.keys, 0, newInternal.count);
+                System.arraycopy(internal.children, mid + 1, newInternal.children, 0, newInternal.count + 1);
+                separator = internal.keys[mid];
+                internal.count = mid;
+                for (int i = mid; i < internal.keys.length; i++) {
+                    internal.keys[i] = null;
+                    internal.children[i + 1] = null;
+                }
+                right = newInternal;
+            }
+
+            if (parent != null) {
+                int index = childIndex(parent, separator);
+                System.arraycopy(parent.keys, index, parent.keys, index + 1, parent.count - index);
+                System.arraycopy(parent.children, index + 1, parent.children, index + 2, parent.count - index);
+                parent.keys[index] = separator;
+                parent.children[index + 1] = right;
+                parent.count++;
+            } else {
+                Internal newRoot = new Internal(order);
+                newRoot.keys[0] = separator;
+                newRoot.children[0] = node;
+                newRoot.children[1] = right;
+                newRoot.count = 1;
+                root = newRoot;
+            }
+        } finally {
+            node.lock.unlockWrite(writeStamp);
+            if (parent != null) {
+                parent.lock.unlockWrite(parentWriteStamp);
+            }
+        }
+    }
+
+
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        while (true) {
+            Object result = tryGet(key);
+            if (result != RESTART) {
+                @SuppressWarnings("unchecked")
+                V value = (V) result;
+                return value;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+
+    private Object tryGet(K key) {
+        long[] stamp = new long[1];
+        Leaf leaf = findLeaf(key, stamp);
+        if (leaf == null) {
+            return RESTART;
+        }
+        Object value;
+        try {
+            int pos = search(leaf, key);
+            value = pos >= 0 ? leaf.values[pos] : null;
+        } catch (RuntimeException e) {
+            if (!leaf.lock.validate(stamp[0])) {
+                return RESTART;
+            }
+            throw e;
+        }
+        return leaf.lock.validate(stamp[0]) ? value : RESTART;
+    }
+
+
+    public List<V> rangeQuery(K minKey, K maxKey) {
+        List<V> results = new ArrayList<>();
+        if (minKey == null || maxKey == null || minKey.compareTo(maxKey) > 0) {
+            return results;
+        }
+
+        List<V> buffer = new ArrayList<>();
+        K from = minKey;
+        boolean inclusive = true;
+        long[] stamp = new long[1];
+        restart:
+        while (true) {
+            Leaf leaf = findLeaf(from, stamp);
+            if (leaf == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            while (true) {
+                buffer.clear();
+                K lastKey = null;
+                boolean done = false;
+                Leaf next;
+                try {
+                    int pos = search(leaf, from);
+                    if (pos < 0) {
+                        pos = -pos - 1;
+                    } else if (!inclusive) {
+                        pos++;
+                    }
+                    for (; pos < leaf.count; pos++) {
+                        @SuppressWarnings("unchecked")
+                        K key = (K) leaf.keys[pos];
+                        if (key.compareTo(maxKey) > 0) {
+                            done = true;
+                            break;
+                        }
+                        @SuppressWarnings("unchecked")
+                        V value = (V) leaf.values[pos];
+                        buffer.add(value);
+                        lastKey = key;
+                    }
+                    next = leaf.next;
+                } catch (RuntimeException e) {
+                    if (!leaf.lock.validate(stamp[0])) {
+                        continue restart;
+                    }
+                    throw e;
+                }
+                if (!leaf.lock.validate(stamp[0])) {
+                    continue restart;
+                }
+
+                results.addAll(buffer);
+                if (lastKey != null) {
+                    from = lastKey;
+                    inclusive = false;
+                }
+                if (done || next == null) {
+                    return results;
+                }
+                // 右兄弟之后即使分裂，新节点也挂在它的 next 上，沿链表继续扫描不会漏掉条目
+                long nextStamp = next.lock.tryOptimisticRead();
+                if (nextStamp == 0 || !leaf.lock.validate(stamp[0])) {
+                    continue restart;
+                }
+                leaf = next;
+                stamp[0] = nextStamp;
+            }
+        }
+    }
+
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+
+    public int size() {
+        return (int) size.sum();
+    }
+
+
+    public void clear() {
+        root = new Leaf(order);
+        size.reset();
+    }
+
+
+    /**
+     * 乐观地下降到 key 所属的叶子，stamp[0] 返回叶子的版本；途中校验失败返回 null
+     */
+    private Leaf findLeaf(K key, long[] stamp) {
+        Node node = root;
+        long nodeStamp = node.lock.tryOptimisticRead();
+        if (nodeStamp == 0 || node != root) {
+            return null;
+        }
+
+        while (node instanceof Internal) {
+            Internal internal = (Internal) node;
+            Node child;
+            try {
+                child = internal.children[childIndex(internal, key)];
+            } catch (RuntimeException e) {
+                if (!internal.lock.validate(nodeStamp)) {
+                    return null;
+                }
+                throw e;
+            }
+            if (!internal.lock.validate(nodeStamp)) {
+                return null;
+            }
+            // 先取子节点版本再校验父节点：两者之间子节点若被分裂，父节点版本一定已变化
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0 || !internal.lock.validate(nodeStamp)) {
+                return null;
+            }
+            node = child;
+            nodeStamp = childStamp;
+        }
+        stamp[0] = nodeStamp;
+        return (Leaf) node;
+    }
+
+
+    /**
+     * 第一个大于 key 的分隔键的位置
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int childIndex(Internal node, Object key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((K) key).compareTo((K) node.keys[mid]) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 节点内二分查找，找到返回下标，否则返回 -(插入位置) - 1
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int search(Leaf leaf, K key) {
+        int lo = 0;
+        int hi = leaf.count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((K) leaf.keys[mid]).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
@@ -0,0 +1,565 @@
+package main.task4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 存放在单个文件中的 B+ 树索引，long 键、变长 byte[] 值，页面经 BufferPool 读写，进程重启后可直接打开继续使用。
+ * 页面布局：
+ * - 第 0 页为元数据：魔数、版本、页大小、根页号、条目数、树高
+ * - 叶子页：16 字节页头（类型、键数、下一个叶子页号、值区起点），其后是按键有序的槽位数组
+ *   （每个槽位 12 字节：键、值偏移、值长度），值从页尾向前存放，槽位和值区在页中间相遇
+ * - 内部页：16 字节页头，其后是 child0, key0, child1, key1, child2, ...（children[i] 中的键 < keys[i] <= children[i + 1] 中的键）
+ * 单个值最长约为页大小的四分之一，保证分裂后每页至少能放下几个条目。键唯一，put 已存在的键会替换原值。
+ * 非线程安全；修改在 flush/close 之前可能只在缓冲池中。
+ */
+public class DiskBTreeIndex implements Closeable {
+    private static final int DEFAULT_PAGE_SIZE = 8192;
+    private static final int MAGIC = 0x42545245; // "BTRE"
+    private static final int VERSION = 1;
+
+    private static final int META_PAGE = 0;
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+
+    private static final int TYPE_OFFSET = 0;
+    private static final int COUNT_OFFSET = 1;
+    private static final int NEXT_OFFSET = 3;
+    private static final int HEAP_START_OFFSET = 11;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 12;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final int pageSize;
+    private final int maxInternalKeys;
+    private final int maxValueLength;
+
+    private long rootPageId;
+    private long size;
+    private int height;
+
+
+    /**
+     * 范围扫描的回调，返回 false 时提前结束扫描
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        boolean visit(long key, byte[] value);
+    }
+
+
+    private static final class Split {
+        final long separator;
+        final long rightPageId;
+
+        Split(long separator, long rightPageId) {
+            this.separator = separator;
+            this.rightPageId = rightPageId;
+        }
+    }
+
+
+    public DiskBTreeIndex(Path file, int poolPages) throws IOException {
+        this(file, DEFAULT_PAGE_SIZE, poolPages);
+    }
+
+
+    /**
+     * 打开或创建索引文件。已有文件的页大小必须与 pageSize 一致。
+     */
+    public DiskBTreeIndex(Path file, int pageSize, int poolPages) throws IOException {
+        if (pageSize < 512 || pageSize > 32768) {
+            throw new IllegalArgumentException("页大小必须在 512 到 32768 之间");
+        }
+        this.pageSize = pageSize;
+        this.maxInternalKeys = (pageSize - HEADER_SIZE - 8) / 16;
+        this.maxValueLength = (pageSize - HEADER_SIZE) / 4 - SLOT_SIZE;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            this.pool = new BufferPool(channel, pageSize, poolPages);
+            if (pool.getPageCount() == 0) {
+                BufferPool.Page meta = pool.allocate();
+                BufferPool.Page root = pool.allocate();
+                initLeaf(root.data(), 0);
+                rootPageId = root.getPageId();
+                size = 0;
+                height = 1;
+                pool.unpin(root, true);
+                pool.unpin(meta, true);
+                writeMeta();
+            } else {
+                readMeta();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    public void put(long key, byte[] value) throws IOException {
+        if (value == null) {
+            throw new IllegalArgumentException("值不能为 null");
+        }
+        if (value.length > maxValueLength) {
+            throw new IllegalArgumentException("值过长: " + value.length + " 字节，最大 " + maxValueLength);
+        }
+
+        Split split = insert(rootPageId, key, value);
+        if (split != null) {
+            BufferPool.Page page = pool.allocate();
+            ByteBuffer buf = page.data();
+            buf.put(TYPE_OFFSET, INTERNAL);
+            setCount(buf, 1);
+            buf.putLong(HEADER_SIZE, rootPageId);
+            buf.putLong(HEADER_SIZE + 8, split.separator);
+            buf.putLong(HEADER_SIZE + 16, split.rightPageId);
+            rootPageId = page.getPageId();
+            height++;
+            pool.unpin(page, true);
+        }
+    }
+
+
+    private Split insert(long pageId, long key, byte[] value) throws IOException {
+        BufferPool.Page page = pool.pin(pageId);
+        ByteBuffer buf = page.data();
+        if (buf.get(TYPE_OFFSET) == LEAF) {
+            try {
+                return insertIntoLeaf(page, key, value);
+            } finally {
+                pool.unpin(page, true);
+            }
+        }
+
+        int childIndex = childIndex(buf, key);
+        long childPageId = child(buf, childIndex);
+        pool.unpin(page, false);
+
+        Split split = insert(childPageId, key, value);
+        if (split == null) {
+            return null;
+        }
+
+        page = pool.pin(pageId);
+        buf = page.data();
+        try {
+            int count = count(buf);
+            if (count < maxInternalKeys) {
+                // key[i] 与 child[i + 1] 相邻存放，一起后移 16 字节
+                int from = HEADER_SIZE + 8 + childIndex * 16;
+                System.arraycopy(buf.array(), from, buf.array(), from + 16, (count - childIndex) * 16);
+                buf.putLong(from, split.separator);
+                buf.putLong(from + 8, split.rightPageId);
+                setCount(buf, count + 1);
+                return null;
+            }
+
+            // 内部页已满：在临时数组中插入后对半分开，中间键上移
+            long[] keys = new long[count + 1];
+            long[] children = new long[count + 2];
+            for (int i = 0, k = 0; i <= count; i++) {
+                if (i == childIndex) {
+                    keys[i] = split.separator;
+                } else {
+                    keys[i] = key(buf, k++);
+                }
+            }
+            for (int i = 0, c = 0; i <= count + 1; i++) {
+                if (i == childIndex + 1) {
+                    children[i] = split.rightPageId;
+                } else {
+                    children[i] = child(buf, c++);
+                }
+            }
+
+            int mid = keys.length / 2;
+            BufferPool.Page right = pool.allocate();
+            writeInternal(buf, keys, children, 0, mid);
+            writeInternal(right.data(), keys, children, mid + 1, keys.length);
+            long rightPageId = right.getPageId();
+            pool.unpin(right, true);
+            return new Split(keys[mid], rightPageId);
+        } finally {
+            pool.unpin(page, true);
+        }
+    }
+
+
+    private Split insertIntoLeaf(BufferPool.Page page, long key, byte[] value) throws IOException {
+        ByteBuffer buf = page.data();
+        int count = count(buf);
+        int pos = leafSearch(buf, key);
+        boolean inserted = pos < 0;
+
+        if (!inserted) {
+            // 新值不更长时原地覆盖，多出的空间等下次整理页面时回收
+            if (value.length <= valueLength(buf, pos)) {
+                int offset = valueOffset(buf, pos);
+                buf.put(offset, value, 0, value.length);
+                buf.putChar(slot(pos) + 10, (char) value.length);
+                return null;
+            }
+        } else {
+            pos = -pos - 1;
+            size++;
+            if (freeSpace(buf) >= SLOT_SIZE + value.length) {
+                int heapStart = buf.getInt(HEAP_START_OFFSET) - value.length;
+                System.arraycopy(buf.array(), slot(pos), buf.array(), slot(pos + 1), (count - pos) * SLOT_SIZE);
+                buf.put(heapStart, value, 0, value.length);
+                buf.putLong(slot(pos), key);
+                buf.putChar(slot(pos) + 8, (char) heapStart);
+                buf.putChar(slot(pos) + 10, (char) value.length);
+                buf.putInt(HEAP_START_OFFSET, heapStart);
+                setCount(buf, count + 1);
+                return null;
+            }
+        }
+
+        // 空间不足：取出全部条目，应用本次修改后紧凑重写；仍放不下就分裂
+        int newCount = inserted ? count + 1 : count;
+        long[] keys = new long[newCount];
+        byte[][] values = new byte[newCount][];
+        int totalBytes = 0;
+        for (int i = 0, k = 0; i < newCount; i++) {
+            if (i == pos) {
+                keys[i] = key;
+                values[i] = value;
+                if (!inserted) {
+                    k++;
+                }
+            } else {
+                keys[i] = leafKey(buf, k);
+                values[i] = readValue(buf, k);
+                k++;
+            }
+            totalBytes += SLOT_SIZE + values[i].length;
+        }
+        long next = buf.getLong(NEXT_OFFSET);
+
+        if (totalBytes <= pageSize - HEADER_SIZE) {
+            writeLeaf(buf, keys, values, 0, newCount, next);
+            return null;
+        }
+
+        int splitAt;
+        if (inserted && pos == newCount - 1 && next == 0) {
+            // 追加到最右叶子的末尾（如按 id 顺序写入）：左页保持装满，新页只放新条目
+            splitAt = newCount - 1;
+        } else {
+            splitAt = 1;
+            int leftBytes = SLOT_SIZE + values[0].length;
+            while (splitAt < newCount - 1 && leftBytes + SLOT_SIZE + values[splitAt].length <= totalBytes / 2) {
+                leftBytes += SLOT_SIZE + values[splitAt].length;
+                splitAt++;
+            }
+        }
+
+        BufferPool.Page right = pool.allocate();
+        long rightPageId = right.getPageId();
+        writeLeaf(right.data(), keys, values, splitAt, newCount, next);
+        pool.unpin(right, true);
+        writeLeaf(buf, keys, values, 0, splitAt, rightPageId);
+        return new Split(keys[splitAt], rightPageId);
+    }
+
+
+    public byte[] get(long key) throws IOException {
+        long pageId = rootPageId;
+        while (true) {
+            BufferPool.Page page = pool.pin(pageId);
+            ByteBuffer buf = page.data();
+            try {
+                if (buf.get(TYPE_OFFSET) == LEAF) {
+                    int pos = leafSearch(buf, key);
+                    return pos >= 0 ? readValue(buf, pos) : null;
+                }
+                pageId = child(buf, childIndex(buf, key));
+            } finally {
+                pool.unpin(page, false);
+            }
+        }
+    }
+
+
+    public boolean containsKey(long key) throws IOException {
+        return get(key) != null;
+    }
+
+
+    /**
+     * [minKey, maxKey] 闭区间内的值，按键升序
+     */
+    public List<byte[]> rangeQuery(long minKey, long maxKey) throws IOException {
+        List<byte[]> results = new ArrayList<>();
+        forEachInRange(minKey, maxKey, (key, value) -> results.add(value));
+        return results;
+    }
+
+
+    /**
+     * 按键升序访问 [minKey, maxKey] 内的条目：下降一次找到起始叶子，之后沿叶子链表顺序读取，返回访问的条目数
+     */
+    public int forEachInRange(long minKey, long maxKey, EntryVisitor visitor) throws IOException {
+        if (minKey > maxKey) {
+            return 0;
+        }
+
+        long pageId = rootPageId;
+        while (true) {
+            BufferPool.Page page = pool.pin(pageId);
+            ByteBuffer buf = page.data();
+            boolean leaf = buf.get(TYPE_OFFSET) == LEAF;
+            if (!leaf) {
+                pageId = child(buf, childIndex(buf, minKey));
+            }
+            pool.unpin(page, false);
+            if (leaf) {
+                break;
+            }
+        }
+
+        int visited = 0;
+        int pos = -1;
+        while (pageId != 0) {
+            BufferPool.Page page = pool.pin(pageId);
+            ByteBuffer buf = page.data();
+            try {
+                if (pos < 0) {
+                    pos = leafSearch(buf, minKey);
+                    if (pos < 0) {
+                        pos = -pos - 1;
+                    }
+                }
+                int count = count(buf);
+                for (; pos < count; pos++) {
+                    long key = leafKey(buf, pos);
+                    if (key > maxKey) {
+                        return visited;
+                    }
+                    visited++;
+                    if (!visitor.visit(key, readValue(buf, pos))) {
+                        return visited;
+                    }
+                }
+                pageId = buf.getLong(NEXT_OFFSET);
+                pos = 0;
+            } finally {
+                pool.unpin(page, false);
+            }
+        }
+        return visited;
+    }
+
+
+    public long size() {
+        return size;
+    }
+
+
+    public int height() {
+        return height;
+    }
+
+
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+
+    /**
+     * 缓冲池统计：{命中次数, 未命中次数, 淘汰次数, 写回次数}
+     */
+    public long[] getPoolStats() {
+        return pool.getStats();
+    }
+
+
+    /**
+     * 写回元数据和所有脏页
+     */
+    public void flush() throws IOException {
+        writeMeta();
+        pool.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    private void writeMeta() throws IOException {
+        BufferPool.Page page = pool.pin(META_PAGE);
+        ByteBuffer buf = page.data();
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putInt(8, pageSize);
+        buf.putLong(12, rootPageId);
+        buf.putLong(20, size);
+        buf.putInt(28, height);
+        pool.unpin(page, true);
+    }
+
+
+    private void readMeta() throws IOException {
+        BufferPool.Page page = pool.pin(META_PAGE);
+        ByteBuffer buf = page.data();
+        try {
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("不是有效的索引文件或版本不兼容");
+            }
+            if (buf.getInt(8) != pageSize) {
+                throw new IOException("索引文件的页大小为 " + buf.getInt(8) + "，与指定的 " + pageSize + " 不一致");
+            }
+            rootPageId = buf.getLong(12);
+            size = buf.getLong(20);
+            height = buf.getInt(28);
+        } finally {
+            pool.unpin(page, false);
+        }
+    }
+
+
+    private void initLeaf(ByteBuffer buf, long next) {
+        buf.put(TYPE_OFFSET, LEAF);
+        setCount(buf, 0);
+        buf.putLong(NEXT_OFFSET, next);
+        buf.putInt(HEAP_START_OFFSET, pageSize);
+    }
+
+
+    private void writeLeaf(ByteBuffer buf, long[] keys, byte[][] values, int from, int to, long next) {
+        initLeaf(buf, next);
+        int heapStart = pageSize;
+        for (int i = from; i < to; i++) {
+            heapStart -= values[i].length;
+            buf.put(heapStart, values[i], 0, values[i].length);
+            int slot = slot(i - from);
+            buf.putLong(slot, keys[i]);
+            buf.putChar(slot + 8, (char) heapStart);
+            buf.putChar(slot + 10, (char) values[i].length);
+        }
+        buf.putInt(HEAP_START_OFFSET, heapStart);
+        setCount(buf, to - from);
+    }
+
+
+    /**
+     * 写入 keys[from, to) 和 children[from, to] 组成的内部页
+     */
+    private static void writeInternal(ByteBuffer buf, long[] keys, long[] children, int from, int to) {
+        buf.put(TYPE_OFFSET, INTERNAL);
+        setCount(buf, to - from);
+        buf.putLong(HEADER_SIZE, children[from]);
+        for (int i = from; i < to; i++) {
+            int offset = HEADER_SIZE + 8 + (i - from) * 16;
+            buf.putLong(offset, keys[i]);
+            buf.putLong(offset + 8, children[i + 1]);
+        }
+    }
+
+
+    private static int count(ByteBuffer buf) {
+        return buf.getChar(COUNT_OFFSET);
+    }
+
+
+    private static void setCount(ByteBuffer buf, int count) {
+        buf.putChar(COUNT_OFFSET, (char) count);
+    }
+
+
+    private static int slot(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+
+    private static long leafKey(ByteBuffer buf, int index) {
+        return buf.getLong(slot(index));
+    }
+
+
+    private static int valueOffset(ByteBuffer buf, int index) {
+        return buf.getChar(slot(index) + 8);
+    }
+
+
+    private static int valueLength(ByteBuffer buf, int index) {
+        return buf.getChar(slot(index) + 10);
+    }
+
+
+    private static byte[] readValue(ByteBuffer buf, int index) {
+        byte[] value = new byte[valueLength(buf, index)];
+        buf.get(valueOffset(buf, index), value, 0, value.length);
+        return value;
+    }
+
+
+    private static int freeSpace(ByteBuffer buf) {
+        return buf.getInt(HEAP_START_OFFSET) - slot(count(buf));
+    }
+
+
+    private static long key(ByteBuffer buf, int index) {
+        return buf.getLong(HEADER_SIZE + 8 + index * 16);
+    }
+
+
+    private static long child(ByteBuffer buf, int index) {
+        return buf.getLong(HEADER_SIZE + index * 16);
+    }
+
+
+    /**
+     * 内部页中键应进入的子节点下标：第一个大于 key 的分隔键的位置
+     */
+    private static int childIndex(ByteBuffer buf, long key) {
+        int lo = 0;
+        int hi = count(buf);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key >= key(buf, mid)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 叶子页内二分查找，找到返回下标，否则返回 -(插入位置) - 1
+     */
+    private static int leafSearch(ByteBuffer buf, long key) {
+        int lo = 0;
+        int hi = count(buf) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = leafKey(buf, mid);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
@@ -1,11 +1,14 @@
 package main.task4;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 
 public class FileIOOperations {
@@ -108,7 +111,8 @@ public class FileIOOperations {
             throw new IOException("文件不存在: " + filePath);
         }
 
-        BTreeIndex<Integer, PerformanceTest.TestRecord> index = new BTreeIndex<>();
+        // 文件中的 id 本身有序，先收集再自底向上批量构建，避免逐条 put 的下降和分裂
+        List<Map.Entry<Integer, PerformanceTest.TestRecord>> entries = new ArrayList<>();
         try (BufferedReader reader = Files.newBufferedReader(filePath)) {
             reader.readLine(); // 跳过表头
             String line;
@@ -121,13 +125,129 @@ public class FileIOOperations {
                         int value = Integer.parseInt(parts[2]);
                         String category = parts[3];
                         PerformanceTest.TestRecord record = new PerformanceTest.TestRecord(id, name, value, category);
-                        index.put(id, record);
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(id, record));
                     } catch (NumberFormatException e) {
                         // 忽略解析错误的行
                     }
                 }
             }
         }
+
+        BTreeIndex<Integer, PerformanceTest.TestRecord> index = new BTreeIndex<>();
+        index.bulkLoad(entries.iterator());
         return index;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * 快照与 CSV 一致时直接加载快照；否则从 CSV 构建并写出快照，供下次启动使用
+     */
+    public BTreeIndex<Integer, PerformanceTest.TestRecord> loadBTreeWithSnapshot(String filename, String snapshotFilename)
+            throws IOException {
+        BTreeIndex<Integer, PerformanceTest.TestRecord> index = null;
+        if (isSnapshotCurrent(filename, snapshotFilename)) {
+            index = loadSnapshot(snapshotFilename);
+        }
+        if (index == null) {
+            index = loadAllDataToBTree(filename);
+            saveSnapshot(index, filename, snapshotFilename);
+        }
+        return index;
+    }
+
+
+    /**
+     * 把 index 写成快照，并在旁边的 .source 文件里记下构建时 CSV 的大小和修改时间。返回快照文件字节数
+     */
+    public long saveSnapshot(BTreeIndex<Integer, PerformanceTest.TestRecord> index, String filename, String snapshotFilename)
+            throws IOException {
+        Path sourcePath = Paths.get(dataDir, snapshotFilename + ".source");
+        // 先删掉旧的标记，写快照中途失败时不会留下“标记对得上、内容却不对”的快照
+        Files.deleteIfExists(sourcePath);
+        long bytes = BTreeSnapshot.save(index, Paths.get(dataDir, snapshotFilename),
+                BTreeSnapshot.INT, PerformanceTest.TestRecord.CODEC);
+        String stamp = sourceStamp(filename);
+        if (stamp == null) {
+            throw new IOException("文件不存在: " + Paths.get(dataDir, filename));
+        }
+        Files.write(sourcePath, stamp.getBytes(StandardCharsets.UTF_8));
+        return bytes;
+    }
+
+
+    /**
+     * 快照是否可用：快照和 .source 标记都存在，且 CSV 的大小和修改时间与标记一致。
+     * 只读文件属性，不读 CSV 内容；CSV 不存在时快照是唯一的数据来源，视为可用
+     */
+    public boolean isSnapshotCurrent(String filename, String snapshotFilename) throws IOException {
+        Path sourcePath = Paths.get(dataDir, snapshotFilename + ".source");
+        if (!Files.exists(Paths.get(dataDir, snapshotFilename)) || !Files.exists(sourcePath)) {
+            return false;
+        }
+        String stamp = sourceStamp(filename);
+        return stamp == null
+                || stamp.equals(new String(Files.readAllBytes(sourcePath), StandardCharsets.UTF_8).trim());
+    }
+
+
+    /**
+     * 加载快照文件，不检查是否与 CSV 一致；快照不存在或损坏时返回 null
+     */
+    public BTreeIndex<Integer, PerformanceTest.TestRecord> loadSnapshot(String snapshotFilename) {
+        Path snapshotPath = Paths.get(dataDir, snapshotFilename);
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            return BTreeSnapshot.load(snapshotPath, BTreeSnapshot.INT, PerformanceTest.TestRecord.CODEC);
+        } catch (IOException e) {
+            System.err.println("快照加载失败，改为从 CSV 重建: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * CSV 的 "大小 修改时间(毫秒)"，文件不存在时返回 null
+     */
+    private String sourceStamp(String filename) throws IOException {
+        Path filePath = Paths.get(dataDir, filename);
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+        return Files.size(filePath) + " " + Files.getLastModifiedTime(filePath).toMillis();
+    }
+
+
+    /**
+     * 从 CSV 重建磁盘 B+ 树索引文件（已有的同名索引文件会被删除），返回索引文件路径。
+     * 之后可以直接用 DiskBTreeIndex 打开，不必再解析 CSV。
+     */
+    public Path buildDiskIndex(String filename, String indexFilename) throws IOException {
+        Path filePath = Paths.get(dataDir, filename);
+        if (!Files.exists(filePath)) {
+            throw new IOException("文件不存在: " + filePath);
+        }
+
+        Path indexPath = Paths.get(dataDir, indexFilename);
+        Files.deleteIfExists(indexPath);
+        try (BufferedReader reader = Files.newBufferedReader(filePath);
+             DiskBTreeIndex index = new DiskBTreeIndex(indexPath, 256)) {
+            reader.readLine(); // 跳过表头
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 4) {
+                    try {
+                        int id = Integer.parseInt(parts[0]);
+                        int value = Integer.parseInt(parts[2]);
+                        index.put(id, new PerformanceTest.TestRecord(id, parts[1], value, parts[3]).toBytes());
+                    } catch (NumberFormatException e) {
+                        // 忽略解析错误的行
+                    }
+                }
+            }
+        }
+        return indexPath;
+    }
+}
@@ -0,0 +1,340 @@
+package main.task4;
+
+import main.task3.SchemaMigrator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 二级索引的收益与代价对比。索引定义取自迁移 V003__secondary_indexes.sql，对每个索引：
+ * - 先删除（不存在时跳过），ANALYZE 后测代表性查询的平均延迟，以及一批写入的耗时
+ * - 再建索引（记录建索引耗时和索引大小），ANALYZE 后重复同样的查询和写入
+ * 写入在事务中执行后回滚，不改变数据。测量期间其它被测索引都处于删除状态，结果只反映单个索引；
+ * 结束后恢复开始时已存在的索引。
+ */
+public class IndexBenchmark {
+    private static final String MIGRATION_FILE = "V003__secondary_indexes.sql";
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "create\\s+index\\s+if\\s+not\\s+exists\\s+(\\w+)\\s+on\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private final Connection connection;
+    private final Map<String, IndexCase> cases = new LinkedHashMap<>();
+
+
+    /**
+     * 一个被测索引：查询形态、取样查询参数的 SQL、写入负载
+     */
+    private static class IndexCase {
+        final String querySql;
+        final String sampleSql;
+        final Workload workload;
+        String indexName;
+        String tableName;
+        String createSql;
+
+        IndexCase(String querySql, String sampleSql, Workload workload) {
+            this.querySql = querySql;
+            this.sampleSql = sampleSql;
+            this.workload = workload;
+        }
+    }
+
+
+    /**
+     * 写入负载：prepare 不计时，insert 计时，均在回滚的事务中执行。%d 替换为行数。
+     */
+    private static class Workload {
+        final String[] prepare;
+        final String insert;
+
+        Workload(String insert, String... prepare) {
+            this.prepare = prepare;
+            this.insert = insert;
+        }
+    }
+
+
+    public static class Result {
+        public final String indexName;
+        public final String tableName;
+        public final long queryNanosWithout;   // 平均每次查询
+        public final long queryNanosWith;
+        public final long writeNanosWithout;   // 整批写入
+        public final long writeNanosWith;
+        public final long buildMillis;
+        public final long indexBytes;
+
+        Result(String indexName, String tableName, long queryNanosWithout, long queryNanosWith,
+               long writeNanosWithout, long writeNanosWith, long buildMillis, long indexBytes) {
+            this.indexName = indexName;
+            this.tableName = tableName;
+            this.queryNanosWithout = queryNanosWithout;
+            this.queryNanosWith = queryNanosWith;
+            this.writeNanosWithout = writeNanosWithout;
+            this.writeNanosWith = writeNanosWith;
+            this.buildMillis = buildMillis;
+            this.indexBytes = indexBytes;
+        }
+
+        public double querySpeedup() {
+            return queryNanosWith == 0 ? 0 : (double) queryNanosWithout / queryNanosWith;
+        }
+
+        public double writeSlowdown() {
+            return writeNanosWithout == 0 ? 0 : (double) writeNanosWith / writeNanosWithout;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-38s 查询 %.3fms -> %.3fms (%.1f 倍), 写入 %.1fms -> %.1fms (%.2f 倍), " +
+                            "建索引 %dms, 大小 %.1f MB",
+                    indexName, queryNanosWithout / 1_000_000.0, queryNanosWith / 1_000_000.0, querySpeedup(),
+                    writeNanosWithout / 1_000_000.0, writeNanosWith / 1_000_000.0, writeSlowdown(),
+                    buildMillis, indexBytes / (1024.0 * 1024.0));
+        }
+    }
+
+
+    public IndexBenchmark(Connection connection) {
+        this.connection = connection;
+
+        // 复制已有评论/食谱并平移主键；外键指向的父行都存在
+        Workload reviews = new Workload(
+                "INSERT INTO reviews (reviewid, recipeid, authorid, rating, review, datesubmitted, datemodified) " +
+                        "SELECT reviewid + (SELECT max(reviewid) FROM reviews), recipeid, authorid, rating, review, " +
+                        "datesubmitted, datemodified FROM reviews ORDER BY reviewid LIMIT %d");
+        Workload recipes = new Workload(
+                "INSERT INTO recipes (recipeid, authorid, name, cooktime, preptime, datepublished, description, " +
+                        "recipecategory, recipeservings, recipeyield) " +
+                        "SELECT recipeid + (SELECT max(recipeid) FROM recipes), authorid, name, cooktime, preptime, " +
+                        "datepublished, description, recipecategory, recipeservings, recipeyield " +
+                        "FROM recipes ORDER BY recipeid LIMIT %d");
+        // 关联表没有其它表引用：先取出并删除一批行，再计时插回
+        Workload recipeIngredients = new Workload(
+                "INSERT INTO recipe_ingredients (recipeid, ingredientid) SELECT recipeid, ingredientid FROM bench_rows",
+                "CREATE TEMP TABLE bench_rows ON COMMIT DROP AS " +
+                        "SELECT recipeid, ingredientid FROM recipe_ingredients LIMIT %d",
+                "DELETE FROM recipe_ingredients t USING bench_rows b " +
+                        "WHERE t.recipeid = b.recipeid AND t.ingredientid = b.ingredientid");
+        Workload userFollows = new Workload(
+                "INSERT INTO user_follows (followerid, followingid) SELECT followerid, followingid FROM bench_rows",
+                "CREATE TEMP TABLE bench_rows ON COMMIT DROP AS " +
+                        "SELECT followerid, followingid FROM user_follows LIMIT %d",
+                "DELETE FROM user_follows t USING bench_rows b " +
+                        "WHERE t.followerid = b.followerid AND t.followingid = b.followingid");
+
+        cases.put("idx_reviews_recipeid", new IndexCase(
+                "SELECT reviewid, rating FROM reviews WHERE recipeid = ?",
+                "SELECT recipeid FROM reviews WHERE recipeid IS NOT NULL ORDER BY random() LIMIT ?",
+                reviews));
+        cases.put("idx_reviews_authorid", new IndexCase(
+                "SELECT reviewid, recipeid FROM reviews WHERE authorid = ?",
+                "SELECT authorid FROM reviews WHERE authorid IS NOT NULL ORDER BY random() LIMIT ?",
+                reviews));
+        cases.put("idx_recipes_authorid", new IndexCase(
+                "SELECT recipeid, name FROM recipes WHERE authorid = ?",
+                "SELECT authorid FROM recipes WHERE authorid IS NOT NULL ORDER BY random() LIMIT ?",
+                recipes));
+        cases.put("idx_recipe_ingredients_ingredientid", new IndexCase(
+                "SELECT recipeid FROM recipe_ingredients WHERE ingredientid = ?",
+                "SELECT ingredientid FROM recipe_ingredients ORDER BY random() LIMIT ?",
+                recipeIngredients));
+        cases.put("idx_user_follows_followingid", new IndexCase(
+                "SELECT followerid FROM user_follows WHERE followingid = ?",
+                "SELECT followingid FROM user_follows ORDER BY random() LIMIT ?",
+                userFollows));
+    }
+
+
+    /**
+     * 对迁移中定义的每个索引执行对比
+     *
+     * @param queryCount 每种状态下执行的查询次数（参数从表中随机取样）
+     * @param writeRows  每种状态下写入的行数
+     */
+    public List<Result> run(int queryCount, int writeRows) throws SQLException, IOException {
+        loadDefinitions(Paths.get(SchemaMigrator.DEFAULT_MIGRATION_DIR, MIGRATION_FILE));
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        Set<String> existing = existingIndexes();
+        List<Result> results = new ArrayList<>();
+        try {
+            for (IndexCase c : cases.values()) {
+                execute("DROP INDEX IF EXISTS " + c.indexName);
+            }
+            connection.commit();
+
+            for (IndexCase c : cases.values()) {
+                results.add(measure(c, queryCount, writeRows));
+            }
+        } finally {
+            connection.rollback();
+            for (IndexCase c : cases.values()) {
+                if (existing.contains(c.indexName)) {
+                    execute(c.createSql);
+                } else {
+                    execute("DROP INDEX IF EXISTS " + c.indexName);
+                }
+            }
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+        }
+        return results;
+    }
+
+
+    private Result measure(IndexCase c, int queryCount, int writeRows) throws SQLException {
+        Object[] keys = sampleKeys(c.sampleSql, queryCount);
+
+        execute("ANALYZE " + c.tableName);
+        connection.commit();
+        long queryWithout = timeQueries(c.querySql, keys);
+        long writeWithout = timeWrite(c.workload, writeRows);
+
+        long buildStart = System.nanoTime();
+        execute(c.createSql);
+        execute("ANALYZE " + c.tableName);
+        connection.commit();
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000;
+        long indexBytes = indexSize(c.indexName);
+
+        long queryWith = timeQueries(c.querySql, keys);
+        long writeWith = timeWrite(c.workload, writeRows);
+
+        // 下一个索引单独测量
+        execute("DROP INDEX " + c.indexName);
+        connection.commit();
+
+        return new Result(c.indexName, c.tableName, queryWithout, queryWith, writeWithout, writeWith,
+                buildMillis, indexBytes);
+    }
+
+
+    /**
+     * 从迁移文件中读取 CREATE INDEX 语句，与预设的查询场景按索引名对应
+     */
+    private void loadDefinitions(Path migration) throws IOException {
+        String script = new String(Files.readAllBytes(migration), StandardCharsets.UTF_8);
+        Set<String> found = new HashSet<>();
+        for (String statement : script.split(";")) {
+            String sql = statement.replaceAll("(?m)^\\s*--.*$", "").trim();
+            Matcher matcher = CREATE_INDEX.matcher(sql);
+            if (!matcher.find()) {
+                continue;
+            }
+            IndexCase c = cases.get(matcher.group(1).toLowerCase());
+            if (c != null) {
+                c.indexName = matcher.group(1).toLowerCase();
+                c.tableName = matcher.group(2).toLowerCase();
+                c.createSql = sql;
+                found.add(c.indexName);
+            }
+        }
+        for (String name : cases.keySet()) {
+            if (!found.contains(name)) {
+                throw new IOException("迁移 " + MIGRATION_FILE + " 中缺少索引定义: " + name);
+            }
+        }
+    }
+
+
+    private Object[] sampleKeys(String sampleSql, int count) throws SQLException {
+        List<Object> keys = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sampleSql)) {
+            pstmt.setInt(1, count);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(rs.getObject(1));
+                }
+            }
+        }
+        connection.commit();
+        return keys.toArray();
+    }
+
+
+    /**
+     * 依次执行查询并读完结果，返回平均每次的纳秒数
+     */
+    private long timeQueries(String sql, Object[] keys) throws SQLException {
+        if (keys.length == 0) {
+            return 0;
+        }
+        long total = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (Object key : keys) {
+                long startTime = System.nanoTime();
+                pstmt.setObject(1, key);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        // 读完结果
+                    }
+                }
+                total += System.nanoTime() - startTime;
+            }
+        }
+        connection.commit();
+        return total / keys.length;
+    }
+
+
+    private long timeWrite(Workload workload, int rows) throws SQLException {
+        try {
+            for (String prepare : workload.prepare) {
+                execute(String.format(prepare, rows));
+            }
+            long startTime = System.nanoTime();
+            execute(String.format(workload.insert, rows));
+            return System.nanoTime() - startTime;
+        } finally {
+            connection.rollback();
+        }
+    }
+
+
+    private long indexSize(String indexName) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT pg_relation_size(?::regclass)")) {
+            pstmt.setString(1, indexName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+
+    private Set<String> existingIndexes() throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT indexname FROM pg_indexes WHERE schemaname = current_schema()");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
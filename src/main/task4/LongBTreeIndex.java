@@ -0,0 +1,313 @@
+package main.task4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * long 键的 B+ 树索引（recipeid、reviewid、authorid 等），结构与 BPlusTreeIndex 相同，
+ * 但键存放在 long[] 中、值存放在平行的 Object[] 中，put、get 和范围扫描都不装箱，也没有逐条的 Entry 对象。
+ * 键唯一，put 已存在的键会替换原值。
+ */
+public class LongBTreeIndex<V> {
+    private static final int DEFAULT_ORDER = 128; // 叶子最多 order 个键，内部节点最多 order 个子节点
+
+    private final int order;
+    private Node root;
+    private int size;
+
+
+    /**
+     * 范围扫描的回调，返回 false 时提前结束扫描
+     */
+    @FunctionalInterface
+    public interface EntryVisitor<V> {
+        boolean visit(long key, V value);
+    }
+
+
+    private abstract static class Node {
+        final long[] keys;
+        int count;
+
+        Node(int capacity) {
+            keys = new long[capacity];
+        }
+    }
+
+
+    private static final class Leaf extends Node {
+        final Object[] values;
+        Leaf next;
+
+        Leaf(int order) {
+            super(order);
+            values = new Object[order];
+        }
+    }
+
+
+    private static final class Internal extends Node {
+        final Node[] children;   // children[i] 中的键 < keys[i] <= children[i + 1] 中的键
+
+        Internal(int order) {
+            super(order - 1);
+            children = new Node[order];
+        }
+    }
+
+
+    private static final class Split {
+        final long separator;
+        final Node right;
+
+        Split(long separator, Node right) {
+            this.separator = separator;
+            this.right = right;
+        }
+    }
+
+
+    public LongBTreeIndex() {
+        this(DEFAULT_ORDER);
+    }
+
+
+    public LongBTreeIndex(int order) {
+        if (order < 3) {
+            throw new IllegalArgumentException("阶数不能小于 3");
+        }
+        this.order = order;
+        clear();
+    }
+
+
+    public void put(long key, V value) {
+        Split split = insert(root, key, value);
+        if (split != null) {
+            Internal newRoot = new Internal(order);
+            newRoot.keys[0] = split.separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = split.right;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+    }
+
+
+    private Split insert(Node node, long key, V value) {
+        if (node instanceof Leaf) {
+            return insertIntoLeaf((Leaf) node, key, value);
+        }
+
+        Internal internal = (Internal) node;
+        int childIndex = childIndex(internal, key);
+        Split split = insert(internal.children[childIndex], key, value);
+        if (split == null) {
+            return null;
+        }
+
+        if (internal.count < order - 1) {
+            System.arraycopy(internal.keys, childIndex, internal.keys, childIndex + 1, internal.count - childIndex);
+            System.arraycopy(internal.children, childIndex + 1, internal.children, childIndex + 2, internal.count - childIndex);
+            internal.keys[childIndex] = split.separator;
+            internal.children[childIndex + 1] = split.right;
+            internal.count++;
+            return null;
+        }
+
+        // 内部节点已满：先在临时数组中插入，再对半分开，中间键上移
+        long[] keys = new long[order];
+        Node[] children = new Node[order + 1];
+        System.arraycopy(internal.keys, 0, keys, 0, childIndex);
+        keys[childIndex] = split.separator;
+        System.arraycopy(internal.keys, childIndex, keys, childIndex + 1, internal.count - childIndex);
+        System.arraycopy(internal.children, 0, children, 0, childIndex + 1);
+        children[childIndex + 1] = split.right;
+        System.arraycopy(internal.children, childIndex + 1, children, childIndex + 2, internal.count - childIndex);
+
+        int mid = order / 2;
+        Internal right = new Internal(order);
+        internal.count = mid;
+        right.count = order - mid - 1;
+        System.arraycopy(keys, 0, internal.keys, 0, mid);
+        System.arraycopy(children, 0, internal.children, 0, mid + 1);
+        System.arraycopy(keys, mid + 1, right.keys, 0, right.count);
+        System.arraycopy(children, mid + 1, right.children, 0, right.count + 1);
+        for (int i = mid + 1; i < internal.children.length; i++) {
+            internal.children[i] = null;
+        }
+        return new Split(keys[mid], right);
+    }
+
+
+    private Split insertIntoLeaf(Leaf leaf, long key, V value) {
+        int pos = search(leaf, key);
+        if (pos >= 0) {
+            leaf.values[pos] = value;
+            return null;
+        }
+        pos = -pos - 1;
+        size++;
+
+        if (leaf.count < order) {
+            insertAt(leaf, pos, key, value);
+            return null;
+        }
+
+        // 叶子已满：右半部分移到新叶子，新叶子的第一个键作为分隔键
+        Leaf right = new Leaf(order);
+        int mid = (order + 1) / 2;
+        right.count = leaf.count - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.count);
+        for (int i = mid; i < leaf.count; i++) {
+            leaf.values[i] = null;
+        }
+        leaf.count = mid;
+
+        if (pos <= mid) {
+            insertAt(leaf, pos, key, value);
+        } else {
+            insertAt(right, pos - mid, key, value);
+        }
+
+        right.next = leaf.next;
+        leaf.next = right;
+        return new Split(right.keys[0], right);
+    }
+
+
+    private static void insertAt(Leaf leaf, int pos, long key, Object value) {
+        System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.count - pos);
+        System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.count - pos);
+        leaf.keys[pos] = key;
+        leaf.values[pos] = value;
+        leaf.count++;
+    }
+
+
+    public V get(long key) {
+        Leaf leaf = findLeaf(key);
+        int pos = search(leaf, key);
+        @SuppressWarnings("unchecked")
+        V value = pos >= 0 ? (V) leaf.values[pos] : null;
+        return value;
+    }
+
+
+    public boolean containsKey(long key) {
+        return search(findLeaf(key), key) >= 0;
+    }
+
+
+    /**
+     * [minKey, maxKey] 闭区间内的值，按键升序
+     */
+    public List<V> rangeQuery(long minKey, long maxKey) {
+        List<V> results = new ArrayList<>();
+        forEachInRange(minKey, maxKey, (key, value) -> results.add(value));
+        return results;
+    }
+
+
+    /**
+     * 按键升序访问 [minKey, maxKey] 内的每个条目，返回访问的条目数
+     */
+    public int forEachInRange(long minKey, long maxKey, EntryVisitor<? super V> visitor) {
+        if (minKey > maxKey) {
+            return 0;
+        }
+
+        Leaf leaf = findLeaf(minKey);
+        int pos = search(leaf, minKey);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        int visited = 0;
+        while (leaf != null) {
+            for (; pos < leaf.count; pos++) {
+                if (leaf.keys[pos] > maxKey) {
+                    return visited;
+                }
+                visited++;
+                @SuppressWarnings("unchecked")
+                V value = (V) leaf.values[pos];
+                if (!visitor.visit(leaf.keys[pos], value)) {
+                    return visited;
+                }
+            }
+            leaf = leaf.next;
+            pos = 0;
+        }
+        return visited;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public void clear() {
+        root = new Leaf(order);
+        size = 0;
+    }
+
+
+    public int height() {
+        int height = 1;
+        for (Node node = root; node instanceof Internal; node = ((Internal) node).children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+
+    private Leaf findLeaf(long key) {
+        Node node = root;
+        while (node instanceof Internal) {
+            Internal internal = (Internal) node;
+            node = internal.children[childIndex(internal, key)];
+        }
+        return (Leaf) node;
+    }
+
+
+    /**
+     * 第一个大于 key 的分隔键的位置
+     */
+    private static int childIndex(Internal node, long key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key >= node.keys[mid]) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 节点内二分查找，找到返回下标，否则返回 -(插入位置) - 1
+     */
+    private static int search(Node node, long key) {
+        int lo = 0;
+        int hi = node.count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = node.keys[mid];
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
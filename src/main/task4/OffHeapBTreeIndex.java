@@ -0,0 +1,452 @@
+package main.task4;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 节点存放在堆外内存中的 B+ 树索引，long 键、long 值（如行号、文件偏移或另一个表的主键）。
+ * 节点是定长的内存块，从一组 direct ByteBuffer 组成的 slab 中按编号分配（每个 slab 1024 个节点），
+ * 节点之间用 int 编号互相引用；堆上只有 slab 数组本身，GC 不需要遍历数千万个节点和条目对象。
+ * 节点布局：
+ * - 叶子：count(int) + 类型(int) + 下一个叶子编号(long)，之后是 order 个 long 键和 order 个 long 值
+ * - 内部节点：同样的 16 字节头，之后是 order - 1 个 long 键和 order 个 int 子节点编号
+ * slab 由本类显式分配和释放：clear 把全部节点归还给分配器，只保留第一个 slab，其余立即释放；
+ * close 释放所有 slab，之后调用任何方法都抛出 IllegalStateException。
+ * 释放通过 sun.misc.Unsafe#invokeCleaner（jdk.unsupported 模块，Java 17 无需额外启动参数）立即归还 direct 内存；
+ * 运行环境不提供该方法时退回为等 GC 回收 ByteBuffer 时归还。
+ * 键唯一，put 已存在的键会替换原值。非线程安全。
+ */
+public class OffHeapBTreeIndex implements AutoCloseable {
+    private static final int DEFAULT_ORDER = 128;
+    private static final int SLAB_SHIFT = 10;
+    private static final int NODES_PER_SLAB = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = NODES_PER_SLAB - 1;
+    private static final int NONE = -1;
+
+    private static final int COUNT_OFFSET = 0;
+    private static final int TYPE_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int LEAF = 1;
+    private static final int INTERNAL = 2;
+    // 通过反射取得，避免编译期依赖内部 API；取不到时为 null
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final int order;
+    private final int nodeSize;
+    private final int leafValuesOffset;
+    private final int childrenOffset;
+
+    private List<ByteBuffer> slabs = new ArrayList<>();
+    private int allocatedNodes;
+    private int root;
+    private long size;
+    // clear / close 释放 slab 时递增，范围扫描据此发现回调中的清空或关闭，避免访问已释放的内存
+    private int releaseCount;
+
+    // 分裂结果：insert 返回 true 时由这两个字段带回分隔键和右半节点
+    private long splitKey;
+    private int splitNode;
+
+
+    /**
+     * 范围扫描的回调，返回 false 时提前结束扫描。回调中不能调用 clear / close
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        boolean visit(long key, long value);
+    }
+
+
+    public OffHeapBTreeIndex() {
+        this(DEFAULT_ORDER);
+    }
+
+
+    public OffHeapBTreeIndex(int order) {
+        if (order < 3) {
+            throw new IllegalArgumentException("阶数不能小于 3");
+        }
+        this.order = order;
+        this.nodeSize = HEADER_SIZE + order * 16;
+        this.leafValuesOffset = HEADER_SIZE + order * 8;
+        this.childrenOffset = HEADER_SIZE + (order - 1) * 8;
+        clear();
+    }
+
+
+    public void put(long key, long value) {
+        checkOpen();
+        if (insert(root, key, value)) {
+            int newRoot = allocateNode(INTERNAL);
+            ByteBuffer slab = slab(newRoot);
+            int base = base(newRoot);
+            slab.putLong(base + HEADER_SIZE, splitKey);
+            slab.putInt(base + childrenOffset, root);
+            slab.putInt(base + childrenOffset + 4, splitNode);
+            slab.putInt(base + COUNT_OFFSET, 1);
+            root = newRoot;
+        }
+    }
+
+
+    /**
+     * 插入到以 node 为根的子树，子树根分裂时返回 true，分隔键和右半节点放在 splitKey/splitNode 中
+     */
+    private boolean insert(int node, long key, long value) {
+        ByteBuffer slab = slab(node);
+        int base = base(node);
+        int count = slab.getInt(base + COUNT_OFFSET);
+
+        if (slab.getInt(base + TYPE_OFFSET) == LEAF) {
+            int pos = search(slab, base + HEADER_SIZE, count, key);
+            if (pos >= 0) {
+                slab.putLong(base + leafValuesOffset + pos * 8, value);
+                return false;
+            }
+            pos = -pos - 1;
+            size++;
+            if (count < order) {
+                insertLeafEntry(slab, base, count, pos, key, value);
+                return false;
+            }
+
+            // 叶子已满：右半部分移到新叶子
+            int right = allocateNode(LEAF);
+            ByteBuffer rightSlab = slab(right);
+            int rightBase = base(right);
+            int mid = (order + 1) / 2;
+            int moved = count - mid;
+            rightSlab.put(rightBase + HEADER_SIZE, slab, base + HEADER_SIZE + mid * 8, moved * 8);
+            rightSlab.put(rightBase + leafValuesOffset, slab, base + leafValuesOffset + mid * 8, moved * 8);
+            rightSlab.putInt(rightBase + COUNT_OFFSET, moved);
+            rightSlab.putLong(rightBase + NEXT_OFFSET, slab.getLong(base + NEXT_OFFSET));
+            slab.putLong(base + NEXT_OFFSET, right);
+            slab.putInt(base + COUNT_OFFSET, mid);
+
+            if (pos <= mid) {
+                insertLeafEntry(slab, base, mid, pos, key, value);
+            } else {
+                insertLeafEntry(rightSlab, rightBase, moved, pos - mid, key, value);
+            }
+            splitKey = rightSlab.getLong(rightBase + HEADER_SIZE);
+            splitNode = right;
+            return true;
+        }
+
+        int childIndex = childIndex(slab, base, count, key);
+        if (!insert(slab.getInt(base + childrenOffset + childIndex * 4), key, value)) {
+            return false;
+        }
+        long separator = splitKey;
+        int newChild = splitNode;
+
+        if (count < order - 1) {
+            insertSeparator(slab, base, count, childIndex, separator, newChild);
+            return false;
+        }
+
+        // 内部节点已满：插入后对半分开，中间键上移
+        long[] keys = new long[order];
+        int[] children = new int[order + 1];
+        for (int i = 0, k = 0; i < order; i++) {
+            keys[i] = i == childIndex ? separator : slab.getLong(base + HEADER_SIZE + (k++) * 8);
+        }
+        for (int i = 0, c = 0; i <= order; i++) {
+            children[i] = i == childIndex + 1 ? newChild : slab.getInt(base + childrenOffset + (c++) * 4);
+        }
+
+        int right = allocateNode(INTERNAL);
+        ByteBuffer rightSlab = slab(right);
+        int rightBase = base(right);
+        int mid = order / 2;
+        writeInternal(slab, base, keys, children, 0, mid);
+        writeInternal(rightSlab, rightBase, keys, children, mid + 1, order);
+        splitKey = keys[mid];
+        splitNode = right;
+        return true;
+    }
+
+
+    private void insertLeafEntry(ByteBuffer slab, int base, int count, int pos, long key, long value) {
+        int keyAt = base + HEADER_SIZE + pos * 8;
+        int valueAt = base + leafValuesOffset + pos * 8;
+        int tail = (count - pos) * 8;
+        if (tail > 0) {
+            slab.put(keyAt + 8, slab, keyAt, tail);
+            slab.put(valueAt + 8, slab, valueAt, tail);
+        }
+        slab.putLong(keyAt, key);
+        slab.putLong(valueAt, value);
+        slab.putInt(base + COUNT_OFFSET, count + 1);
+    }
+
+
+    private void insertSeparator(ByteBuffer slab, int base, int count, int childIndex, long separator, int child) {
+        int keyAt = base + HEADER_SIZE + childIndex * 8;
+        int childAt = base + childrenOffset + (childIndex + 1) * 4;
+        int tail = count - childIndex;
+        if (tail > 0) {
+            slab.put(keyAt + 8, slab, keyAt, tail * 8);
+            slab.put(childAt + 4, slab, childAt, tail * 4);
+        }
+        slab.putLong(keyAt, separator);
+        slab.putInt(childAt, child);
+        slab.putInt(base + COUNT_OFFSET, count + 1);
+    }
+
+
+    private void writeInternal(ByteBuffer slab, int base, long[] keys, int[] children, int from, int to) {
+        for (int i = from; i < to; i++) {
+            slab.putLong(base + HEADER_SIZE + (i - from) * 8, keys[i]);
+        }
+        for (int i = from; i <= to; i++) {
+            slab.putInt(base + childrenOffset + (i - from) * 4, children[i]);
+        }
+        slab.putInt(base + COUNT_OFFSET, to - from);
+    }
+
+
+    /**
+     * key 对应的值，不存在时返回 defaultValue
+     */
+    public long get(long key, long defaultValue) {
+        int leaf = findLeaf(key);
+        ByteBuffer slab = slab(leaf);
+        int base = base(leaf);
+        int pos = search(slab, base + HEADER_SIZE, slab.getInt(base + COUNT_OFFSET), key);
+        return pos >= 0 ? slab.getLong(base + leafValuesOffset + pos * 8) : defaultValue;
+    }
+
+
+    public boolean containsKey(long key) {
+        int leaf = findLeaf(key);
+        ByteBuffer slab = slab(leaf);
+        int base = base(leaf);
+        return search(slab, base + HEADER_SIZE, slab.getInt(base + COUNT_OFFSET), key) >= 0;
+    }
+
+
+    /**
+     * 按键升序访问 [minKey, maxKey] 内的条目，返回访问的条目数
+     */
+    public long forEachInRange(long minKey, long maxKey, EntryVisitor visitor) {
+        checkOpen();
+        if (minKey > maxKey) {
+            return 0;
+        }
+        int leaf = findLeaf(minKey);
+        ByteBuffer slab = slab(leaf);
+        int base = base(leaf);
+        int pos = search(slab, base + HEADER_SIZE, slab.getInt(base + COUNT_OFFSET), minKey);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+
+        long visited = 0;
+        while (true) {
+            int count = slab.getInt(base + COUNT_OFFSET);
+            for (; pos < count; pos++) {
+                long key = slab.getLong(base + HEADER_SIZE + pos * 8);
+                if (key > maxKey) {
+                    return visited;
+                }
+                visited++;
+                int released = releaseCount;
+                if (!visitor.visit(key, slab.getLong(base + leafValuesOffset + pos * 8))) {
+                    return visited;
+                }
+                if (releaseCount != released) {
+                    throw new IllegalStateException("范围扫描期间索引被清空或关闭");
+                }
+            }
+            int next = (int) slab.getLong(base + NEXT_OFFSET);
+            if (next == NONE) {
+                return visited;
+            }
+            slab = slab(next);
+            base = base(next);
+            pos = 0;
+        }
+    }
+
+
+    public long size() {
+        checkOpen();
+        return size;
+    }
+
+
+    public int height() {
+        checkOpen();
+        int height = 1;
+        int node = root;
+        while (slab(node).getInt(base(node) + TYPE_OFFSET) == INTERNAL) {
+            node = slab(node).getInt(base(node) + childrenOffset);
+            height++;
+        }
+        return height;
+    }
+
+
+    /**
+     * 已分配的堆外内存字节数
+     */
+    public long offHeapBytes() {
+        checkOpen();
+        return (long) slabs.size() * NODES_PER_SLAB * nodeSize;
+    }
+
+
+    /**
+     * 清空索引：所有节点归还分配器，保留第一个 slab 存放新的根节点，其余 slab 立即释放
+     */
+    public void clear() {
+        checkOpen();
+        while (slabs.size() > 1) {
+            free(slabs.remove(slabs.size() - 1));
+        }
+        releaseCount++;
+        allocatedNodes = 0;
+        size = 0;
+        root = allocateNode(LEAF);
+    }
+
+
+    /**
+     * 释放所有 slab，之后不能再使用本索引。重复调用没有效果
+     */
+    @Override
+    public void close() {
+        if (slabs == null) {
+            return;
+        }
+        List<ByteBuffer> released = slabs;
+        slabs = null;
+        size = 0;
+        releaseCount++;
+        for (ByteBuffer slab : released) {
+            free(slab);
+        }
+    }
+
+
+    private static void free(ByteBuffer slab) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(slab);
+        } catch (Throwable e) {
+            throw new IllegalStateException("释放堆外内存失败", e);
+        }
+    }
+
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+
+    private int allocateNode(int type) {
+        if (allocatedNodes == Integer.MAX_VALUE) {
+            throw new IllegalStateException("节点数超过上限");
+        }
+        int node = allocatedNodes++;
+        if ((node >>> SLAB_SHIFT) == slabs.size()) {
+            slabs.add(ByteBuffer.allocateDirect(NODES_PER_SLAB * nodeSize).order(ByteOrder.nativeOrder()));
+        }
+        ByteBuffer slab = slab(node);
+        int base = base(node);
+        slab.putInt(base + COUNT_OFFSET, 0);
+        slab.putInt(base + TYPE_OFFSET, type);
+        slab.putLong(base + NEXT_OFFSET, NONE);
+        return node;
+    }
+
+
+    private ByteBuffer slab(int node) {
+        return slabs.get(node >>> SLAB_SHIFT);
+    }
+
+
+    private int base(int node) {
+        return (node & SLAB_MASK) * nodeSize;
+    }
+
+
+    private int findLeaf(long key) {
+        checkOpen();
+        int node = root;
+        while (true) {
+            ByteBuffer slab = slab(node);
+            int base = base(node);
+            if (slab.getInt(base + TYPE_OFFSET) == LEAF) {
+                return node;
+            }
+            int index = childIndex(slab, base, slab.getInt(base + COUNT_OFFSET), key);
+            node = slab.getInt(base + childrenOffset + index * 4);
+        }
+    }
+
+
+    private void checkOpen() {
+        if (slabs == null) {
+            throw new IllegalStateException("索引已关闭");
+        }
+    }
+
+
+    /**
+     * 第一个大于 key 的分隔键的位置
+     */
+    private static int childIndex(ByteBuffer slab, int base, int count, long key) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key >= slab.getLong(base + HEADER_SIZE + mid * 8)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    /**
+     * 在从 keysAt 开始的 count 个有序键中二分查找，找到返回下标，否则返回 -(插入位置) - 1
+     */
+    private static int search(ByteBuffer slab, int keysAt, int count, long key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = slab.getLong(keysAt + mid * 8);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
@@ -0,0 +1,63 @@
+package main.task4;
+
+import java.util.List;
+
+/**
+ * 内存有序索引的公共操作，BTreeBenchmark 通过它在不同实现之间做同样的测试
+ */
+public interface OrderedIndex<K extends Comparable<K>, V> {
+
+    void put(K key, V value);
+
+    V get(K key);
+
+    /**
+     * [minKey, maxKey] 闭区间内的值，按键升序
+     */
+    List<V> rangeQuery(K minKey, K maxKey);
+
+    boolean containsKey(K key);
+
+    int size();
+
+    void clear();
+
+
+    /**
+     * 在索引上按键顺序移动的游标，每次只定位一个条目，不复制结果。
+     * 刚创建或移动越界后不指向任何条目，此时 key()/value() 抛出 IllegalStateException。
+     * 索引被修改后游标失效，需要重新 seek。
+     */
+    interface Cursor<K, V> {
+
+        /**
+         * 定位到第一个键 >= key 的条目，没有时返回 false
+         */
+        boolean seek(K key);
+
+        /**
+         * 定位到最后一个键 <= key 的条目（用于反向遍历），没有时返回 false
+         */
+        boolean seekFloor(K key);
+
+        boolean seekFirst();
+
+        boolean seekLast();
+
+        /**
+         * 移到下一个条目，已是最后一个时返回 false 并失去定位
+         */
+        boolean next();
+
+        /**
+         * 移到上一个条目，已是第一个时返回 false 并失去定位
+         */
+        boolean previous();
+
+        boolean isValid();
+
+        K key();
+
+        V value();
+    }
+}
@@ -4,10 +4,20 @@ import main.common.ConnectionManager;
 import main.common.DatabaseConfig;
 import main.task3.DataQuery;
 import main.task3.DataWriter;
+import main.task3.RatingSummary;
+import main.task3.RecipeDetailReader;
+import main.task3.RecipeRecord;
+import main.task3.RecipeSearch;
+import main.task3.ReviewPartitions;
+import main.task3.RowMapper;
+import main.task3.SlowQueryLog;
+import main.task3.WriteBehindQueue;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,7 +26,11 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 public class PerformanceTest {
     private ConnectionManager connectionManager;
@@ -24,6 +38,7 @@ public class PerformanceTest {
     private DataQuery dataQuery;
     private String testTableName;
     private int testDataSize;
+    private long resultSink; // 累加内存查询算出的聚合值，避免计算结果无人使用而被 JIT 消除
 
 
     public static class TestRecord {
@@ -47,6 +62,75 @@ public class PerformanceTest {
             map.put("category", category);
             return map;
         }
+
+        /**
+         * 磁盘索引中存放的值：id、value、name、category（字符串为 UTF-8，前面是 2 字节长度，null 记为 -1）
+         */
+        public byte[] toBytes() {
+            byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            byte[] categoryBytes = category == null ? null : category.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(12 + (nameBytes == null ? 0 : nameBytes.length)
+                    + (categoryBytes == null ? 0 : categoryBytes.length));
+            buffer.putInt(id).putInt(value);
+            putString(buffer, nameBytes);
+            putString(buffer, categoryBytes);
+            return buffer.array();
+        }
+
+        public static TestRecord fromBytes(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int id = buffer.getInt();
+            int value = buffer.getInt();
+            String name = getString(buffer);
+            String category = getString(buffer);
+            return new TestRecord(id, name, value, category);
+        }
+
+        private static void putString(ByteBuffer buffer, byte[] bytes) {
+            buffer.putShort((short) (bytes == null ? -1 : bytes.length));
+            if (bytes != null) {
+                buffer.put(bytes);
+            }
+        }
+
+        private static String getString(ByteBuffer buffer) {
+            int length = buffer.getShort();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public static final RowMapper.Factory<TestRecord> MAPPER = layout -> {
+            int id = layout.require("id");
+            int name = layout.indexOf("name");
+            int value = layout.indexOf("value");
+            int category = layout.indexOf("category");
+            return rs -> new TestRecord(rs.getInt(id), RowMapper.getString(rs, name),
+                    RowMapper.getInt(rs, value), RowMapper.getString(rs, category));
+        };
+
+        /**
+         * 内存索引快照中的值编码：id、value、name、category
+         */
+        public static final BTreeSnapshot.Codec<TestRecord> CODEC = new BTreeSnapshot.Codec<TestRecord>() {
+            public void write(TestRecord record, DataOutput out) throws IOException {
+                out.writeInt(record.id);
+                out.writeInt(record.value);
+                BTreeSnapshot.writeString(record.name, out);
+                BTreeSnapshot.writeString(record.category, out);
+            }
+
+            public TestRecord read(ByteBuffer in) {
+                int id = in.getInt();
+                int value = in.getInt();
+                String name = BTreeSnapshot.readString(in);
+                String category = BTreeSnapshot.readString(in);
+                return new TestRecord(id, name, value, category);
+            }
+        };
     }
 
     public PerformanceTest(ConnectionManager connectionManager, String testTableName, int testDataSize) {
@@ -59,6 +143,14 @@ public class PerformanceTest {
         this.dataQuery = new DataQuery(conn);
     }
 
+    /**
+     * 设置后，测试中对 reviews 的写入同时维护评分汇总（汇总需已注册到同一个 ConnectionManager）
+     */
+    public void setRatingSummary(RatingSummary ratingSummary) {
+        dataWriter.setRatingSummary(ratingSummary);
+        dataQuery.setRatingSummary(ratingSummary);
+    }
+
     public void createTestTable() throws SQLException {
         Connection conn = connectionManager.getConnection();
         String createTableSql = String.format(
@@ -187,6 +279,273 @@ public class PerformanceTest {
     }
 
 
+    /**
+     * 结果解码对比：全表扫描分别解码为 Map 与类型化的 TestRecord，返回 {Map 平均纳秒, TestRecord 平均纳秒}
+     */
+    public long[] testResultDecoding(int rounds) throws SQLException {
+        String sql = "SELECT id, name, value, category FROM " + testTableName;
+        long mapTime = 0;
+        long typedTime = 0;
+
+        for (int i = 0; i < rounds; i++) {
+            long startTime = System.nanoTime();
+            dataQuery.executeQuery(sql);
+            mapTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            dataQuery.executeQuery(sql, TestRecord.MAPPER);
+            typedTime += System.nanoTime() - startTime;
+        }
+
+        return new long[]{mapTime / rounds, typedTime / rounds};
+    }
+
+    /**
+     * 批量主键查询对比：同一组随机 id 分别用 N 次点查询和一次 selectByKeys 获取，
+     * 返回 {N 次点查询总纳秒, selectByKeys 总纳秒}
+     */
+    public long[] testBatchedKeyLookup(int keyCount) throws SQLException {
+        Random random = new Random();
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < keyCount; i++) {
+            keys.add((long) (random.nextInt(testDataSize) + 1));
+        }
+
+        long startTime = System.nanoTime();
+        for (Long key : keys) {
+            Map<String, Object> conditions = new HashMap<>();
+            conditions.put("id", key.intValue());
+            dataQuery.selectByConditions(testTableName, conditions, null);
+        }
+        long loopTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        dataQuery.selectByKeys(testTableName, "id", keys, null);
+        long batchTime = System.nanoTime() - startTime;
+
+        return new long[]{loopTime, batchTime};
+    }
+
+    /**
+     * 食谱详情组装对比（需要已导入 recipes 等表）：N+1 逐条查询 vs RecipeDetailReader 一次往返批量读取，
+     * 返回 {N+1 总纳秒, 批量总纳秒}
+     */
+    public long[] testRecipeDetailAssembly(int recipeCount) throws SQLException {
+        List<Long> recipeIds = new ArrayList<>();
+        for (Map<String, Object> row : dataQuery.executeQuery(
+                "SELECT recipeid FROM recipes ORDER BY random() LIMIT ?", recipeCount)) {
+            recipeIds.add(((Number) row.get("recipeid")).longValue());
+        }
+
+        RecipeDetailReader reader = new RecipeDetailReader(connectionManager.getConnection());
+
+        long startTime = System.nanoTime();
+        for (Long recipeId : recipeIds) {
+            reader.readWithSeparateQueries(recipeId);
+        }
+        long separateTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        reader.readAll(recipeIds);
+        long batchTime = System.nanoTime() - startTime;
+
+        return new long[]{separateTime, batchTime};
+    }
+
+    /**
+     * 批量更新对比（测试表中需已有 id 1..rowCount）：逐行 DataQuery.update vs 一条 UPDATE ... FROM unnest，
+     * 返回 {逐行总纳秒, 批量总纳秒}
+     */
+    public long[] testBulkUpdate(int rowCount) throws SQLException {
+        Random random = new Random();
+        long[] ids = new long[rowCount];
+        Object[] values = new Object[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            ids[i] = i + 1;
+            values[i] = random.nextInt(10000);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("value", values[i]);
+            Map<String, Object> conditions = new HashMap<>();
+            conditions.put("id", (int) ids[i]);
+            dataQuery.update(testTableName, updates, conditions);
+        }
+        connectionManager.commit();
+        long singleTime = System.nanoTime() - startTime;
+
+        Map<String, Object[]> columnValues = new HashMap<>();
+        columnValues.put("value", values);
+        startTime = System.nanoTime();
+        dataQuery.bulkUpdate(testTableName, "id", ids, columnValues);
+        connectionManager.commit();
+        long bulkTime = System.nanoTime() - startTime;
+
+        return new long[]{singleTime, bulkTime};
+    }
+
+    /**
+     * 点赞写入对比（需要已导入 user_liked_reviews）：对 pairCount 个已有点赞先取消再点赞，
+     * 逐条语句 + 逐条提交 vs WriteBehindQueue（DURABLE 模式，4 个线程并发提交），数据最终不变。
+     * 返回 {逐条总纳秒, 队列总纳秒}
+     */
+    public long[] testWriteBehind(int pairCount) throws Exception {
+        List<Map<String, Object>> pairs = dataQuery.executeQuery(
+                "SELECT authorid, reviewid FROM user_liked_reviews ORDER BY random() LIMIT ?", pairCount);
+        Connection conn = connectionManager.getConnection();
+
+        long startTime = System.nanoTime();
+        try (java.sql.PreparedStatement delete = conn.prepareStatement(
+                "DELETE FROM user_liked_reviews WHERE authorid = ? AND reviewid = ?");
+             java.sql.PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO user_liked_reviews (authorid, reviewid) VALUES (?, ?) ON CONFLICT DO NOTHING")) {
+            for (Map<String, Object> pair : pairs) {
+                for (java.sql.PreparedStatement pstmt : new java.sql.PreparedStatement[]{delete, insert}) {
+                    pstmt.setLong(1, ((Number) pair.get("authorid")).longValue());
+                    pstmt.setLong(2, ((Number) pair.get("reviewid")).longValue());
+                    pstmt.executeUpdate();
+                    conn.commit();
+                }
+            }
+        }
+        long directTime = System.nanoTime() - startTime;
+
+        ConnectionManager queueConnMgr = new ConnectionManager(DatabaseConfig.defaultConfig(), false);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        startTime = System.nanoTime();
+        try (WriteBehindQueue queue = new WriteBehindQueue(queueConnMgr.getConnection(), WriteBehindQueue.Mode.DURABLE)) {
+            queue.setQueryCache(dataQuery.getQueryCache());
+            CountDownLatch latch = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                executor.submit(() -> {
+                    try {
+                        for (int i = offset; i < pairs.size(); i += threads) {
+                            long authorId = ((Number) pairs.get(i).get("authorid")).longValue();
+                            long reviewId = ((Number) pairs.get(i).get("reviewid")).longValue();
+                            queue.unlike(authorId, reviewId);
+                            queue.like(authorId, reviewId);
+                        }
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+            System.out.println("  " + queue.getMetrics());
+        } finally {
+            executor.shutdown();
+            queueConnMgr.close();
+        }
+        long queueTime = System.nanoTime() - startTime;
+
+        return new long[]{directTime, queueTime};
+    }
+
+    /**
+     * 分区评论表对比（需要已执行迁移 V006，且导入时按月或按年创建了分区）：
+     * 把 reviews 复制到一张不分区、带 datesubmitted 索引的临时表作为单表布局，
+     * 最近 windowDays 天窗口内的聚合查询在两边各执行 rounds 次；再向两边各写入同样的 loadRows 行。
+     * 最后整体回滚，临时表和写入的行都不保留。reviews 还没有分区时返回 null。
+     * 返回 {单表查询总纳秒, 分区表查询总纳秒, 单表写入纳秒, 分区表写入纳秒}
+     */
+    public long[] testPartitionedReviews(int windowDays, int rounds, int loadRows) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        ReviewPartitions partitions = new ReviewPartitions(conn, ReviewPartitions.Granularity.MONTHLY);
+        if (partitions.existingPartitions().isEmpty()) {
+            return null;
+        }
+        Timestamp latest = partitions.latestDate();
+        if (latest == null) {
+            return null;
+        }
+        Timestamp to = new Timestamp(latest.getTime() + 1);
+        Timestamp from = new Timestamp(latest.getTime() - windowDays * 24L * 3600 * 1000);
+
+        String columns = "reviewid, recipeid, authorid, rating, review, datesubmitted, datemodified";
+        try {
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TEMP TABLE reviews_single AS SELECT " + columns + " FROM reviews");
+                stmt.execute("CREATE INDEX ON reviews_single (datesubmitted)");
+                stmt.execute("ANALYZE reviews_single");
+            }
+
+            long singleQueryTime = 0;
+            long partitionedQueryTime = 0;
+            for (int i = 0; i < rounds; i++) {
+                long startTime = System.nanoTime();
+                dataQuery.executeQuery("SELECT COUNT(*), AVG(rating) FROM reviews_single " +
+                        "WHERE datesubmitted >= ? AND datesubmitted < ?", from, to);
+                singleQueryTime += System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                partitions.ratingStats(from, to);
+                partitionedQueryTime += System.nanoTime() - startTime;
+            }
+
+            // 复制已有评论并平移 reviewid，两边写入同样的行；直接批量插入，不经过 DataWriter 的评分汇总维护
+            List<Map<String, Object>> rows = dataQuery.executeQuery(
+                    "SELECT reviewid + (SELECT MAX(reviewid) FROM reviews) AS reviewid, recipeid, authorid, rating, review, " +
+                            "datesubmitted, datemodified FROM reviews ORDER BY random() LIMIT ?", loadRows);
+            long startTime = System.nanoTime();
+            insertReviewRows(conn, "reviews_single", columns, rows);
+            long singleLoadTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            insertReviewRows(conn, "reviews", columns, rows);
+            long partitionedLoadTime = System.nanoTime() - startTime;
+
+            return new long[]{singleQueryTime, partitionedQueryTime, singleLoadTime, partitionedLoadTime};
+        } finally {
+            connectionManager.rollback();
+        }
+    }
+
+    private void insertReviewRows(Connection conn, String table, String columns, List<Map<String, Object>> rows)
+            throws SQLException {
+        String[] names = columns.split(", ");
+        String placeholders = String.join(", ", Collections.nCopies(names.length, "?"));
+        try (java.sql.PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ")")) {
+            for (Map<String, Object> row : rows) {
+                for (int i = 0; i < names.length; i++) {
+                    pstmt.setObject(i + 1, row.get(names[i]));
+                }
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * 全文检索对比（需要已导入数据并执行迁移 V001）：tsvector + GIN vs ILIKE 顺序扫描，
+     * 每个查询词组同时检索 recipes 和 reviews，返回 {全文检索总纳秒, ILIKE 总纳秒}
+     */
+    public long[] testFullTextSearch(String[] queries, int limit) throws SQLException {
+        RecipeSearch search = new RecipeSearch(connectionManager.getConnection());
+        long fullTextTime = 0;
+        long ilikeTime = 0;
+
+        for (String query : queries) {
+            long startTime = System.nanoTime();
+            search.searchRecipes(query, limit);
+            search.searchReviews(query, limit);
+            fullTextTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            search.searchRecipesIlike(query, limit);
+            search.searchReviewsIlike(query, limit);
+            ilikeTime += System.nanoTime() - startTime;
+        }
+
+        return new long[]{fullTextTime, ilikeTime};
+    }
+
     public long testInMemorySearchNoIndex(List<TestRecord> allData, int queryCount) {
         Random random = new Random();
         long totalTime = 0;
@@ -225,6 +584,135 @@ public class PerformanceTest {
         return totalTime / queryCount; // 返回平均时间（纳秒）
     }
 
+    /**
+     * 磁盘 B+ 树索引的随机主键查找，包含从值字节解码出 TestRecord 的开销
+     */
+    public long testDiskIndexSearch(DiskBTreeIndex index, int queryCount) throws IOException {
+        Random random = new Random();
+        long totalTime = 0;
+
+        for (int i = 0; i < queryCount; i++) {
+            int randomId = random.nextInt(testDataSize) + 1;
+
+            long startTime = System.nanoTime();
+            byte[] bytes = index.get(randomId);
+            if (bytes != null) {
+                TestRecord.fromBytes(bytes);
+            }
+            long endTime = System.nanoTime();
+
+            totalTime += (endTime - startTime);
+        }
+
+        return totalTime / queryCount; // 返回平均时间（纳秒）
+    }
+
+    /**
+     * testRangeQuery 的内存版本：value 上的非唯一索引做同样分布的 value BETWEEN 查询并取出全部记录
+     */
+    public long testInMemoryRangeQuery(SecondaryIndex<Integer, TestRecord> valueIndex, int queryCount) {
+        Random random = new Random();
+        long totalTime = 0;
+
+        for (int i = 0; i < queryCount; i++) {
+            int minValue = random.nextInt(5000);
+            int maxValue = minValue + random.nextInt(2000) + 500;
+
+            long startTime = System.nanoTime();
+            valueIndex.range(minValue, maxValue);
+            long endTime = System.nanoTime();
+
+            totalTime += (endTime - startTime);
+        }
+
+        return totalTime / queryCount;
+    }
+
+    /**
+     * testComplexQuery 的内存版本：(category, value) 组合索引上的 category = ? AND value >= ? 范围遍历，
+     * 同时算出 COUNT、AVG、MAX
+     */
+    public long testInMemoryComplexQuery(SecondaryIndex<SecondaryIndex.CompositeKey<String, Integer>, TestRecord> categoryValueIndex,
+                                         int queryCount) {
+        Random random = new Random();
+        String[] categories = {"A", "B", "C", "D", "E"};
+        long totalTime = 0;
+
+        for (int i = 0; i < queryCount; i++) {
+            String category = categories[random.nextInt(categories.length)];
+            int minValue = random.nextInt(5000);
+
+            long startTime = System.nanoTime();
+            long[] aggregate = {0, 0, Integer.MIN_VALUE}; // count, sum, max
+            categoryValueIndex.forEachInRange(SecondaryIndex.CompositeKey.of(category, minValue),
+                    SecondaryIndex.CompositeKey.of(category, Integer.MAX_VALUE), record -> {
+                        aggregate[0]++;
+                        aggregate[1] += record.value;
+                        aggregate[2] = Math.max(aggregate[2], record.value);
+                    });
+            double avgValue = aggregate[0] == 0 ? 0 : (double) aggregate[1] / aggregate[0];
+            long endTime = System.nanoTime();
+
+            resultSink += aggregate[0] + aggregate[2] + Double.doubleToRawLongBits(avgValue);
+            totalTime += (endTime - startTime);
+        }
+
+        return totalTime / queryCount;
+    }
+
+    /**
+     * recipes 表（需要已导入数据）上的二级索引查询：数据库 vs 内存非唯一索引。
+     * 作者查询 authorid = ?；分类查询 recipecategory = ? AND datepublished >= ? 的计数。
+     * 返回平均纳秒 {数据库作者查询, 内存作者查询, 数据库分类查询, 内存分类查询}
+     */
+    public long[] testRecipeSecondaryIndexes(int queryCount) throws SQLException {
+        List<RecipeRecord> recipes = dataQuery.executeQuery(
+                "SELECT recipeid, authorid, recipecategory, datepublished FROM recipes", RecipeRecord.MAPPER);
+        if (recipes.isEmpty()) {
+            return new long[4];
+        }
+        SecondaryIndex<Long, RecipeRecord> authorIndex = new SecondaryIndex<>(recipe -> recipe.authorid, recipes);
+        SecondaryIndex<SecondaryIndex.CompositeKey<String, Long>, RecipeRecord> categoryDateIndex = new SecondaryIndex<>(
+                recipe -> SecondaryIndex.CompositeKey.ofNullable(recipe.recipecategory,
+                        recipe.datepublished == null ? null : recipe.datepublished.getTime()), recipes);
+
+        Random random = new Random();
+        long[] times = new long[4];
+        for (int i = 0; i < queryCount; i++) {
+            RecipeRecord sample = recipes.get(random.nextInt(recipes.size()));
+
+            if (sample.authorid != null) {
+                long startTime = System.nanoTime();
+                dataQuery.executeQuery("SELECT recipeid, authorid, recipecategory, datepublished FROM recipes WHERE authorid = ?",
+                        RecipeRecord.MAPPER, sample.authorid);
+                times[0] += System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                authorIndex.get(sample.authorid);
+                times[1] += System.nanoTime() - startTime;
+            }
+
+            if (sample.recipecategory != null && sample.datepublished != null) {
+                long startTime = System.nanoTime();
+                dataQuery.executeQuery("SELECT COUNT(*) AS count FROM recipes WHERE recipecategory = ? AND datepublished >= ?",
+                        sample.recipecategory, sample.datepublished);
+                times[2] += System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                int[] count = {0};
+                categoryDateIndex.forEachInRange(
+                        SecondaryIndex.CompositeKey.of(sample.recipecategory, sample.datepublished.getTime()),
+                        SecondaryIndex.CompositeKey.of(sample.recipecategory, Long.MAX_VALUE), recipe -> count[0]++);
+                times[3] += System.nanoTime() - startTime;
+            }
+        }
+
+        for (int i = 0; i < times.length; i++) {
+            times[i] /= queryCount;
+        }
+        return times;
+    }
+
     public long testRawFileQuery(FileIOOperations fileIO, String filename, int queryCount) throws IOException {
         Random random = new Random();
         long totalTime = 0;
@@ -295,16 +783,54 @@ public class PerformanceTest {
         System.out.println("B. 原始 File I/O 查询平均耗时: " + (rawFileQueryTime / 1_000_000.0) + " 毫秒");
         System.out.println();
 
+        long[] lookupTimes = testBatchedKeyLookup(queryCount);
+        System.out.println("批量主键查询 " + queryCount + " 个 id: 逐条=" + (lookupTimes[0] / 1_000_000.0)
+                + " 毫秒, ANY(?)=" + (lookupTimes[1] / 1_000_000.0) + " 毫秒");
+
+        long[] decodeTimes = testResultDecoding(20);
+        System.out.println("全表解码平均耗时: Map=" + (decodeTimes[0] / 1_000_000.0) + " 毫秒, TestRecord="
+                + (decodeTimes[1] / 1_000_000.0) + " 毫秒");
+        System.out.println();
+
         // C. 内存中搜索
         System.out.println("--- 附加对比：内存中搜索 ---");
         List<TestRecord> inMemoryData = fileIO.loadAllDataToMemory(testFilename);
+        // 上面刚写出新的 CSV，这里分别计时：从 CSV 构建、写快照、检查快照是否与 CSV 一致、从快照加载
+        long buildStart = System.nanoTime();
         BTreeIndex<Integer, TestRecord> inMemoryIndex = fileIO.loadAllDataToBTree(testFilename);
+        long buildTime = System.nanoTime() - buildStart;
+        long saveStart = System.nanoTime();
+        long snapshotBytes = fileIO.saveSnapshot(inMemoryIndex, testFilename, "test_data.snapshot");
+        long saveTime = System.nanoTime() - saveStart;
+        long checkStart = System.nanoTime();
+        boolean snapshotCurrent = fileIO.isSnapshotCurrent(testFilename, "test_data.snapshot");
+        long checkTime = System.nanoTime() - checkStart;
+        long loadStart = System.nanoTime();
+        BTreeIndex<Integer, TestRecord> snapshotIndex = snapshotCurrent ? fileIO.loadSnapshot("test_data.snapshot") : null;
+        long loadTime = System.nanoTime() - loadStart;
+        if (snapshotIndex != null) {
+            inMemoryIndex = snapshotIndex;
+        }
+        System.out.println("内存索引: 从 CSV 构建 " + (buildTime / 1_000_000.0) + " 毫秒, 写快照 "
+                + (saveTime / 1_000_000.0) + " 毫秒 (" + snapshotBytes + " 字节), 检查快照 "
+                + (checkTime / 1_000_000.0) + " 毫秒, 从快照加载 "
+                + (snapshotIndex == null ? "失败" : (loadTime / 1_000_000.0) + " 毫秒"));
 
         long memSearchNoIndexTime = testInMemorySearchNoIndex(inMemoryData, queryCount);
         System.out.println("C. 内存中搜索平均耗时 (无索引, ArrayList): " + (memSearchNoIndexTime / 1_000_000.0) + " 毫秒");
 
         long memSearchWithIndexTime = testInMemorySearchWithIndex(inMemoryIndex, queryCount);
         System.out.println("D. 内存中搜索平均耗时 (有索引, BTree): " + (memSearchWithIndexTime / 1_000_000.0) + " 毫秒");
+
+        // E. 磁盘索引：建好后关闭再重新打开，查询从文件读页（缓冲池 64 页，远小于索引大小）
+        Path diskIndexFile = fileIO.buildDiskIndex(testFilename, "test_data.idx");
+        long diskSearchTime;
+        try (DiskBTreeIndex diskIndex = new DiskBTreeIndex(diskIndexFile, 64)) {
+            diskSearchTime = testDiskIndexSearch(diskIndex, queryCount);
+            long[] poolStats = diskIndex.getPoolStats();
+            System.out.println("E. 磁盘 B+ 树索引搜索平均耗时: " + (diskSearchTime / 1_000_000.0) + " 毫秒 (树高 "
+                    + diskIndex.height() + ", 缓冲池命中 " + poolStats[0] + ", 读盘 " + poolStats[1] + ")");
+        }
         System.out.println();
 
         System.out.println("========== 对比结果 (Task 4) ==========");
@@ -312,6 +838,8 @@ public class PerformanceTest {
                 (double) rawFileQueryTime / dbQueryTime));
         System.out.println("数据库 (A) vs 内存搜索 (D): " + String.format("%.2f 倍",
                 (double) dbQueryTime / memSearchWithIndexTime));
+        System.out.println("数据库 (A) vs 磁盘索引 (E): " + String.format("%.2f 倍",
+                (double) dbQueryTime / diskSearchTime));
 
 
         System.out.println("\n========== 性能测试完成 ==========");
@@ -420,6 +948,11 @@ public class PerformanceTest {
         System.out.println("4. 高级性能测试");
         System.out.println();
 
+        // 超过 50ms 的语句写入 logs/slow_query.log，其中 10% 抓取执行计划
+        SlowQueryLog slowQueryLog = new SlowQueryLog(50, 0.1, 4096, "logs/slow_query.log");
+        dataQuery.setSlowQueryLog(slowQueryLog);
+        dataWriter.setSlowQueryLog(slowQueryLog);
+
         testDifferentDataSizes();
         testDifferentThreadCounts(10000);
 
@@ -427,5 +960,55 @@ public class PerformanceTest {
         List<TestRecord> testData = generateTestData(10000);
         testSingleThreadInsert(testData);
         testDifferentQueryTypes(1000);
+
+        SecondaryIndex<Integer, TestRecord> valueIndex = new SecondaryIndex<>(record -> record.value, testData);
+        SecondaryIndex<SecondaryIndex.CompositeKey<String, Integer>, TestRecord> categoryValueIndex = new SecondaryIndex<>(
+                record -> SecondaryIndex.CompositeKey.ofNullable(record.category, record.value), testData);
+        System.out.println("内存范围查询 (value 索引): " + (testInMemoryRangeQuery(valueIndex, 1000) / 1_000_000.0) + "ms");
+        System.out.println("内存复杂查询 ((category, value) 索引): "
+                + (testInMemoryComplexQuery(categoryValueIndex, 1000) / 1_000_000.0) + "ms");
+
+        long[] recipeIndexTimes = testRecipeSecondaryIndexes(200);
+        System.out.println(String.format("recipes 作者查询: 数据库=%.3fms, 内存索引=%.3fms; 分类+日期计数: 数据库=%.3fms, 内存索引=%.3fms",
+                recipeIndexTimes[0] / 1_000_000.0, recipeIndexTimes[1] / 1_000_000.0,
+                recipeIndexTimes[2] / 1_000_000.0, recipeIndexTimes[3] / 1_000_000.0));
+
+        long[] bulkTimes = testBulkUpdate(10000);
+        System.out.println(String.format("更新 10000 行: 逐行=%.2fms, unnest 批量=%.2fms",
+                bulkTimes[0] / 1_000_000.0, bulkTimes[1] / 1_000_000.0));
+
+        long[] detailTimes = testRecipeDetailAssembly(100);
+        System.out.println(String.format("食谱详情 100 个: N+1=%.2fms, 一次往返=%.2fms",
+                detailTimes[0] / 1_000_000.0, detailTimes[1] / 1_000_000.0));
+
+        String[] searchQueries = {"chicken garlic", "chocolate cake", "lemon", "spicy beef", "vegan"};
+        long[] searchTimes = testFullTextSearch(searchQueries, 20);
+        System.out.println(String.format("全文检索 %d 组查询: tsvector=%.2fms, ILIKE=%.2fms",
+                searchQueries.length, searchTimes[0] / 1_000_000.0, searchTimes[1] / 1_000_000.0));
+
+        long[] writeBehindTimes = testWriteBehind(2000);
+        System.out.println(String.format("取消并重新点赞 2000 次: 逐条提交=%.2fms, 后写队列=%.2fms",
+                writeBehindTimes[0] / 1_000_000.0, writeBehindTimes[1] / 1_000_000.0));
+
+        long[] partitionTimes = testPartitionedReviews(30, 50, 10000);
+        if (partitionTimes == null) {
+            System.out.println("reviews 尚未按时间创建分区（导入时设置 setReviewPartitioning），跳过分区对比");
+        } else {
+            System.out.println(String.format("最近 30 天评论窗口 50 次: 单表=%.2fms, 分区表=%.2fms; 写入 10000 行: 单表=%.2fms, 分区表=%.2fms",
+                    partitionTimes[0] / 1_000_000.0, partitionTimes[1] / 1_000_000.0,
+                    partitionTimes[2] / 1_000_000.0, partitionTimes[3] / 1_000_000.0));
+        }
+
+        System.out.println("二级索引对比（每个索引 200 次查询，写入 5000 行）:");
+        for (IndexBenchmark.Result result : new IndexBenchmark(connectionManager.getConnection()).run(200, 5000)) {
+            System.out.println("  " + result);
+        }
+
+        System.out.println("共记录语句 " + slowQueryLog.totalRecorded() + " 条，最慢的 5 条:");
+        for (SlowQueryLog.Entry entry : slowQueryLog.slowest(5)) {
+            System.out.println("  " + entry);
+        }
+        dataQuery.setSlowQueryLog(null);
+        dataWriter.setSlowQueryLog(null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package main.task4;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 内存中的非唯一二级索引：键由记录字段计算，相同键的记录放在同一个列表中（按加入顺序），
+ * 列表按键存放在 BPlusTreeIndex 中，支持等值查找和按键升序的范围遍历。
+ * 键为 null 的记录不进入索引（与数据库索引中 NULL 不参与等值和范围条件一致）。
+ * 多列条件用 CompositeKey 作为键，例如 (category, value) 上的 category = ? AND value >= ?
+ * 对应 [(category, min), (category, Integer.MAX_VALUE)] 的范围。
+ */
+public class SecondaryIndex<K extends Comparable<K>, R> {
+    private final Function<? super R, ? extends K> keyExtractor;
+    private final BPlusTreeIndex<K, List<R>> tree;
+    private int size;
+
+
+    /**
+     * 两列组合键，先比较 first 再比较 second；两列都不能为 null
+     */
+    public static final class CompositeKey<A extends Comparable<A>, B extends Comparable<B>>
+            implements Comparable<CompositeKey<A, B>> {
+        public final A first;
+        public final B second;
+
+        public CompositeKey(A first, B second) {
+            if (first == null || second == null) {
+                throw new IllegalArgumentException("组合键的列不能为 null");
+            }
+            this.first = first;
+            this.second = second;
+        }
+
+        public static <A extends Comparable<A>, B extends Comparable<B>> CompositeKey<A, B> of(A first, B second) {
+            return new CompositeKey<>(first, second);
+        }
+
+        /**
+         * 任一列为 null 时返回 null（该记录不进入索引）
+         */
+        public static <A extends Comparable<A>, B extends Comparable<B>> CompositeKey<A, B> ofNullable(A first, B second) {
+            return first == null || second == null ? null : new CompositeKey<>(first, second);
+        }
+
+        @Override
+        public int compareTo(CompositeKey<A, B> other) {
+            int cmp = first.compareTo(other.first);
+            return cmp != 0 ? cmp : second.compareTo(other.second);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CompositeKey)) {
+                return false;
+            }
+            CompositeKey<?, ?> other = (CompositeKey<?, ?>) o;
+            return first.equals(other.first) && second.equals(other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(first, second);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + first + ", " + second + ")";
+        }
+    }
+
+
+    public SecondaryIndex(Function<? super R, ? extends K> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        this.tree = new BPlusTreeIndex<>();
+    }
+
+
+    public SecondaryIndex(Function<? super R, ? extends K> keyExtractor, Collection<? extends R> records) {
+        this(keyExtractor);
+        addAll(records);
+    }
+
+
+    public void add(R record) {
+        K key = keyExtractor.apply(record);
+        if (key == null) {
+            return;
+        }
+        List<R> records = tree.get(key);
+        if (records == null) {
+            records = new ArrayList<>(2);
+            tree.put(key, records);
+        }
+        records.add(record);
+        size++;
+    }
+
+
+    public void addAll(Collection<? extends R> records) {
+        for (R record : records) {
+            add(record);
+        }
+    }
+
+
+    /**
+     * 键等于 key 的所有记录
+     */
+    public List<R> get(K key) {
+        List<R> records = key == null ? null : tree.get(key);
+        return records == null ? Collections.emptyList() : Collections.unmodifiableList(records);
+    }
+
+
+    public int count(K key) {
+        List<R> records = key == null ? null : tree.get(key);
+        return records == null ? 0 : records.size();
+    }
+
+
+    /**
+     * 键在 [minKey, maxKey] 内的所有记录，按键升序，相同键按加入顺序
+     */
+    public List<R> range(K minKey, K maxKey) {
+        List<R> results = new ArrayList<>();
+        forEachInRange(minKey, maxKey, results::add);
+        return results;
+    }
+
+
+    public void forEachInRange(K minKey, K maxKey, Consumer<? super R> action) {
+        for (List<R> records : tree.rangeQuery(minKey, maxKey)) {
+            for (R record : records) {
+                action.accept(record);
+            }
+        }
+    }
+
+
+    /**
+     * 索引中的记录数（不含键为 null 的记录）
+     */
+    public int size() {
+        return size;
+    }
+
+
+    public int distinctKeys() {
+        return tree.size();
+    }
+
+
+    public void clear() {
+        tree.clear();
+        size = 0;
+    }
+}